@@ -0,0 +1,61 @@
+package mchorse.snb.benchmarks;
+
+import mchorse.snb.api.bobj.BOBJArmature;
+import mchorse.snb.api.bobj.BOBJBone;
+import mchorse.snb.tools.SyntheticModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.vecmath.Matrix4f;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computing bone matrices of a posed armature
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArmatureBenchmark
+{
+    @Param({"20", "60", "150"})
+    public int bones;
+
+    private BOBJArmature armature;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        Random random = new Random(42);
+
+        this.armature = new SyntheticModel().vertices(16).bones(this.bones).actions(0, 0).load().armatures.get("Armature");
+        this.armature.initArmature();
+
+        for (BOBJBone bone : this.armature.orderedBones)
+        {
+            bone.rotateX = (random.nextFloat() - 0.5F) * 0.6F;
+            bone.rotateY = (random.nextFloat() - 0.5F) * 0.6F;
+            bone.rotateZ = (random.nextFloat() - 0.5F) * 0.6F;
+        }
+    }
+
+    @Benchmark
+    public Matrix4f[] setupMatrices()
+    {
+        this.armature.setupMatrices();
+
+        return this.armature.matrices;
+    }
+}
@@ -0,0 +1,70 @@
+package mchorse.snb.benchmarks;
+
+import mchorse.snb.api.bobj.BOBJChannel;
+import mchorse.snb.api.bobj.BOBJKeyframe;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sampling of one channel with different interpolations and amounts 
+ * of keyframes. Frames advance by a fraction of a tick, the same way 
+ * as they do during rendering
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChannelBenchmark
+{
+    @Param({"CONSTANT", "LINEAR", "BEZIER"})
+    public String interpolation;
+
+    @Param({"4", "16", "64"})
+    public int keyframes;
+
+    private BOBJChannel channel;
+    private float duration;
+    private float frame;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(42);
+
+        this.channel = new BOBJChannel("rotation", 0);
+
+        for (int i = 0; i < this.keyframes; i++)
+        {
+            float frame = i * 5;
+            float value = random.nextFloat();
+
+            this.channel.keyframes.add(new BOBJKeyframe(frame, value, this.interpolation, frame - 1.5F, value, frame + 1.5F, value));
+        }
+
+        this.duration = (this.keyframes - 1) * 5;
+    }
+
+    @Benchmark
+    public float calculate()
+    {
+        float frame = this.frame;
+
+        this.frame = (frame + 0.37F) % this.duration;
+
+        return this.channel.calculate(frame);
+    }
+}
@@ -0,0 +1,67 @@
+package mchorse.snb.benchmarks;
+
+import mchorse.snb.api.bobj.BOBJLoader;
+import mchorse.snb.api.bobj.BOBJLoader.BOBJData;
+import mchorse.snb.api.bobj.BOBJLoader.CompiledData;
+import mchorse.snb.tools.SyntheticModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and compiling of generated models of increasing size
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoaderBenchmark
+{
+    @Param({"1000", "10000", "50000"})
+    public int vertices;
+
+    private byte[] model;
+    private BOBJData data;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        SyntheticModel generator = new SyntheticModel().vertices(this.vertices).bones(60).weights(2).actions(4, 16);
+
+        this.model = generator.generate().getBytes(StandardCharsets.UTF_8);
+        this.data = BOBJLoader.readData(new ByteArrayInputStream(this.model));
+    }
+
+    @Benchmark
+    public BOBJData readData() throws Exception
+    {
+        return BOBJLoader.readData(new ByteArrayInputStream(this.model));
+    }
+
+    @Benchmark
+    public Map<String, CompiledData> loadMeshes()
+    {
+        return BOBJLoader.loadMeshes(this.data, false);
+    }
+
+    @Benchmark
+    public Map<String, CompiledData> loadMeshesWithLevels()
+    {
+        return BOBJLoader.loadMeshes(this.data, true);
+    }
+}
@@ -0,0 +1,78 @@
+package mchorse.snb.benchmarks;
+
+import mchorse.snb.api.bobj.BOBJArmature;
+import mchorse.snb.api.bobj.BOBJBone;
+import mchorse.snb.api.bobj.BOBJLoader;
+import mchorse.snb.api.bobj.BOBJLoader.BOBJData;
+import mchorse.snb.api.bobj.BOBJLoader.CompiledData;
+import mchorse.snb.tools.SyntheticModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Skinning kernel of animated meshes (see 
+ * {@link CompiledData#skin(javax.vecmath.Matrix4f[], int, float[], float[])}), 
+ * which is the same code that AnimationMesh runs before uploading, 
+ * but without OpenGL
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SkinningBenchmark
+{
+    @Param({"1000", "10000", "50000"})
+    public int vertices;
+
+    @Param({"1", "2", "4"})
+    public int weights;
+
+    private CompiledData mesh;
+    private BOBJArmature armature;
+    private float[] skinnedVertices;
+    private float[] skinnedNormals;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        Random random = new Random(42);
+        BOBJData data = new SyntheticModel().vertices(this.vertices).bones(60).weights(this.weights).actions(0, 0).load();
+
+        this.mesh = BOBJLoader.loadMeshes(data, false).values().iterator().next();
+        this.mesh.quantize(true);
+        this.armature = this.mesh.mesh.armature;
+        this.armature.initArmature();
+
+        for (BOBJBone bone : this.armature.orderedBones)
+        {
+            bone.rotateX = (random.nextFloat() - 0.5F) * 0.6F;
+            bone.rotateZ = (random.nextFloat() - 0.5F) * 0.6F;
+        }
+
+        this.armature.setupMatrices();
+        this.skinnedVertices = new float[this.mesh.getVertices() * 3];
+        this.skinnedNormals = new float[this.mesh.getVertices() * 3];
+    }
+
+    @Benchmark
+    public float[] skin()
+    {
+        this.mesh.skin(this.armature.matrices, 0, this.skinnedVertices, this.skinnedNormals);
+
+        return this.skinnedVertices;
+    }
+}
@@ -3,6 +3,7 @@ package mchorse.snb;
 import mchorse.mclib.utils.files.GlobalTree;
 import mchorse.snb.api.animation.AnimationPack;
 import mchorse.snb.client.EntityModelHandler;
+import mchorse.snb.client.ModelWatcher;
 import mchorse.snb.commands.CommandSnB;
 import mchorse.snb.utils.SnBTree;
 import net.minecraft.client.Minecraft;
@@ -35,6 +36,11 @@ public class ClientProxy extends CommonProxy
      */
     public static EntityModelHandler modelHandler;
 
+    /**
+     * Models folder watcher 
+     */
+    public static ModelWatcher modelWatcher;
+
     /**
      * Client folder where saved selectors and animations are getting
      * stored. 
@@ -126,6 +132,12 @@ public class ClientProxy extends CommonProxy
         /* Register event handlers */
         MinecraftForge.EVENT_BUS.register(modelHandler = new EntityModelHandler());
 
+        if (pack != null)
+        {
+            modelWatcher = new ModelWatcher(pack.config);
+            modelWatcher.start();
+        }
+
         ClientCommandHandler.instance.registerCommand(new CommandSnB());
     }
 }
\ No newline at end of file
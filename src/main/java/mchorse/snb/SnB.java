@@ -2,6 +2,8 @@ package mchorse.snb;
 
 import mchorse.mclib.McLib;
 import mchorse.mclib.config.ConfigBuilder;
+import mchorse.mclib.config.values.ValueBoolean;
+import mchorse.mclib.config.values.ValueInt;
 import mchorse.mclib.events.RegisterConfigEvent;
 import mchorse.snb.utils.ValueButtons;
 import net.minecraftforge.fml.common.Mod;
@@ -10,6 +12,8 @@ import net.minecraftforge.fml.common.SidedProxy;
 import net.minecraftforge.fml.common.event.FMLInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 @Mod(modid = SnB.MOD_ID, name = "Skin&Bones", version = SnB.VERSION, dependencies = "required-after:mclib@[%MCLIB%,);required-after:metamorph@[%METAMORPH%,)", updateJSON = "https://raw.githubusercontent.com/mchorse/snb/main/version.json")
 public final class SnB
@@ -17,11 +21,24 @@ public final class SnB
     public static final String MOD_ID = "snb";
     public static final String VERSION = "%VERSION%";
 
+    public static final Logger LOGGER = LogManager.getLogger("Skin&Bones");
+
     @SidedProxy(serverSide = "mchorse.snb.CommonProxy", clientSide = "mchorse.snb.ClientProxy")
     public static CommonProxy proxy;
 
     public static String config;
 
+    /* Performance config */
+    public static ValueBoolean frustumCulling;
+    public static ValueBoolean levelsOfDetail;
+    public static ValueBoolean quantizePositions;
+    public static ValueInt memoryBudget;
+    public static ValueBoolean thumbnails;
+    public static ValueBoolean asyncPoses;
+    public static ValueBoolean asyncSkinning;
+    public static ValueBoolean instancedCrowds;
+    public static ValueBoolean profilerOverlay;
+
     @SubscribeEvent
     public void onConfigRegister(RegisterConfigEvent event)
     {
@@ -29,6 +46,17 @@ public final class SnB
 
         builder.category("general").register(new ValueButtons("buttons"));
         builder.getCategory().markClientSide();
+
+        frustumCulling = builder.category("performance").getBoolean("frustum_culling", true);
+        levelsOfDetail = builder.getBoolean("levels_of_detail", true);
+        quantizePositions = builder.getBoolean("quantize_positions", true);
+        memoryBudget = builder.getInt("memory_budget", 256, 16, 8192);
+        thumbnails = builder.getBoolean("thumbnails", true);
+        asyncPoses = builder.getBoolean("async_poses", false);
+        asyncSkinning = builder.getBoolean("async_skinning", false);
+        instancedCrowds = builder.getBoolean("instanced_crowds", false);
+        profilerOverlay = builder.getBoolean("profiler_overlay", false);
+        builder.getCategory().markClientSide();
     }
 
     @EventHandler
@@ -1,6 +1,7 @@
 package mchorse.snb.api.animation;
 
 import mchorse.mclib.utils.resources.RLUtils;
+import mchorse.snb.SnB;
 import mchorse.snb.api.animation.model.ActionConfig;
 import mchorse.snb.api.animation.model.ActionPlayback;
 import mchorse.snb.api.bobj.BOBJAction;
@@ -12,8 +13,10 @@ import net.minecraftforge.fml.relauncher.SideOnly;
 import org.lwjgl.opengl.GL15;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +30,12 @@ import java.util.Set;
 @SideOnly(Side.CLIENT)
 public class Animation
 {
+    /**
+     * Padding of the pose bounding box (see sharp bending in
+     * {@link AnimationMesh.Joint})
+     */
+    public static final float BOUNDS_PADDING = 2 / 16F;
+
     /**
      * This animation's name 
      */
@@ -42,11 +51,55 @@ public class Animation
      */
     public List<AnimationMesh> meshes;
 
+    /**
+     * Armatures of current data, in a list so they could be iterated 
+     * every frame without allocating iterators
+     */
+    public List<BOBJArmature> armatures = new ArrayList<BOBJArmature>();
+
     /**
      * Local Minecraft reference 
      */
     public Minecraft mc;
 
+    /**
+     * Whether meshes were compiled and uploaded to the GPU. It's done 
+     * lazily, upon the first render (see {@link #ensureInitialized()}), 
+     * so models which aren't used don't take any VRAM
+     */
+    public boolean initialized;
+
+    /**
+     * Frame (see {@link AnimationManager#frame}) at which this 
+     * animation was rendered the last time 
+     */
+    public long lastFrame;
+
+    /**
+     * Whether meshes of this animation were deleted to free up memory 
+     * (see {@link AnimationManager#evict()})
+     */
+    public boolean evicted;
+
+    /**
+     * Frame before which reading of evicted animation's model isn't 
+     * tried again, since the last attempt failed (see 
+     * {@link AnimationManager#rehydrate(Animation)})
+     */
+    public long retryFrame;
+
+    /**
+     * Bytes of this animation which are counted in the total of the 
+     * manager (see {@link #updateBytes()})
+     */
+    private long bytes;
+
+    /**
+     * Incremented upon every reload, so caches of rendered models 
+     * (like {@link ThumbnailAtlas}) knew when to update
+     */
+    public int revision;
+
     public Animation(String name, BOBJLoader.BOBJData data)
     {
         this.name = name;
@@ -54,16 +107,148 @@ public class Animation
 
         this.mc = Minecraft.getMinecraft();
         this.meshes = new ArrayList<AnimationMesh>();
+
+        this.initArmatures();
     }
 
     /**
-     * Reload this animation 
+     * Initialize armatures, so their bones and actions could be used 
+     * before meshes are initialized 
      */
-    public void reload(BOBJLoader.BOBJData data)
+    private void initArmatures()
     {
-        this.data = data;
-        this.delete();
-        this.init();
+        this.armatures.clear();
+
+        for (BOBJArmature armature : this.data.armatures.values())
+        {
+            armature.initArmature();
+            this.armatures.add(armature);
+        }
+    }
+
+    /**
+     * Reload this animation. New data is compared to the current one 
+     * by content hashes (see {@link mchorse.snb.api.bobj.BOBJHash}), 
+     * so only changed parts are replaced. Actions are updated in 
+     * place, so action playbacks keep playing them, and meshes that 
+     * didn't change (along with their armature) stay on the GPU.
+     * 
+     * @return whether the structure (set of actions or armatures) has 
+     *         changed, i.e. whether animators should be recreated
+     */
+    public boolean reload(BOBJLoader.BOBJData data)
+    {
+        BOBJLoader.BOBJData old = this.data;
+
+        this.revision++;
+
+        boolean changed = !old.actions.keySet().equals(data.actions.keySet()) || !old.armatures.keySet().equals(data.armatures.keySet());
+        int actions = 0;
+        int armatures = 0;
+
+        for (Map.Entry<String, BOBJArmature> entry : data.armatures.entrySet())
+        {
+            BOBJArmature armature = old.armatures.get(entry.getKey());
+
+            if (armature != null && armature.hash == entry.getValue().hash)
+            {
+                entry.setValue(armature);
+                armatures++;
+            }
+            else
+            {
+                changed = true;
+            }
+        }
+
+        for (Map.Entry<String, BOBJAction> entry : data.actions.entrySet())
+        {
+            BOBJAction action = old.actions.get(entry.getKey());
+
+            if (action == null)
+            {
+                continue;
+            }
+
+            if (action.hash == entry.getValue().hash)
+            {
+                actions++;
+            }
+            else
+            {
+                action.replace(entry.getValue());
+            }
+
+            entry.setValue(action);
+        }
+
+        /* Actions cache the armature they were bound to the last time, 
+         * so they shouldn't keep replaced armatures reachable */
+        for (Map.Entry<String, BOBJArmature> entry : old.armatures.entrySet())
+        {
+            if (data.armatures.get(entry.getKey()) != entry.getValue())
+            {
+                for (BOBJAction action : old.actions.values())
+                {
+                    action.forget(entry.getValue());
+                }
+            }
+        }
+
+        this.data = data.setupMeshes();
+        this.evicted = false;
+        this.initArmatures();
+
+        /* Meshes will get compiled upon the first render anyway */
+        if (!this.initialized)
+        {
+            this.updateBytes();
+
+            return changed;
+        }
+
+        Map<String, AnimationMesh> current = new HashMap<String, AnimationMesh>();
+        int meshes = data.meshes.size();
+        List<BOBJLoader.BOBJMesh> compile = new ArrayList<BOBJLoader.BOBJMesh>();
+
+        for (AnimationMesh mesh : this.meshes)
+        {
+            current.put(mesh.name, mesh);
+        }
+
+        for (BOBJLoader.BOBJMesh mesh : data.meshes)
+        {
+            AnimationMesh existing = current.remove(mesh.name);
+
+            /* Kept meshes should use the same armature, since joints 
+             * and skinning reference its bones */
+            if (existing != null && existing.data.mesh.hash == mesh.hash && existing.armature == mesh.armature)
+            {
+                continue;
+            }
+
+            if (existing != null)
+            {
+                existing.delete();
+                this.meshes.remove(existing);
+            }
+
+            compile.add(mesh);
+        }
+
+        for (AnimationMesh mesh : current.values())
+        {
+            mesh.delete();
+            this.meshes.remove(mesh);
+        }
+
+        this.compileMeshes(compile);
+        this.data.dispose();
+        this.updateBytes();
+
+        SnB.LOGGER.debug("Reloaded animation {}: {}/{} meshes, {}/{} armatures and {}/{} actions were unchanged", this.name, meshes - compile.size(), meshes, armatures, data.armatures.size(), actions, data.actions.size());
+
+        return changed;
     }
 
     /**
@@ -116,24 +301,59 @@ public class Animation
         return new ActionPlayback(actions, config, looping, priority);
     }
 
+    /**
+     * Initialize the animation, if it wasn't initialized yet
+     * 
+     * @return whether there are any meshes to render
+     */
+    public boolean ensureInitialized()
+    {
+        if (!this.initialized && !this.evicted)
+        {
+            try
+            {
+                this.init();
+            }
+            catch (Exception e)
+            {
+                System.err.println("An error occurred during initialization of animation named '" + this.name + "'!");
+                e.printStackTrace();
+            }
+        }
+
+        return !this.meshes.isEmpty();
+    }
+
     /**
      * Initialize the animation 
      */
     public void init()
     {
-        Map<String, BOBJLoader.CompiledData> compiled = BOBJLoader.loadMeshes(this.data);
+        this.initialized = true;
+        this.compileMeshes(this.data.meshes);
+        this.data.dispose();
+        this.updateBytes();
+    }
+
+    /**
+     * Compile given meshes of current data and upload them to the GPU 
+     */
+    private void compileMeshes(List<BOBJLoader.BOBJMesh> meshes)
+    {
+        Map<String, BOBJLoader.CompiledData> compiled = BOBJLoader.loadMeshes(this.data, meshes, SnB.levelsOfDetail.get());
 
         for (Map.Entry<String, BOBJLoader.CompiledData> entry : compiled.entrySet())
         {
             String name = entry.getKey();
             BOBJLoader.CompiledData data = entry.getValue();
+
+            data.quantize(SnB.quantizePositions.get());
+
             AnimationMesh mesh = new AnimationMesh(this, entry.getKey(), data);
 
             mesh.texture = RLUtils.create("s&b", this.name + "/textures/" + name + "/default.png");
             this.meshes.add(mesh);
         }
-
-        this.data.dispose();
     }
 
     /**
@@ -147,6 +367,8 @@ public class Animation
         }
 
         this.meshes.clear();
+        this.initialized = false;
+        this.updateBytes();
     }
 
     /**
@@ -154,6 +376,8 @@ public class Animation
      */
     public void render(Map<String, AnimationMeshConfig> configs)
     {
+        this.lastFrame = AnimationManager.INSTANCE.frame;
+
         for (AnimationMesh mesh : this.meshes)
         {
             mesh.render(this.mc, configs == null ? null : configs.get(mesh.name));
@@ -164,6 +388,113 @@ public class Animation
         GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
     }
 
+    /**
+     * Calculate the bounding box (min XYZ and max XYZ) of visible 
+     * meshes in their current pose. Sharp bending displaces joint 
+     * vertices a bit, so the box is padded to account for that.
+     * 
+     * @return whether there is any geometry in the box
+     */
+    public boolean calculateBounds(Map<String, AnimationMeshConfig> configs, float[] box)
+    {
+        Arrays.fill(box, 0, 3, Float.POSITIVE_INFINITY);
+        Arrays.fill(box, 3, 6, Float.NEGATIVE_INFINITY);
+
+        for (AnimationMesh mesh : this.meshes)
+        {
+            AnimationMeshConfig config = configs == null ? null : configs.get(mesh.name);
+
+            if (config == null || config.visible)
+            {
+                mesh.expandBounds(box);
+            }
+        }
+
+        if (box[0] > box[3])
+        {
+            return false;
+        }
+
+        for (int i = 0; i < 3; i++)
+        {
+            box[i] -= BOUNDS_PADDING;
+            box[i + 3] += BOUNDS_PADDING;
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the armature used by meshes, or any armature if meshes 
+     * aren't there. It works before the animation is initialized 
+     */
+    public BOBJArmature getArmature()
+    {
+        if (!this.meshes.isEmpty())
+        {
+            return this.meshes.get(0).armature;
+        }
+
+        if (!this.data.meshes.isEmpty() && this.data.meshes.get(0).armature != null)
+        {
+            return this.data.meshes.get(0).armature;
+        }
+
+        for (BOBJArmature armature : this.data.armatures.values())
+        {
+            return armature;
+        }
+
+        return null;
+    }
+
+    /**
+     * Count bytes taken by this animation again, and update the total 
+     * of the manager (see {@link AnimationManager#bytes}), it must be 
+     * called whenever meshes or data change. Animations which aren't 
+     * in the manager (anymore) don't count
+     */
+    public void updateBytes()
+    {
+        AnimationManager manager = AnimationManager.INSTANCE;
+        long bytes = manager.getAnimation(this.name) == this ? this.getHeapBytes() + this.getGpuBytes() : 0;
+
+        manager.bytes += bytes - this.bytes;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Get the amount of bytes which meshes and parsed data of this 
+     * animation take on the heap 
+     */
+    public long getHeapBytes()
+    {
+        long bytes = this.data.getBytes();
+
+        for (AnimationMesh mesh : this.meshes)
+        {
+            bytes += mesh.getHeapBytes();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Get the amount of bytes which meshes of this animation take on 
+     * the GPU 
+     */
+    public long getGpuBytes()
+    {
+        long bytes = 0;
+
+        for (AnimationMesh mesh : this.meshes)
+        {
+            bytes += mesh.gpuBytes;
+        }
+
+        return bytes;
+    }
+
     public Collection<String> collectBones()
     {
         Set<String> set = new HashSet<String>();
@@ -0,0 +1,136 @@
+package mchorse.snb.api.animation;
+
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Animation buffers
+ *
+ * Scratch memory shared by all animated meshes. Meshes are skinned
+ * and uploaded one at a time on the render thread, so there is no
+ * need for every mesh to keep its own arrays for skinned data and its
+ * own direct buffers for uploading. These only grow to fit the
+ * biggest mesh.
+ */
+@SideOnly(Side.CLIENT)
+public class AnimationBuffers
+{
+    private static float[] vertices = new float[0];
+    private static float[] normals = new float[0];
+    private static float[] tangents = new float[0];
+    private static boolean[] flags = new boolean[0];
+    private static ByteBuffer upload = BufferUtils.createByteBuffer(0);
+    private static FloatBuffer uploadFloats = upload.asFloatBuffer();
+    private static ShortBuffer uploadShorts = upload.asShortBuffer();
+
+    /**
+     * Get scratch array for skinned positions
+     */
+    public static float[] getVertices(int size)
+    {
+        if (vertices.length < size)
+        {
+            vertices = new float[size];
+        }
+
+        return vertices;
+    }
+
+    /**
+     * Get scratch array for skinned normals
+     */
+    public static float[] getNormals(int size)
+    {
+        if (normals.length < size)
+        {
+            normals = new float[size];
+        }
+
+        return normals;
+    }
+
+    /**
+     * Get scratch array for tangents
+     */
+    public static float[] getTangents(int size)
+    {
+        if (tangents.length < size)
+        {
+            tangents = new float[size];
+        }
+
+        return tangents;
+    }
+
+    /**
+     * Get scratch array for per vertex flags. Unlike other arrays, it
+     * is cleared (within given range) before being returned
+     */
+    public static boolean[] getFlags(int size, int from, int to)
+    {
+        if (flags.length < size)
+        {
+            flags = new boolean[size];
+        }
+        else
+        {
+            Arrays.fill(flags, from, to, false);
+        }
+
+        return flags;
+    }
+
+    /**
+     * Get direct buffer for uploading given amount of bytes to the
+     * GPU. Its limit is set to given amount of bytes
+     */
+    public static ByteBuffer getUpload(int bytes)
+    {
+        if (upload.capacity() < bytes)
+        {
+            upload = BufferUtils.createByteBuffer(bytes);
+            uploadFloats = upload.asFloatBuffer();
+            uploadShorts = upload.asShortBuffer();
+        }
+
+        upload.clear();
+        upload.limit(bytes);
+
+        return upload;
+    }
+
+    /**
+     * Get float view of the upload buffer (see {@link #getUpload(int)}), 
+     * views are kept, so uploads don't create them every frame
+     */
+    public static FloatBuffer getUploadFloats()
+    {
+        uploadFloats.clear();
+
+        return uploadFloats;
+    }
+
+    /**
+     * Get short view of the upload buffer (see {@link #getUpload(int)})
+     */
+    public static ShortBuffer getUploadShorts()
+    {
+        uploadShorts.clear();
+
+        return uploadShorts;
+    }
+
+    /**
+     * Get the amount of bytes taken by the scratch memory
+     */
+    public static long getBytes()
+    {
+        return (vertices.length + normals.length + tangents.length) * 4L + flags.length + upload.capacity();
+    }
+}
@@ -2,6 +2,7 @@ package mchorse.snb.api.animation;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import mchorse.snb.SnB;
 import mchorse.snb.api.animation.json.ActionConfigAdapter;
 import mchorse.snb.api.animation.json.AnimationMeshConfigAdapter;
 import mchorse.snb.api.animation.json.AnimatorActionsConfigAdapter;
@@ -12,13 +13,24 @@ import mchorse.snb.api.animation.model.AnimatorActionsConfig;
 import mchorse.snb.api.animation.model.AnimatorConfig;
 import mchorse.snb.api.animation.model.AnimatorConfig.AnimatorConfigEntry;
 import mchorse.snb.api.animation.model.AnimatorHeldItemConfig;
+import mchorse.snb.api.bobj.BOBJLoader;
 import mchorse.snb.api.bobj.BOBJLoader.BOBJData;
+import net.minecraft.client.Minecraft;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Animation manager class
@@ -43,6 +55,26 @@ public class AnimationManager
      */
     public AnimatorConfigEntry defaultConfig;
 
+    /**
+     * Render frame counter, used for tracking which animations were 
+     * used recently 
+     */
+    public long frame;
+
+    /**
+     * Generation of {@link #animations}. It gets incremented whenever 
+     * animations are added or removed, so things like morph menu 
+     * sections could rebuild their lists only when it changes
+     */
+    public int generation;
+
+    /**
+     * Bytes taken by all animations on the heap and the GPU. It's kept 
+     * up to date by animations (see {@link Animation#updateBytes()}), 
+     * so {@link #evict()} doesn't have to count them every tick
+     */
+    public long bytes;
+
     /**
      * GSON that is used for reading {@link AnimatorConfig} from JSON. 
      */
@@ -53,6 +85,24 @@ public class AnimationManager
      */
     public static final AnimationManager INSTANCE = new AnimationManager();
 
+    /**
+     * Animations rendered within this amount of frames are never 
+     * evicted 
+     */
+    public static final int EVICTION_FRAMES = 600;
+
+    /**
+     * Frames to wait before reading evicted animation's model again, 
+     * if it failed to be read
+     */
+    public static final int REHYDRATE_RETRY_FRAMES = 600;
+
+    /**
+     * Evicted animations which are being read from the disk again 
+     */
+    private Set<Animation> rehydrating = new HashSet<Animation>();
+    private ExecutorService loader;
+
     private AnimationManager()
     {
         /* Default config */
@@ -82,6 +132,145 @@ public class AnimationManager
         return entry == null ? null : entry.animation;
     }
 
+    /**
+     * Evict least recently rendered animations until memory taken by 
+     * animations fits within the budget. Evicted animations keep 
+     * their armatures and actions, only meshes get deleted, and they 
+     * are read again from the disk once needed (see {@link #rehydrate(Animation)})
+     */
+    public void evict()
+    {
+        long budget = SnB.memoryBudget.get() * 1024L * 1024L;
+
+        /* Skin slabs can't be evicted, but they take the budget too */
+        long bytes = this.bytes + SkinSlab.getBytes();
+
+        if (bytes <= budget)
+        {
+            return;
+        }
+
+        List<Animation> candidates = new ArrayList<Animation>();
+
+        for (AnimationEntry entry : this.animations.values())
+        {
+            Animation animation = entry.animation;
+
+            if (!animation.evicted && !animation.meshes.isEmpty() && this.frame - animation.lastFrame > EVICTION_FRAMES)
+            {
+                candidates.add(animation);
+            }
+        }
+
+        candidates.sort(Comparator.comparingLong(a -> a.lastFrame));
+
+        for (Animation animation : candidates)
+        {
+            if (bytes <= budget)
+            {
+                break;
+            }
+
+            long before = this.bytes;
+
+            /* Armatures and actions stay, so only meshes are freed */
+            animation.delete();
+            animation.evicted = true;
+
+            bytes -= before - this.bytes;
+        }
+    }
+
+    /**
+     * Read evicted animation's model from the disk again. The model is 
+     * parsed on a loader thread, and swapped in on the main thread, 
+     * so until then the animation stays evicted (isn't rendered). If 
+     * it fails, it's tried again after {@link #REHYDRATE_RETRY_FRAMES}
+     */
+    public void rehydrate(Animation animation)
+    {
+        AnimationEntry entry = this.animations.get(animation.name);
+
+        animation.lastFrame = this.frame;
+
+        if (this.frame < animation.retryFrame)
+        {
+            return;
+        }
+
+        if (entry == null || entry.animation != animation)
+        {
+            animation.evicted = false;
+
+            return;
+        }
+
+        if (!this.rehydrating.add(animation))
+        {
+            return;
+        }
+
+        File file = new File(entry.directory, "model.bobj");
+
+        this.getLoader().submit(() ->
+        {
+            BOBJData data = null;
+            long lastModified = file.lastModified();
+
+            try (InputStream stream = new FileInputStream(file))
+            {
+                data = BOBJLoader.readData(stream, animation.name);
+            }
+            catch (Exception e)
+            {
+                System.err.println("Failed to read evicted animation '" + animation.name + "' again!");
+                e.printStackTrace();
+            }
+
+            BOBJData result = data;
+
+            Minecraft.getMinecraft().addScheduledTask(() ->
+            {
+                this.rehydrating.remove(animation);
+
+                /* The animation could have been replaced or removed 
+                 * while it was being read */
+                if (this.animations.get(animation.name) != entry || entry.animation != animation || !animation.evicted)
+                {
+                    return;
+                }
+
+                /* Meshes are gone, so it stays evicted until the 
+                 * model can be read again */
+                if (result == null)
+                {
+                    animation.retryFrame = this.frame + REHYDRATE_RETRY_FRAMES;
+
+                    return;
+                }
+
+                entry.reloadAnimation(result, lastModified);
+            });
+        });
+    }
+
+    private ExecutorService getLoader()
+    {
+        if (this.loader == null)
+        {
+            this.loader = Executors.newSingleThreadExecutor((runnable) ->
+            {
+                Thread thread = new Thread(runnable, "S&B model loader");
+
+                thread.setDaemon(true);
+
+                return thread;
+            });
+        }
+
+        return this.loader;
+    }
+
     /**
      * Get config much easily 
      */
@@ -105,16 +294,28 @@ public class AnimationManager
         public File directory;
         public long lastModified;
 
+        /**
+         * Modification time of the last reload which changed actions 
+         * or armatures (see {@link Animation#reload(BOBJData)}). It 
+         * always increases upon such change
+         */
+        public long lastChanged;
+
         public AnimationEntry(Animation animation, File directory, long lastModified)
         {
             this.animation = animation;
             this.directory = directory;
             this.lastModified = lastModified;
+            this.lastChanged = lastModified;
         }
 
         public void reloadAnimation(BOBJData data, long lastModified)
         {
-            this.animation.reload(data);
+            if (this.animation.reload(data))
+            {
+                this.lastChanged = Math.max(lastModified, this.lastChanged + 1);
+            }
+
             this.lastModified = lastModified;
         }
     }
@@ -5,6 +5,8 @@ import mchorse.mclib.utils.MathUtils;
 import mchorse.snb.api.bobj.BOBJArmature;
 import mchorse.snb.api.bobj.BOBJBone;
 import mchorse.snb.api.bobj.BOBJLoader;
+import mchorse.snb.api.bobj.BOBJQuantizer;
+import mchorse.snb.utils.FlightEvents;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.GlStateManager;
 import net.minecraft.client.renderer.OpenGlHelper;
@@ -12,18 +14,21 @@ import net.minecraft.client.renderer.RenderHelper;
 import net.minecraft.util.ResourceLocation;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
-import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.ContextCapabilities;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL15;
 import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GLContext;
 
 import javax.vecmath.Matrix4f;
 import javax.vecmath.Point2f;
 import javax.vecmath.Point3f;
 import javax.vecmath.Vector3f;
 import javax.vecmath.Vector4f;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -40,6 +45,17 @@ public class AnimationMesh
 {
     public static final boolean DEBUG = false;
 
+    /**
+     * Screen sizes (see {@link mchorse.snb.utils.FrustumUtils#getScreenSize(float[])}) 
+     * below which next simplified level of detail is used 
+     */
+    public static final float[] LEVEL_SIZES = {0.1F, 0.05F, 0.025F};
+
+    /**
+     * Temporaries of {@link #computeTangents(int, float[], float[], float[], boolean[], int)}
+     */
+    private static final ThreadLocal<TangentTemporaries> tangentTemporaries = ThreadLocal.withInitial(TangentTemporaries::new);
+
     /**
      * Owner of this mesh 
      */
@@ -70,6 +86,11 @@ public class AnimationMesh
      */
     public float alpha = 1F;
 
+    /**
+     * Current level of detail 
+     */
+    public int level;
+
     /* Sharp bending joints */
     public Joint armLeft;
     public Joint armRight;
@@ -82,12 +103,26 @@ public class AnimationMesh
      */
     private AnimationMeshConfig currentConfig;
 
-    /* Buffers */
-    public FloatBuffer vertices;
-    public FloatBuffer normals;
-    public FloatBuffer tangents;
-    public FloatBuffer textcoords;
-    public IntBuffer indices;
+    /* Types of static data on the GPU (texture coordinates are half 
+     * floats and indices are shorts when possible) */
+    public int texcoordType = GL11.GL_FLOAT;
+    public int indexType = GL11.GL_UNSIGNED_INT;
+
+    /**
+     * Half float texture coordinates are precise to a texel only for 
+     * textures up to this size
+     */
+    public static final int HALF_TEXTURE_SIZE = 2048;
+
+    /**
+     * The last texture checked by {@link #checkTexture(ResourceLocation)}
+     */
+    private ResourceLocation checkedTexture;
+
+    /**
+     * Amount of bytes allocated on the GPU for this mesh 
+     */
+    public long gpuBytes;
 
     /* GL buffers */
     public int vertexBuffer;
@@ -96,6 +131,21 @@ public class AnimationMesh
     public int texcoordBuffer;
     public int indexBuffer;
 
+    /* Static bind pose buffers for instanced rendering, they're created 
+     * only when the mesh gets rendered by {@link CrowdRenderer} */
+    public int bindVertexBuffer;
+    public int bindNormalBuffer;
+    public int boneBuffer;
+    public int weightBuffer;
+
+    /**
+     * Stamp of the controller's render which was uploaded last into 
+     * skinned buffers, and its level of detail (see 
+     * {@link mchorse.snb.api.animation.model.AnimatorController})
+     */
+    public long uploadStamp;
+    public int uploadLevel;
+
     public AnimationMesh(Animation owner, String name, BOBJLoader.CompiledData data)
     {
         this.owner = owner;
@@ -104,7 +154,11 @@ public class AnimationMesh
         this.armature = this.data.mesh.armature;
         this.armature.initArmature();
 
+        Object event = FlightEvents.UPLOAD.begin();
+
         this.initBuffers();
+        FlightEvents.UPLOAD.commit(event, owner.name + "/" + name, data.getVertices(), this.gpuBytes);
+
         this.initJoints();
     }
 
@@ -151,45 +205,269 @@ public class AnimationMesh
      * buffers for the data to be passed to VBOs and also generating the 
      * VBOs themselves. 
      */
-    private void initBuffers()
+    protected void initBuffers()
     {
-        this.vertices = BufferUtils.createFloatBuffer(this.data.posData.length);
-        this.vertices.put(this.data.posData).flip();
+        int count = this.data.getVertices();
+        Vector3f normal = new Vector3f();
+        ContextCapabilities caps = GLContext.getCapabilities();
 
-        this.normals = BufferUtils.createFloatBuffer(this.data.normData.length);
-        this.normals.put(this.data.normData).flip();
+        /* All of the data is uploaded through the shared scratch 
+         * buffer, the only copy which stays on the heap is compiled 
+         * data that is needed for skinning */
+        ByteBuffer buffer = AnimationBuffers.getUpload(count * 3 * 4);
+        FloatBuffer floats = buffer.asFloatBuffer();
 
-        this.tangents = BufferUtils.createFloatBuffer(this.data.posData.length);
+        for (int i = 0; i < count * 3; i++)
+        {
+            floats.put(this.data.getPosition(i / 3, i % 3));
+        }
 
-        this.textcoords = BufferUtils.createFloatBuffer(this.data.texData.length);
-        this.textcoords.put(this.data.texData).flip();
+        /* Positions and normals are skinned every frame, so positions 
+         * stay floats, while normals (as well as tangents) are 
+         * uploaded as shorts */
+        this.vertexBuffer = this.createBuffer(GL15.GL_ARRAY_BUFFER, buffer, GL15.GL_DYNAMIC_DRAW);
 
-        this.indices = BufferUtils.createIntBuffer(this.data.indexData.length);
-        this.indices.put(this.data.indexData).flip();
+        buffer = AnimationBuffers.getUpload(count * 3 * 2);
+        ShortBuffer shorts = buffer.asShortBuffer();
 
-        this.vertexBuffer = GL15.glGenBuffers();
-        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, this.vertexBuffer);
-        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, this.vertices, GL15.GL_DYNAMIC_DRAW);
+        for (int i = 0; i < count; i++)
+        {
+            this.data.getNormal(i, normal);
+            shorts.put(toShort(normal.x)).put(toShort(normal.y)).put(toShort(normal.z));
+        }
 
-        this.normalBuffer = GL15.glGenBuffers();
-        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, this.normalBuffer);
-        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, this.normals, GL15.GL_STATIC_DRAW);
+        this.normalBuffer = this.createBuffer(GL15.GL_ARRAY_BUFFER, buffer, GL15.GL_DYNAMIC_DRAW);
 
-        this.tangentBuffer = GL15.glGenBuffers();
+        buffer = AnimationBuffers.getUpload(count * 4 * 2);
 
-        this.texcoordBuffer = GL15.glGenBuffers();
-        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, this.texcoordBuffer);
-        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, this.textcoords, GL15.GL_STATIC_DRAW);
+        while (buffer.hasRemaining())
+        {
+            buffer.put((byte) 0);
+        }
 
-        this.indexBuffer = GL15.glGenBuffers();
-        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, this.indexBuffer);
-        GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, this.indices, GL15.GL_STATIC_DRAW);
+        buffer.flip();
+        this.tangentBuffer = this.createBuffer(GL15.GL_ARRAY_BUFFER, buffer, GL15.GL_DYNAMIC_DRAW);
+
+        /* Texture coordinates are static, so they can be half floats, 
+         * unless they're tiled (half floats lose precision past 1) */
+        boolean half = (caps.OpenGL30 || caps.GL_ARB_half_float_vertex) && this.areTexcoordsNormalized();
+
+        this.texcoordBuffer = this.createBuffer(GL15.GL_ARRAY_BUFFER, this.getTexcoords(half), GL15.GL_STATIC_DRAW);
+
+        /* Most of the meshes have less than 65536 vertices */
+        if (count <= 65536)
+        {
+            this.indexType = GL11.GL_UNSIGNED_SHORT;
+            buffer = AnimationBuffers.getUpload(this.data.indexData.length * 2);
+            shorts = buffer.asShortBuffer();
+
+            for (int index : this.data.indexData)
+            {
+                shorts.put((short) index);
+            }
+        }
+        else
+        {
+            this.indexType = GL11.GL_UNSIGNED_INT;
+            buffer = AnimationBuffers.getUpload(this.data.indexData.length * 4);
+            buffer.asIntBuffer().put(this.data.indexData);
+        }
+
+        this.indexBuffer = this.createBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
 
         /* Unbind the buffer. REQUIRED to avoid OpenGL crash */
         GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
         GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
     }
 
+    /**
+     * Whether this mesh can be skinned on the GPU 
+     */
+    public boolean canInstance()
+    {
+        return this.data.maxWeights <= CrowdRenderer.MAX_WEIGHTS;
+    }
+
+    /**
+     * Initiate static buffers for instanced rendering: positions and 
+     * normals in the bind pose, and up to four bone indices and 
+     * weights per vertex (unused ones have weight of 0)
+     */
+    public void initInstanceBuffers()
+    {
+        if (this.bindVertexBuffer != 0)
+        {
+            return;
+        }
+
+        int count = this.data.getVertices();
+        int max = this.data.maxWeights;
+        Vector3f normal = new Vector3f();
+
+        ByteBuffer buffer = AnimationBuffers.getUpload(count * 3 * 4);
+        FloatBuffer floats = buffer.asFloatBuffer();
+
+        for (int i = 0; i < count * 3; i++)
+        {
+            floats.put(this.data.getPosition(i / 3, i % 3));
+        }
+
+        this.bindVertexBuffer = this.createBuffer(GL15.GL_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
+
+        buffer = AnimationBuffers.getUpload(count * 3 * 2);
+        ShortBuffer shorts = buffer.asShortBuffer();
+
+        for (int i = 0; i < count; i++)
+        {
+            this.data.getNormal(i, normal);
+            shorts.put(toShort(normal.x)).put(toShort(normal.y)).put(toShort(normal.z));
+        }
+
+        this.bindNormalBuffer = this.createBuffer(GL15.GL_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
+
+        buffer = AnimationBuffers.getUpload(count * CrowdRenderer.MAX_WEIGHTS * 4);
+        floats = buffer.asFloatBuffer();
+
+        for (int i = 0; i < count; i++)
+        {
+            for (int w = 0; w < CrowdRenderer.MAX_WEIGHTS; w++)
+            {
+                float weight = w < max ? this.data.weightData[i * max + w] : 0;
+
+                floats.put(weight > 0 ? this.data.boneIndexData[i * max + w] : 0);
+            }
+        }
+
+        this.boneBuffer = this.createBuffer(GL15.GL_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
+
+        buffer = AnimationBuffers.getUpload(count * CrowdRenderer.MAX_WEIGHTS * 4);
+        floats = buffer.asFloatBuffer();
+
+        for (int i = 0; i < count; i++)
+        {
+            for (int w = 0; w < CrowdRenderer.MAX_WEIGHTS; w++)
+            {
+                floats.put(w < max ? Math.max(this.data.weightData[i * max + w], 0) : 0);
+            }
+        }
+
+        this.weightBuffer = this.createBuffer(GL15.GL_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
+
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        this.owner.updateBytes();
+    }
+
+    /**
+     * Generate a GL buffer and fill it with given data 
+     */
+    private int createBuffer(int target, ByteBuffer data, int usage)
+    {
+        int buffer = GL15.glGenBuffers();
+
+        GL15.glBindBuffer(target, buffer);
+        GL15.glBufferData(target, data, usage);
+        this.gpuBytes += data.remaining();
+
+        return buffer;
+    }
+
+    private boolean areTexcoordsNormalized()
+    {
+        for (int i = 0, c = this.data.getVertices() * 2; i < c; i++)
+        {
+            float value = this.data.getTexCoord(i / 2, i % 2);
+
+            if (value < 0 || value > 1)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Fill the upload buffer with texture coordinates either as half 
+     * floats or floats, and set {@link #texcoordType} accordingly
+     */
+    private ByteBuffer getTexcoords(boolean half)
+    {
+        int count = this.data.getVertices() * 2;
+        ByteBuffer buffer;
+
+        if (half)
+        {
+            this.texcoordType = GL30.GL_HALF_FLOAT;
+            buffer = AnimationBuffers.getUpload(count * 2);
+            ShortBuffer shorts = buffer.asShortBuffer();
+
+            for (int i = 0; i < count; i++)
+            {
+                shorts.put(BOBJQuantizer.toHalf(this.data.getTexCoord(i / 2, i % 2)));
+            }
+        }
+        else
+        {
+            this.texcoordType = GL11.GL_FLOAT;
+            buffer = AnimationBuffers.getUpload(count * 4);
+            FloatBuffer floats = buffer.asFloatBuffer();
+
+            for (int i = 0; i < count; i++)
+            {
+                floats.put(this.data.getTexCoord(i / 2, i % 2));
+            }
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Check the size of given texture (which should be bound) once it 
+     * changes, and switch texture coordinates to floats if the texture 
+     * is too big for half floats (see {@link #HALF_TEXTURE_SIZE})
+     */
+    public void checkTexture(ResourceLocation texture)
+    {
+        if (this.texcoordType != GL30.GL_HALF_FLOAT || texture == null || texture.equals(this.checkedTexture))
+        {
+            return;
+        }
+
+        this.checkedTexture = texture;
+
+        int width = GL11.glGetTexLevelParameteri(GL11.GL_TEXTURE_2D, 0, GL11.GL_TEXTURE_WIDTH);
+        int height = GL11.glGetTexLevelParameteri(GL11.GL_TEXTURE_2D, 0, GL11.GL_TEXTURE_HEIGHT);
+
+        if (Math.max(width, height) > HALF_TEXTURE_SIZE)
+        {
+            ByteBuffer buffer = this.getTexcoords(false);
+
+            /* Floats take twice as much as half floats */
+            this.gpuBytes += buffer.remaining() / 2;
+
+            GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, this.texcoordBuffer);
+            GL15.glBufferData(GL15.GL_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
+            this.owner.updateBytes();
+        }
+    }
+
+    /**
+     * Upload given data into a part of GL buffer 
+     */
+    protected void uploadBuffer(int glBuffer, int offset, ByteBuffer data)
+    {
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, glBuffer);
+        GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, offset, data);
+    }
+
+    /**
+     * Convert a normal's component into a normalized short 
+     */
+    private static short toShort(float value)
+    {
+        return (short) Math.round(MathUtils.clamp(value, -1, 1) * 32767F);
+    }
+
     /**
      * Set texture filtering
      */
@@ -214,13 +492,55 @@ public class AnimationMesh
     {
         GL15.glDeleteBuffers(this.vertexBuffer);
         GL15.glDeleteBuffers(this.normalBuffer);
+        GL15.glDeleteBuffers(this.tangentBuffer);
         GL15.glDeleteBuffers(this.texcoordBuffer);
         GL15.glDeleteBuffers(this.indexBuffer);
 
-        this.vertices = null;
-        this.normals = null;
-        this.textcoords = null;
-        this.indices = null;
+        if (this.bindVertexBuffer != 0)
+        {
+            GL15.glDeleteBuffers(this.bindVertexBuffer);
+            GL15.glDeleteBuffers(this.bindNormalBuffer);
+            GL15.glDeleteBuffers(this.boneBuffer);
+            GL15.glDeleteBuffers(this.weightBuffer);
+
+            this.bindVertexBuffer = this.bindNormalBuffer = this.boneBuffer = this.weightBuffer = 0;
+        }
+
+        this.gpuBytes = 0;
+    }
+
+    /**
+     * Get the amount of bytes which this mesh's data takes on the heap 
+     */
+    public long getHeapBytes()
+    {
+        return this.data.getBytes();
+    }
+
+    /**
+     * Select level of detail based on the size of the model on the 
+     * screen and given config 
+     */
+    public void selectLevel(AnimationMeshConfig config, float size)
+    {
+        this.level = 0;
+
+        if (config != null && (!config.lod || config.sharpBending))
+        {
+            return;
+        }
+
+        int levels = Math.min(this.data.getLevels(), LEVEL_SIZES.length + 1);
+
+        if (config != null && config.lodBias != 0)
+        {
+            size *= (float) Math.pow(2, -config.lodBias);
+        }
+
+        while (this.level + 1 < levels && size < LEVEL_SIZES[this.level])
+        {
+            this.level++;
+        }
     }
 
     /**
@@ -238,81 +558,103 @@ public class AnimationMesh
      */
     public void updateMesh(AnimationMeshConfig config)
     {
-        int max = this.data.maxWeights;
+        int vertices = this.data.getVertices();
+        float[] newVertices = AnimationBuffers.getVertices(vertices * 3);
+        float[] newNormals = AnimationBuffers.getNormals(vertices * 3);
 
-        Vector4f sumVertex = new Vector4f();
-        Vector4f resultVertex = new Vector4f(0, 0, 0, 0);
+        this.skin(this.armature.matrices, this.level, newVertices, newNormals);
 
-        Vector3f sumNormal = new Vector3f();
-        Vector3f resultNormal = new Vector3f(0, 0, 0);
-
-        float[] oldVertices = this.data.posData;
-        float[] newVertices = new float[oldVertices.length];
-
-        float[] oldNormals = this.data.normData;
-        float[] newNormals = new float[oldNormals.length];
+        // Apply sharp bending if enabled
+        if (config != null && config.sharpBending)
+        {
+            this.processSharpBending(newVertices, newNormals);
+        }
 
-        Matrix4f[] matrices = this.armature.matrices;
+        this.updateVertices(newVertices);
+        this.updateNormals(newNormals);
+        this.updateTangent(newVertices, newNormals);
+    }
 
-        for (int i = 0, c = newVertices.length / 4; i < c; i++)
-        {
-            int count = 0;
+    /**
+     * Skin vertices and normals of given level of detail with given 
+     * skinning matrices into given arrays. It only reads mesh's data, 
+     * so it can be called from any thread (see {@link SkinSlab})
+     */
+    public void skin(Matrix4f[] matrices, int level, float[] newVertices, float[] newNormals)
+    {
+        this.skin(matrices, level, newVertices, newNormals, 0);
+    }
 
-            for (int w = 0; w < max; w++)
-            {
-                float weight = this.data.weightData[i * max + w];
+    /**
+     * Skin given level of detail into arrays which start at given 
+     * vertex, so they can be only as big as the level (see {@link SkinSlab})
+     */
+    public void skin(Matrix4f[] matrices, int level, float[] newVertices, float[] newNormals, int offset)
+    {
+        long start = RenderProfiler.start();
 
-                if (weight > 0)
-                {
-                    int index = this.data.boneIndexData[i * max + w];
+        FlightEvents.countSkinned(this.data.levelVertices[level + 1] - this.data.levelVertices[level]);
+        this.data.skin(matrices, level, newVertices, newNormals, offset);
 
-                    sumVertex.set(oldVertices[i * 4], oldVertices[i * 4 + 1], oldVertices[i * 4 + 2], oldVertices[i * 4 + 3]);
-                    matrices[index].transform(sumVertex);
-                    sumVertex.scale(weight);
-                    resultVertex.add(sumVertex);
+        RenderProfiler.end(RenderProfiler.SKINNING, start);
+    }
 
-                    sumNormal.set(oldNormals[i * 3], oldNormals[i * 3 + 1], oldNormals[i * 3 + 2]);
-                    matrices[index].transform(sumNormal);
-                    sumNormal.scale(weight);
-                    resultNormal.add(sumNormal);
+    /**
+     * Extend given box (min XYZ and max XYZ) by the bounding box of 
+     * this mesh in its current pose. It uses precomputed per bone 
+     * extents and current bone matrices, so the result is conservative 
+     * and it's computed without touching any vertices.
+     */
+    public void expandBounds(float[] box)
+    {
+        float[] bounds = this.data.bounds;
+        Matrix4f[] matrices = this.armature.matrices;
+        int bones = bounds.length / 6 - 1;
 
-                    count++;
-                }
-            }
+        for (int i = 0; i <= bones; i++)
+        {
+            int offset = i * 6;
 
-            if (count == 0)
+            if (bounds[offset] > bounds[offset + 3])
             {
-                resultNormal.set(oldNormals[i * 3], oldNormals[i * 3 + 1], oldNormals[i * 3 + 2]);
-                resultVertex.set(oldVertices[i * 4], oldVertices[i * 4 + 1], oldVertices[i * 4 + 2], 1);
+                continue;
             }
 
-            /* Thanks MiaoNLI for the fix insight! */
-            resultVertex.x /= resultVertex.w;
-            resultVertex.y /= resultVertex.w;
-            resultVertex.z /= resultVertex.w;
+            float cx = (bounds[offset] + bounds[offset + 3]) / 2F;
+            float cy = (bounds[offset + 1] + bounds[offset + 4]) / 2F;
+            float cz = (bounds[offset + 2] + bounds[offset + 5]) / 2F;
+            float ex = (bounds[offset + 3] - bounds[offset]) / 2F;
+            float ey = (bounds[offset + 4] - bounds[offset + 1]) / 2F;
+            float ez = (bounds[offset + 5] - bounds[offset + 2]) / 2F;
 
-            newVertices[i * 4] = resultVertex.x;
-            newVertices[i * 4 + 1] = resultVertex.y;
-            newVertices[i * 4 + 2] = resultVertex.z;
-            newVertices[i * 4 + 3] = 1;
+            Matrix4f m = i < bones ? matrices[i] : null;
 
-            newNormals[i * 3] = resultNormal.x;
-            newNormals[i * 3 + 1] = resultNormal.y;
-            newNormals[i * 3 + 2] = resultNormal.z;
-
-            resultVertex.set(0, 0, 0, 0);
-            resultNormal.set(0, 0, 0);
-        }
+            if (m != null)
+            {
+                /* Transform the box by its center and absolute extents 
+                 * (Arvo's method), it's cheaper than eight corners */
+                float x = m.m00 * cx + m.m01 * cy + m.m02 * cz + m.m03;
+                float y = m.m10 * cx + m.m11 * cy + m.m12 * cz + m.m13;
+                float z = m.m20 * cx + m.m21 * cy + m.m22 * cz + m.m23;
+                float nx = Math.abs(m.m00) * ex + Math.abs(m.m01) * ey + Math.abs(m.m02) * ez;
+                float ny = Math.abs(m.m10) * ex + Math.abs(m.m11) * ey + Math.abs(m.m12) * ez;
+                float nz = Math.abs(m.m20) * ex + Math.abs(m.m21) * ey + Math.abs(m.m22) * ez;
+
+                cx = x;
+                cy = y;
+                cz = z;
+                ex = nx;
+                ey = ny;
+                ez = nz;
+            }
 
-        // Apply sharp bending if enabled
-        if (config != null && config.sharpBending)
-        {
-            this.processSharpBending(newVertices, newNormals);
+            box[0] = Math.min(box[0], cx - ex);
+            box[1] = Math.min(box[1], cy - ey);
+            box[2] = Math.min(box[2], cz - ez);
+            box[3] = Math.max(box[3], cx + ex);
+            box[4] = Math.max(box[4], cy + ey);
+            box[5] = Math.max(box[5], cz + ez);
         }
-
-        this.updateVertices(newVertices);
-        this.updateNormals(newNormals);
-        this.updateTangent(newVertices, newNormals);
     }
 
     /**
@@ -322,16 +664,13 @@ public class AnimationMesh
     {
         if (this.armLeft != null && !this.armLeft.isFilled())
         {
-            float rmn1 = 22 / 64F;
-            float rmx1 = 30 / 64F;
-            float rmn2 = 54 / 64F;
-            float rmx2 = 62 / 64F;
-            float rmn3 = 38 / 64F;
-            float rmx3 = 46 / 64F;
-
-            for (int i = 0, c = this.data.posData.length / 4; i < c; i++)
+            /* Joints keep corners of triangles (indices of the index 
+             * data) rather than vertices, as they need to know other 
+             * vertices of the same triangle */
+            for (int k = 0, c = this.data.levelIndices[1]; k < c; k++)
             {
-                double v = this.data.texData[i * 2 + 1];
+                int i = this.data.indexData[k];
+                double v = this.data.getTexCoord(i, 1);
                 JointType type = JointType.NONE;
 
                 for (int j = 0; j < this.data.maxWeights; j++)
@@ -364,9 +703,9 @@ public class AnimationMesh
                     }
                 }
 
-                if (((v >= rmn1 && v <= rmx1) || (v >= rmn2 && v <= rmx2) || (v >= rmn3 && v <= rmx3)) && type != JointType.NONE)
+                if (type != JointType.NONE && BOBJLoader.isJointTexCoord(v, 0))
                 {
-                    float z = this.data.posData[i * 4 + 2];
+                    float z = this.data.getPosition(i, 2);
                     Joint joint;
 
                     if (type == JointType.BODY)
@@ -385,7 +724,7 @@ public class AnimationMesh
                     if (joint != null)
                     {
                         List<Integer> list = z < 0 ? joint.back : joint.front;
-                        list.add(i);
+                        list.add(k);
                     }
                 }
             }
@@ -403,11 +742,25 @@ public class AnimationMesh
      */
     public void updateVertices(float[] data)
     {
-        this.vertices.clear();
-        this.vertices.put(data).flip();
+        this.updateVertices(data, 0);
+    }
 
-        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, this.vertexBuffer);
-        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, this.vertices, GL15.GL_DYNAMIC_DRAW);
+    /**
+     * Update mesh with given data, which starts at given vertex
+     */
+    public void updateVertices(float[] data, int offset)
+    {
+        long time = RenderProfiler.start();
+        int start = this.data.levelVertices[this.level] * 3;
+        int count = this.data.levelVertices[this.level + 1] * 3 - start;
+
+        ByteBuffer buffer = AnimationBuffers.getUpload(count * 4);
+
+        AnimationBuffers.getUploadFloats().put(data, start - offset * 3, count);
+        this.uploadBuffer(this.vertexBuffer, start * 4, buffer);
+        FlightEvents.countUploaded(count / 3);
+
+        RenderProfiler.end(RenderProfiler.UPLOAD, time);
     }
 
     /**
@@ -415,11 +768,43 @@ public class AnimationMesh
      */
     public void updateNormals(float[] data)
     {
-        this.normals.clear();
-        this.normals.put(data).flip();
+        this.updateNormals(data, 0);
+    }
 
-        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, this.normalBuffer);
-        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, this.normals, GL15.GL_DYNAMIC_DRAW);
+    /**
+     * Update mesh with given data, which starts at given vertex
+     */
+    public void updateNormals(float[] data, int offset)
+    {
+        long time = RenderProfiler.start();
+        int start = this.data.levelVertices[this.level];
+        int end = this.data.levelVertices[this.level + 1];
+
+        ByteBuffer buffer = AnimationBuffers.getUpload((end - start) * 3 * 2);
+        ShortBuffer normals = AnimationBuffers.getUploadShorts();
+
+        for (int i = start - offset; i < end - offset; i++)
+        {
+            float x = data[i * 3];
+            float y = data[i * 3 + 1];
+            float z = data[i * 3 + 2];
+            float length = (float) Math.sqrt(x * x + y * y + z * z);
+
+            /* Shorts can't hold normals which are longer than one 
+             * (i.e. scaled bones), so they get normalized */
+            if (length > 0)
+            {
+                x /= length;
+                y /= length;
+                z /= length;
+            }
+
+            normals.put(toShort(x)).put(toShort(y)).put(toShort(z));
+        }
+
+        this.uploadBuffer(this.normalBuffer, start * 3 * 2, buffer);
+
+        RenderProfiler.end(RenderProfiler.UPLOAD, time);
     }
 
     /**
@@ -427,14 +812,48 @@ public class AnimationMesh
      */
     public void updateTangent(float[] newVertices, float[] newNormals)
     {
-        float[] newTangents = new float[newVertices.length];
-        boolean[] updated = new boolean[newVertices.length];
+        int count = this.data.getVertices();
+        float[] newTangents = AnimationBuffers.getTangents(count * 4);
+        boolean[] updated = AnimationBuffers.getFlags(count, this.data.levelVertices[this.level], this.data.levelVertices[this.level + 1]);
+
+        this.computeTangents(this.level, newVertices, newNormals, newTangents, updated);
+        this.updateTangents(newTangents);
+    }
+
+    /**
+     * Compute tangents of given level of detail out of skinned 
+     * vertices and normals. Flags should be cleared within the level's 
+     * vertex range. Like {@link #skin(Matrix4f[], int, float[], float[])}, 
+     * it can be called from any thread
+     */
+    public void computeTangents(int level, float[] newVertices, float[] newNormals, float[] newTangents, boolean[] updated)
+    {
+        this.computeTangents(level, newVertices, newNormals, newTangents, updated, 0);
+    }
+
+    /**
+     * Compute tangents of given level of detail into arrays (including 
+     * the input ones and flags) which start at given vertex
+     */
+    public void computeTangents(int level, float[] newVertices, float[] newNormals, float[] newTangents, boolean[] updated, int offset)
+    {
+        long start = RenderProfiler.start();
+
+        /* Temporaries are per thread, since it may run on several 
+         * threads at once */
+        TangentTemporaries temporaries = tangentTemporaries.get();
+        Point3f[] vertices = temporaries.vertices;
+        Point2f[] uvs = temporaries.uvs;
+        Vector3f normal = temporaries.normal;
 
-        for (int i = 0; i < this.data.indexData.length / 3; i++)
+        for (int i = this.data.levelIndices[level] / 3, c = this.data.levelIndices[level + 1] / 3; i < c; i++)
         {
-            int i0 = this.data.indexData[i * 3];
-            int i1 = this.data.indexData[i * 3 + 1];
-            int i2 = this.data.indexData[i * 3 + 2];
+            int v0 = this.data.indexData[i * 3];
+            int v1 = this.data.indexData[i * 3 + 1];
+            int v2 = this.data.indexData[i * 3 + 2];
+            int i0 = v0 - offset;
+            int i1 = v1 - offset;
+            int i2 = v2 - offset;
 
             if (updated[i0])
             {
@@ -459,19 +878,15 @@ public class AnimationMesh
             }
             else
             {
-                Point3f[] vertices = new Point3f[3];
-                Point2f[] uvs = new Point2f[3];
-                Vector3f normal = new Vector3f();
+                vertices[0].set(newVertices[i0 * 3], newVertices[i0 * 3 + 1], newVertices[i0 * 3 + 2]);
+                vertices[1].set(newVertices[i1 * 3], newVertices[i1 * 3 + 1], newVertices[i1 * 3 + 2]);
+                vertices[2].set(newVertices[i2 * 3], newVertices[i2 * 3 + 1], newVertices[i2 * 3 + 2]);
 
-                vertices[0] = new Point3f(newVertices[i0 * 4], newVertices[i0 * 4 + 1], newVertices[i0 * 4 + 2]);
-                vertices[1] = new Point3f(newVertices[i1 * 4], newVertices[i1 * 4 + 1], newVertices[i1 * 4 + 2]);
-                vertices[2] = new Point3f(newVertices[i2 * 4], newVertices[i2 * 4 + 1], newVertices[i2 * 4 + 2]);
+                uvs[0].set(this.data.getTexCoord(v0, 0), this.data.getTexCoord(v0, 1));
+                uvs[1].set(this.data.getTexCoord(v1, 0), this.data.getTexCoord(v1, 1));
+                uvs[2].set(this.data.getTexCoord(v2, 0), this.data.getTexCoord(v2, 1));
 
-                uvs[0] = new Point2f((float) this.data.texData[i0 * 2], (float) this.data.texData[i0 * 2 + 1]);
-                uvs[1] = new Point2f((float) this.data.texData[i1 * 2], (float) this.data.texData[i1 * 2 + 1]);
-                uvs[2] = new Point2f((float) this.data.texData[i2 * 2], (float) this.data.texData[i2 * 2 + 1]);
-
-                normal = new Vector3f(newNormals[i0 * 3], newNormals[i0 * 3 + 1], newNormals[i0 * 3 + 2]);
+                normal.set(newNormals[i0 * 3], newNormals[i0 * 3 + 1], newNormals[i0 * 3 + 2]);
 
                 Vector4f tangent = VertexBuilder.calcTangent(vertices, uvs, normal);
 
@@ -484,11 +899,38 @@ public class AnimationMesh
             }
         }
 
-        this.tangents.clear();
-        this.tangents.put(newTangents).flip();
+        RenderProfiler.end(RenderProfiler.TANGENTS, start);
+    }
+
+    /**
+     * Upload given tangents
+     */
+    public void updateTangents(float[] newTangents)
+    {
+        this.updateTangents(newTangents, 0);
+    }
+
+    /**
+     * Upload given tangents, which start at given vertex
+     */
+    public void updateTangents(float[] newTangents, int offset)
+    {
+        long time = RenderProfiler.start();
+        int start = this.data.levelVertices[this.level];
+        int end = this.data.levelVertices[this.level + 1];
+
+        ByteBuffer buffer = AnimationBuffers.getUpload((end - start) * 4 * 2);
+        ShortBuffer tangents = AnimationBuffers.getUploadShorts();
+
+        /* Tangents are already scaled to the range of shorts */
+        for (int i = (start - offset) * 4; i < (end - offset) * 4; i++)
+        {
+            tangents.put((short) newTangents[i]);
+        }
+
+        this.uploadBuffer(this.tangentBuffer, start * 4 * 2, buffer);
 
-        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, this.tangentBuffer);
-        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, this.tangents, GL15.GL_DYNAMIC_DRAW);
+        RenderProfiler.end(RenderProfiler.UPLOAD, time);
     }
 
     /**
@@ -515,6 +957,7 @@ public class AnimationMesh
         if (texture != null)
         {
             mc.renderEngine.bindTexture(texture);
+            this.checkTexture(texture);
 
             if (config != null)
             {
@@ -536,15 +979,15 @@ public class AnimationMesh
 
         /* Bind vertex array */
         GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, this.vertexBuffer);
-        GL11.glVertexPointer(4, GL11.GL_FLOAT, 0, 0);
+        GL11.glVertexPointer(3, GL11.GL_FLOAT, 0, 0);
 
         /* Bind normal array */
         GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, this.normalBuffer);
-        GL11.glNormalPointer(GL11.GL_FLOAT, 0, 0);
+        GL11.glNormalPointer(GL11.GL_SHORT, 0, 0);
 
         /* Bind UV array */
         GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, this.texcoordBuffer);
-        GL11.glTexCoordPointer(2, GL11.GL_FLOAT, 0, 0);
+        GL11.glTexCoordPointer(2, this.texcoordType, 0, 0);
 
         GL11.glEnableClientState(GL11.GL_VERTEX_ARRAY);
         GL11.glEnableClientState(GL11.GL_NORMAL_ARRAY);
@@ -554,13 +997,20 @@ public class AnimationMesh
         if (VertexBuilder.tangentAttrib != -1)
         {
             GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, this.tangentBuffer);
-            GL20.glVertexAttribPointer(VertexBuilder.tangentAttrib, 4, GL11.GL_FLOAT, false, 0, 0);
+            GL20.glVertexAttribPointer(VertexBuilder.tangentAttrib, 4, GL11.GL_SHORT, false, 0, 0);
             GL20.glEnableVertexAttribArray(VertexBuilder.tangentAttrib);
         }
 
         /* Render with index buffer */
         GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, this.indexBuffer);
-        GL11.glDrawElements(GL11.GL_TRIANGLES, this.data.indexData.length, GL11.GL_UNSIGNED_INT, 0);
+        int first = this.data.levelIndices[this.level];
+        long size = this.indexType == GL11.GL_UNSIGNED_SHORT ? 2 : 4;
+
+        long start = RenderProfiler.start();
+
+        GL11.glDrawElements(GL11.GL_TRIANGLES, this.data.levelIndices[this.level + 1] - first, this.indexType, first * size);
+
+        RenderProfiler.end(RenderProfiler.DRAW, start);
 
         /* Unbind the buffer. REQUIRED to avoid OpenGL crash */
         GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
@@ -653,7 +1103,7 @@ public class AnimationMesh
     /**
      * Get resource location based on the passed config 
      */
-    private ResourceLocation getTexture(AnimationMeshConfig config)
+    ResourceLocation getTexture(AnimationMeshConfig config)
     {
         if (config == null)
         {
@@ -663,6 +1113,17 @@ public class AnimationMesh
         return config.texture == null ? this.texture : config.texture;
     }
 
+    /**
+     * Triangle's corners, texture coordinates and normal for computing 
+     * its tangent 
+     */
+    private static class TangentTemporaries
+    {
+        public Point3f[] vertices = {new Point3f(), new Point3f(), new Point3f()};
+        public Point2f[] uvs = {new Point2f(), new Point2f(), new Point2f()};
+        public Vector3f normal = new Vector3f();
+    }
+
     /**
      * Joint class for sharp bending
      */
@@ -702,23 +1163,23 @@ public class AnimationMesh
         {
             int prevIndex = 0;
 
-            for (int i : indices)
+            for (int k : indices)
             {
-                float x = data.posData[i * 4];
-                float y = data.posData[i * 4 + 1] + factor * 4 / 16F - 2 / 16F;
-                float z = data.posData[i * 4 + 2];
+                int i = data.indexData[k];
+                float x = data.getPosition(i, 0);
+                float y = data.getPosition(i, 1) + factor * 4 / 16F - 2 / 16F;
+                float z = data.getPosition(i, 2);
 
                 temporary.set(x, y, z, 1);
                 armature.matrices[this.top.index].transform(temporary);
 
-                posData[i * 4] = temporary.x;
-                posData[i * 4 + 1] = temporary.y;
-                posData[i * 4 + 2] = temporary.z;
-                posData[i * 4 + 3] = temporary.w;
+                posData[i * 3] = temporary.x;
+                posData[i * 3 + 1] = temporary.y;
+                posData[i * 3 + 2] = temporary.z;
 
                 /* Copying the normal from the third/second side */
-                int base = i - i % 3;
-                int a = i - base;
+                int base = k - k % 3;
+                int a = k - base;
                 int b = prevIndex - base;
                 int c = 0;
 
@@ -742,7 +1203,7 @@ public class AnimationMesh
                     c = a == 1 ? 0 : 1;
                 }
 
-                c += base;
+                c = data.indexData[c + base];
 
                 normalData[i * 3] = normalData[c * 3];
                 normalData[i * 3 + 1] = normalData[c * 3 + 1];
@@ -750,12 +1211,14 @@ public class AnimationMesh
 
                 if (b >= 0)
                 {
-                    normalData[prevIndex * 3] = normalData[c * 3];
-                    normalData[prevIndex * 3 + 1] = normalData[c * 3 + 1];
-                    normalData[prevIndex * 3 + 2] = normalData[c * 3 + 2];
+                    int prev = data.indexData[prevIndex];
+
+                    normalData[prev * 3] = normalData[c * 3];
+                    normalData[prev * 3 + 1] = normalData[c * 3 + 1];
+                    normalData[prev * 3 + 2] = normalData[c * 3 + 2];
                 }
 
-                prevIndex = i;
+                prevIndex = k;
             }
         }
     }
@@ -55,6 +55,19 @@ public class AnimationMeshConfig
      */
     public boolean sharpBending = false;
 
+    /**
+     * Whether simplified levels of detail can be used when the model 
+     * is small on the screen (meshes with sharp bending always use the 
+     * original geometry)
+     */
+    public boolean lod = true;
+
+    /**
+     * Level of detail bias. Every positive unit makes simplified levels 
+     * kick in twice as early, every negative one twice as late
+     */
+    public float lodBias = 0;
+
     /**
      * Clone this object 
      */
@@ -71,6 +84,8 @@ public class AnimationMeshConfig
         config.lighting = this.lighting;
         config.color = this.color;
         config.sharpBending = this.sharpBending;
+        config.lod = this.lod;
+        config.lodBias = this.lodBias;
 
         return config;
     }
@@ -119,6 +134,16 @@ public class AnimationMeshConfig
         {
             this.sharpBending = tag.getBoolean("SharpBending");
         }
+
+        if (tag.hasKey("LOD", NBT.TAG_ANY_NUMERIC))
+        {
+            this.lod = tag.getBoolean("LOD");
+        }
+
+        if (tag.hasKey("LODBias", NBT.TAG_ANY_NUMERIC))
+        {
+            this.lodBias = tag.getFloat("LODBias");
+        }
     }
 
     public NBTTagCompound toNBT(NBTTagCompound tag)
@@ -136,6 +161,8 @@ public class AnimationMeshConfig
         tag.setBoolean("Lighting", this.lighting);
         tag.setInteger("Color", this.color);
         tag.setBoolean("SharpBending", this.sharpBending);
+        tag.setBoolean("LOD", this.lod);
+        tag.setFloat("LODBias", this.lodBias);
 
         return tag;
     }
@@ -0,0 +1,776 @@
+package mchorse.snb.api.animation;
+
+import mchorse.snb.SnB;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.GlStateManager;
+import net.minecraft.client.renderer.OpenGlHelper;
+import net.minecraft.client.renderer.RenderHelper;
+import net.minecraft.entity.EntityLivingBase;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.client.MinecraftForgeClient;
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.ARBDrawInstanced;
+import org.lwjgl.opengl.ARBInstancedArrays;
+import org.lwjgl.opengl.ContextCapabilities;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL33;
+import org.lwjgl.opengl.GLContext;
+
+import javax.vecmath.Matrix4f;
+import java.lang.reflect.Field;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Crowd renderer
+ *
+ * Instanced rendering of models which are rendered many times in a
+ * frame (like lots of NPCs with the same model). Instead of skinning,
+ * uploading and drawing every entity separately, entities only record
+ * their model-view matrix, light and bone palette, and once entities
+ * are rendered (before translucent blocks, particles and weather)
+ * every mesh is drawn with one instanced call per texture. Meshes are skinned on the GPU from static bind pose buffers
+ * and a float texture of bone palettes (a row per instance).
+ *
+ * It requires instanced arrays, instanced draws and float textures,
+ * and it steps aside when Optifine's shader pack is in use (the pack
+ * couldn't shade these meshes). Entities which are hurt, invisible or
+ * glowing, and meshes with sharp bending or more than
+ * {@link #MAX_WEIGHTS} weights are rendered as before.
+ */
+@SideOnly(Side.CLIENT)
+public class CrowdRenderer
+{
+    public static final CrowdRenderer INSTANCE = new CrowdRenderer();
+
+    /**
+     * Max amount of bone weights per vertex
+     */
+    public static final int MAX_WEIGHTS = 4;
+
+    /**
+     * How many times a model should have been rendered in the last
+     * frame to be rendered instanced
+     */
+    public static final int MIN_INSTANCES = 4;
+
+    /**
+     * Max amount of instances per draw call (i.e. height of the palette
+     * texture)
+     */
+    public static final int MAX_INSTANCES = 1024;
+
+    /**
+     * Floats per instance: model-view matrix, color, and lightmap
+     * coordinates with shading flag and instance's row
+     */
+    private static final int STRIDE = 24;
+
+    /* Generic vertex attributes */
+    private static final int POSITION = 0;
+    private static final int NORMAL = 1;
+    private static final int TEXCOORD = 2;
+    private static final int BONES = 3;
+    private static final int WEIGHTS = 4;
+    private static final int MODEL = 5;
+    private static final int COLOR = 9;
+    private static final int LIGHT = 10;
+
+    private static final String VERTEX =
+        "#version 120\n" +
+        "attribute vec3 position;\n" +
+        "attribute vec3 normal;\n" +
+        "attribute vec2 texcoord;\n" +
+        "attribute vec4 bones;\n" +
+        "attribute vec4 weights;\n" +
+        "attribute vec4 model0;\n" +
+        "attribute vec4 model1;\n" +
+        "attribute vec4 model2;\n" +
+        "attribute vec4 model3;\n" +
+        "attribute vec4 color;\n" +
+        "attribute vec4 light;\n" +
+        "uniform sampler2D palette;\n" +
+        "uniform vec2 paletteSize;\n" +
+        "varying vec2 uv;\n" +
+        "varying vec2 lightmap;\n" +
+        "varying float fogDistance;\n" +
+        "vec4 row(float bone, float index)\n" +
+        "{\n" +
+        "    return texture2D(palette, vec2((bone * 3.0 + index + 0.5) / paletteSize.x, (light.w + 0.5) / paletteSize.y));\n" +
+        "}\n" +
+        "void main()\n" +
+        "{\n" +
+        "    vec4 vertex = vec4(position, 1.0);\n" +
+        "    vec3 skinned = vec3(0.0);\n" +
+        "    vec3 skinnedNormal = vec3(0.0);\n" +
+        "    float total = 0.0;\n" +
+        "    for (int i = 0; i < 4; i++)\n" +
+        "    {\n" +
+        "        float weight = weights[i];\n" +
+        "        if (weight > 0.0)\n" +
+        "        {\n" +
+        "            vec4 r0 = row(bones[i], 0.0);\n" +
+        "            vec4 r1 = row(bones[i], 1.0);\n" +
+        "            vec4 r2 = row(bones[i], 2.0);\n" +
+        "            skinned += vec3(dot(r0, vertex), dot(r1, vertex), dot(r2, vertex)) * weight;\n" +
+        "            skinnedNormal += vec3(dot(r0.xyz, normal), dot(r1.xyz, normal), dot(r2.xyz, normal)) * weight;\n" +
+        "            total += weight;\n" +
+        "        }\n" +
+        "    }\n" +
+        "    if (total > 0.0)\n" +
+        "    {\n" +
+        "        skinned /= total;\n" +
+        "    }\n" +
+        "    else\n" +
+        "    {\n" +
+        "        skinned = position;\n" +
+        "        skinnedNormal = normal;\n" +
+        "    }\n" +
+        "    mat4 model = mat4(model0, model1, model2, model3);\n" +
+        "    vec4 eye = model * vec4(skinned, 1.0);\n" +
+        "    float shade = 1.0;\n" +
+        "    if (light.z > 0.0)\n" +
+        "    {\n" +
+        "        vec3 n = normalize(mat3(model) * skinnedNormal);\n" +
+        "        float l0 = max(dot(n, normalize(gl_LightSource[0].position.xyz)), 0.0);\n" +
+        "        float l1 = max(dot(n, normalize(gl_LightSource[1].position.xyz)), 0.0);\n" +
+        "        shade = min(1.0, 0.4 + 0.6 * (l0 + l1));\n" +
+        "    }\n" +
+        "    gl_Position = gl_ProjectionMatrix * eye;\n" +
+        "    gl_FrontColor = vec4(color.rgb * shade, color.a);\n" +
+        "    uv = texcoord;\n" +
+        "    lightmap = (light.xy + 8.0) / 256.0;\n" +
+        "    fogDistance = length(eye.xyz);\n" +
+        "}\n";
+
+    private static final String FRAGMENT =
+        "#version 120\n" +
+        "uniform sampler2D diffuse;\n" +
+        "uniform sampler2D lightmapTexture;\n" +
+        "uniform vec3 fog;\n" +
+        "varying vec2 uv;\n" +
+        "varying vec2 lightmap;\n" +
+        "varying float fogDistance;\n" +
+        "void main()\n" +
+        "{\n" +
+        "    vec4 color = texture2D(diffuse, uv) * gl_Color * texture2D(lightmapTexture, lightmap);\n" +
+        "    if (color.a <= 0.1)\n" +
+        "    {\n" +
+        "        discard;\n" +
+        "    }\n" +
+        "    if (fog.z > 0.0)\n" +
+        "    {\n" +
+        "        float factor = clamp((fog.y - fogDistance) / max(fog.y - fog.x, 0.001), 0.0, 1.0);\n" +
+        "        color.rgb = mix(gl_Fog.color.rgb, color.rgb, factor);\n" +
+        "    }\n" +
+        "    gl_FragColor = color;\n" +
+        "}\n";
+
+    /**
+     * Batches of current frame, and a pool of batches for reuse
+     */
+    private Map<AnimationMesh, List<Batch>> batches = new IdentityHashMap<AnimationMesh, List<Batch>>();
+    private List<Batch> pool = new ArrayList<Batch>();
+
+    /**
+     * How many times animations were rendered in the world in current
+     * and in the last frames
+     */
+    private Map<Animation, Integer> counts = new HashMap<Animation, Integer>();
+    private Map<Animation, Integer> lastCounts = new HashMap<Animation, Integer>();
+
+    /* Captured state of the entity which is being recorded */
+    private FloatBuffer modelView = BufferUtils.createFloatBuffer(16);
+    private float lightX;
+    private float lightY;
+
+    /* Fog state captured during entity rendering */
+    private boolean fog;
+    private float fogStart;
+    private float fogEnd;
+
+    /* GL resources */
+    private int program;
+    private boolean failed;
+    private int paletteTexture;
+    private int instanceBuffer;
+    private int paletteWidth;
+    private FloatBuffer paletteData = BufferUtils.createFloatBuffer(0);
+    private FloatBuffer instanceData = BufferUtils.createFloatBuffer(0);
+
+    private Boolean supported;
+    private Field shaderPackLoaded;
+
+    /**
+     * Whether the GPU supports everything that is needed
+     */
+    public boolean isSupported()
+    {
+        if (this.supported == null)
+        {
+            ContextCapabilities caps = GLContext.getCapabilities();
+
+            this.supported = caps.OpenGL20
+                && (caps.OpenGL31 || caps.GL_ARB_draw_instanced)
+                && (caps.OpenGL33 || caps.GL_ARB_instanced_arrays)
+                && (caps.OpenGL30 || caps.GL_ARB_texture_float)
+                && GL11.glGetInteger(GL20.GL_MAX_VERTEX_TEXTURE_IMAGE_UNITS) > 0;
+
+            try
+            {
+                this.shaderPackLoaded = Class.forName("net.optifine.shaders.Shaders").getField("shaderPackLoaded");
+            }
+            catch (Exception e)
+            {}
+        }
+
+        return this.supported && !this.failed && !this.isShaderPackLoaded();
+    }
+
+    private boolean isShaderPackLoaded()
+    {
+        try
+        {
+            return this.shaderPackLoaded != null && this.shaderPackLoaded.getBoolean(null);
+        }
+        catch (Exception e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Whether given animation should be rendered instanced for given
+     * entity. It also counts how many times the animation was
+     * rendered, so it should be called only once per render in the
+     * world
+     */
+    public boolean canRender(Animation animation, Map<String, AnimationMeshConfig> configs, EntityLivingBase entity, float alpha)
+    {
+        Integer count = this.counts.get(animation);
+
+        this.counts.put(animation, count == null ? 1 : count + 1);
+
+        if (!SnB.instancedCrowds.get() || alpha < 1 || entity.hurtTime > 0 || entity.deathTime > 0 || entity.isGlowing())
+        {
+            return false;
+        }
+
+        Integer last = this.lastCounts.get(animation);
+
+        if (last == null || last < MIN_INSTANCES || MinecraftForgeClient.getRenderPass() != 0 || !this.isSupported())
+        {
+            return false;
+        }
+
+        for (AnimationMesh mesh : animation.meshes)
+        {
+            AnimationMeshConfig config = configs == null ? null : configs.get(mesh.name);
+
+            if (!mesh.canInstance() || (config != null && config.sharpBending))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Capture current model-view matrix and lightmap coordinates of the
+     * entity which is going to be recorded
+     */
+    public void begin()
+    {
+        this.modelView.clear();
+        GL11.glGetFloat(GL11.GL_MODELVIEW_MATRIX, this.modelView);
+
+        this.lightX = OpenGlHelper.lastBrightnessX;
+        this.lightY = OpenGlHelper.lastBrightnessY;
+
+        if (this.batches.isEmpty())
+        {
+            this.fog = GL11.glIsEnabled(GL11.GL_FOG);
+            this.fogStart = GL11.glGetFloat(GL11.GL_FOG_START);
+            this.fogEnd = GL11.glGetFloat(GL11.GL_FOG_END);
+        }
+    }
+
+    /**
+     * Record an instance of given mesh with its current level of
+     * detail and bone palette
+     */
+    public void add(AnimationMesh mesh, AnimationMeshConfig config)
+    {
+        if (config != null && !config.visible)
+        {
+            return;
+        }
+
+        ResourceLocation texture = mesh.getTexture(config);
+        int filtering = config == null ? GL11.GL_NEAREST : config.filtering;
+        boolean smooth = config != null && config.smooth && config.normals;
+        Batch batch = this.getBatch(mesh, texture, filtering, smooth);
+
+        int color = config != null ? config.color : 0xffffff;
+        boolean lighting = config == null || config.lighting;
+        float[] instance = batch.addInstance();
+
+        for (int i = 0; i < 16; i++)
+        {
+            instance[batch.instanceOffset + i] = this.modelView.get(i);
+        }
+
+        instance[batch.instanceOffset + 16] = (color >> 16 & 255) / 255F;
+        instance[batch.instanceOffset + 17] = (color >> 8 & 255) / 255F;
+        instance[batch.instanceOffset + 18] = (color & 255) / 255F;
+        instance[batch.instanceOffset + 19] = 1;
+        instance[batch.instanceOffset + 20] = lighting ? this.lightX : 240;
+        instance[batch.instanceOffset + 21] = lighting ? this.lightY : 240;
+        instance[batch.instanceOffset + 22] = config == null || config.normals ? 1 : 0;
+
+        float[] palette = batch.palette;
+        int offset = batch.paletteOffset;
+
+        for (Matrix4f m : mesh.armature.matrices)
+        {
+            if (m == null)
+            {
+                offset += 12;
+
+                continue;
+            }
+
+            palette[offset++] = m.m00; palette[offset++] = m.m01; palette[offset++] = m.m02; palette[offset++] = m.m03;
+            palette[offset++] = m.m10; palette[offset++] = m.m11; palette[offset++] = m.m12; palette[offset++] = m.m13;
+            palette[offset++] = m.m20; palette[offset++] = m.m21; palette[offset++] = m.m22; palette[offset++] = m.m23;
+        }
+
+        mesh.owner.lastFrame = AnimationManager.INSTANCE.frame;
+    }
+
+    private Batch getBatch(AnimationMesh mesh, ResourceLocation texture, int filtering, boolean smooth)
+    {
+        List<Batch> batches = this.batches.get(mesh);
+
+        if (batches == null)
+        {
+            batches = new ArrayList<Batch>();
+            this.batches.put(mesh, batches);
+        }
+
+        for (Batch batch : batches)
+        {
+            if (batch.level == mesh.level && batch.filtering == filtering && batch.smooth == smooth && batch.texture.equals(texture))
+            {
+                return batch;
+            }
+        }
+
+        Batch batch = this.pool.isEmpty() ? new Batch() : this.pool.remove(this.pool.size() - 1);
+
+        batch.set(mesh, texture, filtering, smooth);
+        batches.add(batch);
+
+        return batch;
+    }
+
+    /**
+     * Draw all recorded instances. It should be called once entities 
+     * are rendered, but before anything translucent is, otherwise 
+     * crowds would be drawn over water, stained glass and rain
+     */
+    public void flush()
+    {
+        if (this.batches.isEmpty())
+        {
+            return;
+        }
+
+        if (this.ensureProgram())
+        {
+            this.render();
+        }
+
+        for (List<Batch> batches : this.batches.values())
+        {
+            for (Batch batch : batches)
+            {
+                batch.mesh = null;
+                batch.texture = null;
+                this.pool.add(batch);
+            }
+        }
+
+        this.batches.clear();
+    }
+
+    /**
+     * Draw whatever is left, and start counting renders of the next 
+     * frame. It should be called once the world is rendered
+     */
+    public void endFrame()
+    {
+        this.flush();
+
+        Map<Animation, Integer> counts = this.lastCounts;
+
+        this.lastCounts = this.counts;
+        this.counts = counts;
+        this.counts.clear();
+    }
+
+    private void render()
+    {
+        Minecraft mc = Minecraft.getMinecraft();
+
+        GlStateManager.enableDepth();
+        GlStateManager.depthMask(true);
+        GlStateManager.disableCull();
+        GlStateManager.enableBlend();
+        GlStateManager.blendFunc(GlStateManager.SourceFactor.SRC_ALPHA, GlStateManager.DestFactor.ONE_MINUS_SRC_ALPHA);
+        RenderHelper.enableStandardItemLighting();
+        mc.entityRenderer.enableLightmap();
+
+        GL20.glUseProgram(this.program);
+        GL20.glUniform1i(GL20.glGetUniformLocation(this.program, "diffuse"), 0);
+        GL20.glUniform1i(GL20.glGetUniformLocation(this.program, "lightmapTexture"), 1);
+        GL20.glUniform1i(GL20.glGetUniformLocation(this.program, "palette"), 2);
+        GL20.glUniform3f(GL20.glGetUniformLocation(this.program, "fog"), this.fogStart, this.fogEnd, this.fog ? 1 : 0);
+
+        int paletteSize = GL20.glGetUniformLocation(this.program, "paletteSize");
+
+        for (int i = POSITION; i <= LIGHT; i++)
+        {
+            GL20.glEnableVertexAttribArray(i);
+        }
+
+        for (int i = MODEL; i <= LIGHT; i++)
+        {
+            this.setDivisor(i, 1);
+        }
+
+        for (List<Batch> batches : this.batches.values())
+        {
+            for (Batch batch : batches)
+            {
+                this.render(mc, batch, paletteSize);
+            }
+        }
+
+        for (int i = MODEL; i <= LIGHT; i++)
+        {
+            this.setDivisor(i, 0);
+        }
+
+        for (int i = POSITION; i <= LIGHT; i++)
+        {
+            GL20.glDisableVertexAttribArray(i);
+        }
+
+        GL20.glUseProgram(0);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+        mc.entityRenderer.disableLightmap();
+        RenderHelper.disableStandardItemLighting();
+        GlStateManager.shadeModel(GL11.GL_FLAT);
+        GlStateManager.disableBlend();
+        GlStateManager.enableCull();
+    }
+
+    private void render(Minecraft mc, Batch batch, int paletteSize)
+    {
+        AnimationMesh mesh = batch.mesh;
+
+        mesh.initInstanceBuffers();
+        mc.renderEngine.bindTexture(batch.texture);
+        mesh.checkTexture(batch.texture);
+        mesh.setFiltering(batch.filtering);
+        GlStateManager.shadeModel(batch.smooth ? GL11.GL_SMOOTH : GL11.GL_FLAT);
+
+        /* Static per vertex data */
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, mesh.bindVertexBuffer);
+        GL20.glVertexAttribPointer(POSITION, 3, GL11.GL_FLOAT, false, 0, 0);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, mesh.bindNormalBuffer);
+        GL20.glVertexAttribPointer(NORMAL, 3, GL11.GL_SHORT, true, 0, 0);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, mesh.texcoordBuffer);
+        GL20.glVertexAttribPointer(TEXCOORD, 2, mesh.texcoordType, false, 0, 0);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, mesh.boneBuffer);
+        GL20.glVertexAttribPointer(BONES, MAX_WEIGHTS, GL11.GL_FLOAT, false, 0, 0);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, mesh.weightBuffer);
+        GL20.glVertexAttribPointer(WEIGHTS, MAX_WEIGHTS, GL11.GL_FLOAT, false, 0, 0);
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, mesh.indexBuffer);
+
+        int first = mesh.data.levelIndices[batch.level];
+        int count = mesh.data.levelIndices[batch.level + 1] - first;
+        long size = mesh.indexType == GL11.GL_UNSIGNED_SHORT ? 2 : 4;
+        int floats = batch.bones * 12;
+
+        GlStateManager.setActiveTexture(GL13.GL_TEXTURE2);
+        GlStateManager.bindTexture(this.paletteTexture);
+
+        /* The palette texture is allocated for all instances at once, 
+         * and it only gets wider when there are more bones */
+        if (this.paletteWidth < batch.bones * 3)
+        {
+            this.paletteWidth = (batch.bones * 3 + 63) / 64 * 64;
+
+            GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL30.GL_RGBA32F, this.paletteWidth, MAX_INSTANCES, 0, GL11.GL_RGBA, GL11.GL_FLOAT, (FloatBuffer) null);
+        }
+
+        GlStateManager.setActiveTexture(OpenGlHelper.defaultTexUnit);
+        GL20.glUniform2f(paletteSize, this.paletteWidth, MAX_INSTANCES);
+
+        for (int start = 0; start < batch.count; start += MAX_INSTANCES)
+        {
+            int instances = Math.min(batch.count - start, MAX_INSTANCES);
+
+            /* Bone palettes, a row of 3 texels per bone for every instance */
+            this.paletteData = this.ensureCapacity(this.paletteData, instances * floats);
+            this.paletteData.put(batch.palette, start * floats, instances * floats).flip();
+
+            GlStateManager.setActiveTexture(GL13.GL_TEXTURE2);
+            GlStateManager.bindTexture(this.paletteTexture);
+            GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, 0, batch.bones * 3, instances, GL11.GL_RGBA, GL11.GL_FLOAT, this.paletteData);
+            GlStateManager.setActiveTexture(OpenGlHelper.defaultTexUnit);
+
+            /* Per instance data, with instance's row in the palette */
+            this.instanceData = this.ensureCapacity(this.instanceData, instances * STRIDE);
+
+            for (int i = 0; i < instances; i++)
+            {
+                batch.instances[(start + i) * STRIDE + 23] = i;
+            }
+
+            this.instanceData.put(batch.instances, start * STRIDE, instances * STRIDE).flip();
+
+            GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, this.instanceBuffer);
+            GL15.glBufferData(GL15.GL_ARRAY_BUFFER, this.instanceData, GL15.GL_STREAM_DRAW);
+
+            for (int i = 0; i < 4; i++)
+            {
+                GL20.glVertexAttribPointer(MODEL + i, 4, GL11.GL_FLOAT, false, STRIDE * 4, i * 16);
+            }
+
+            GL20.glVertexAttribPointer(COLOR, 4, GL11.GL_FLOAT, false, STRIDE * 4, 64);
+            GL20.glVertexAttribPointer(LIGHT, 4, GL11.GL_FLOAT, false, STRIDE * 4, 80);
+
+            long time = RenderProfiler.start();
+
+            if (GLContext.getCapabilities().OpenGL31)
+            {
+                GL31.glDrawElementsInstanced(GL11.GL_TRIANGLES, count, mesh.indexType, first * size, instances);
+            }
+            else
+            {
+                ARBDrawInstanced.glDrawElementsInstancedARB(GL11.GL_TRIANGLES, count, mesh.indexType, first * size, instances);
+            }
+
+            RenderProfiler.end(RenderProfiler.DRAW, time);
+        }
+    }
+
+    private void setDivisor(int attribute, int divisor)
+    {
+        if (GLContext.getCapabilities().OpenGL33)
+        {
+            GL33.glVertexAttribDivisor(attribute, divisor);
+        }
+        else
+        {
+            ARBInstancedArrays.glVertexAttribDivisorARB(attribute, divisor);
+        }
+    }
+
+    private FloatBuffer ensureCapacity(FloatBuffer buffer, int size)
+    {
+        if (buffer.capacity() < size)
+        {
+            buffer = BufferUtils.createFloatBuffer(size);
+        }
+
+        buffer.clear();
+
+        return buffer;
+    }
+
+    /**
+     * Compile the shader program and create other GL resources. If
+     * anything fails, instanced rendering gets turned off until the
+     * resources are reloaded
+     */
+    private boolean ensureProgram()
+    {
+        if (this.program != 0)
+        {
+            return true;
+        }
+
+        if (this.failed)
+        {
+            return false;
+        }
+
+        int vertex = this.compileShader(GL20.GL_VERTEX_SHADER, VERTEX);
+        int fragment = this.compileShader(GL20.GL_FRAGMENT_SHADER, FRAGMENT);
+
+        if (vertex == 0 || fragment == 0)
+        {
+            this.failed = true;
+
+            return false;
+        }
+
+        int program = GL20.glCreateProgram();
+
+        GL20.glAttachShader(program, vertex);
+        GL20.glAttachShader(program, fragment);
+        GL20.glBindAttribLocation(program, POSITION, "position");
+        GL20.glBindAttribLocation(program, NORMAL, "normal");
+        GL20.glBindAttribLocation(program, TEXCOORD, "texcoord");
+        GL20.glBindAttribLocation(program, BONES, "bones");
+        GL20.glBindAttribLocation(program, WEIGHTS, "weights");
+
+        for (int i = 0; i < 4; i++)
+        {
+            GL20.glBindAttribLocation(program, MODEL + i, "model" + i);
+        }
+
+        GL20.glBindAttribLocation(program, COLOR, "color");
+        GL20.glBindAttribLocation(program, LIGHT, "light");
+        GL20.glLinkProgram(program);
+        GL20.glDeleteShader(vertex);
+        GL20.glDeleteShader(fragment);
+
+        if (GL20.glGetProgrami(program, GL20.GL_LINK_STATUS) == GL11.GL_FALSE)
+        {
+            System.err.println("Skin&Bones: Failed to link crowd shader, instanced rendering is disabled: " + GL20.glGetProgramInfoLog(program, 4096));
+            GL20.glDeleteProgram(program);
+            this.failed = true;
+
+            return false;
+        }
+
+        this.program = program;
+        this.instanceBuffer = GL15.glGenBuffers();
+        this.paletteTexture = GL11.glGenTextures();
+
+        GlStateManager.bindTexture(this.paletteTexture);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL12.GL_CLAMP_TO_EDGE);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL12.GL_CLAMP_TO_EDGE);
+        GlStateManager.bindTexture(0);
+
+        return true;
+    }
+
+    private int compileShader(int type, String source)
+    {
+        int shader = GL20.glCreateShader(type);
+
+        GL20.glShaderSource(shader, source);
+        GL20.glCompileShader(shader);
+
+        if (GL20.glGetShaderi(shader, GL20.GL_COMPILE_STATUS) == GL11.GL_FALSE)
+        {
+            System.err.println("Skin&Bones: Failed to compile crowd shader, instanced rendering is disabled: " + GL20.glGetShaderInfoLog(shader, 4096));
+            GL20.glDeleteShader(shader);
+
+            return 0;
+        }
+
+        return shader;
+    }
+
+    /**
+     * Delete GL resources, for example, when resources get reloaded
+     */
+    public void delete()
+    {
+        if (this.program != 0)
+        {
+            GL20.glDeleteProgram(this.program);
+            GL15.glDeleteBuffers(this.instanceBuffer);
+            GL11.glDeleteTextures(this.paletteTexture);
+        }
+
+        this.program = 0;
+        this.paletteWidth = 0;
+        this.failed = false;
+        this.supported = null;
+        this.batches.clear();
+        this.pool.clear();
+    }
+
+    /**
+     * Instances of a mesh with the same texture and render state
+     */
+    private static class Batch
+    {
+        public AnimationMesh mesh;
+        public ResourceLocation texture;
+        public int filtering;
+        public boolean smooth;
+        public int level;
+        public int bones;
+
+        public float[] instances = new float[0];
+        public float[] palette = new float[0];
+        public int count;
+
+        /* Offsets of the last added instance */
+        public int instanceOffset;
+        public int paletteOffset;
+
+        public void set(AnimationMesh mesh, ResourceLocation texture, int filtering, boolean smooth)
+        {
+            this.mesh = mesh;
+            this.texture = texture;
+            this.filtering = filtering;
+            this.smooth = smooth;
+            this.level = mesh.level;
+            this.bones = mesh.armature.matrices.length;
+            this.count = 0;
+        }
+
+        /**
+         * Make room for another instance, and return the array of
+         * instance data
+         */
+        public float[] addInstance()
+        {
+            int index = this.count++;
+            int capacity = Math.max(this.count * 2, 16);
+
+            if (this.instances.length < this.count * STRIDE)
+            {
+                this.instances = Arrays.copyOf(this.instances, capacity * STRIDE);
+            }
+
+            if (this.palette.length < this.count * this.bones * 12)
+            {
+                this.palette = Arrays.copyOf(this.palette, capacity * this.bones * 12);
+            }
+
+            this.instanceOffset = index * STRIDE;
+            this.paletteOffset = index * this.bones * 12;
+
+            return this.instances;
+        }
+    }
+}
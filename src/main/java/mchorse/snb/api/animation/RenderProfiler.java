@@ -0,0 +1,276 @@
+package mchorse.snb.api.animation;
+
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Render profiler
+ *
+ * Measures where S&B's frame time goes: every section accumulates
+ * nanoseconds and calls during the frame, and at the end of the frame
+ * they're pushed into a rolling window of {@link #WINDOW} frames, out
+ * of which averages and 95th percentiles are computed. Sections may
+ * nest (pose setup includes keyframe sampling), and skinning and
+ * sampling may be done on pose evaluator's workers, so section times
+ * don't add up to the frame time, that's what per model times are for.
+ *
+ * When it's not enabled, measuring costs a static field read.
+ */
+@SideOnly(Side.CLIENT)
+public class RenderProfiler
+{
+    /**
+     * How many last frames are used for statistics
+     */
+    public static final int WINDOW = 120;
+
+    /* Sections */
+    public static final int POSE = 0;
+    public static final int SAMPLING = 1;
+    public static final int SKINNING = 2;
+    public static final int TANGENTS = 3;
+    public static final int UPLOAD = 4;
+    public static final int DRAW = 5;
+
+    public static final String[] SECTIONS = {"Pose setup", "Keyframe sampling", "Skinning", "Tangents", "VBO uploads", "Draw calls"};
+
+    public static final RenderProfiler INSTANCE = new RenderProfiler();
+
+    /**
+     * Whether measuring is enabled, it's updated at the end of every
+     * frame
+     */
+    public static boolean enabled;
+
+    /**
+     * Whether statistics were requested by the stats command
+     */
+    public boolean recording;
+
+    /* Current frame, sections can be measured on worker threads */
+    private AtomicLongArray time = new AtomicLongArray(SECTIONS.length);
+    private AtomicLongArray calls = new AtomicLongArray(SECTIONS.length);
+
+    /* Rolling window */
+    private long[][] timeHistory = new long[SECTIONS.length][WINDOW];
+    private long[][] callsHistory = new long[SECTIONS.length][WINDOW];
+    private long[] sorted = new long[WINDOW];
+    private int cursor;
+    private int frames;
+
+    /**
+     * Per model statistics, models are measured only on the main thread
+     */
+    private Map<String, ModelStats> models = new HashMap<String, ModelStats>();
+
+    /**
+     * Start measuring, returns the value to pass to
+     * {@link #end(int, long)}
+     */
+    public static long start()
+    {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Finish measuring given section
+     */
+    public static void end(int section, long start)
+    {
+        if (start != 0)
+        {
+            INSTANCE.time.addAndGet(section, System.nanoTime() - start);
+            INSTANCE.calls.incrementAndGet(section);
+        }
+    }
+
+    /**
+     * Finish measuring a render of given model, it must be called on
+     * the main thread
+     */
+    public static void endModel(String name, long start)
+    {
+        if (start == 0)
+        {
+            return;
+        }
+
+        ModelStats stats = INSTANCE.models.get(name);
+
+        if (stats == null)
+        {
+            stats = new ModelStats();
+            INSTANCE.models.put(name, stats);
+        }
+
+        stats.time += System.nanoTime() - start;
+        stats.renders++;
+    }
+
+    /**
+     * Push current frame into the window, and enable or disable
+     * measuring for the next frame
+     */
+    public void endFrame(boolean overlay)
+    {
+        if (enabled)
+        {
+            for (int i = 0; i < SECTIONS.length; i++)
+            {
+                this.timeHistory[i][this.cursor] = this.time.getAndSet(i, 0);
+                this.callsHistory[i][this.cursor] = this.calls.getAndSet(i, 0);
+            }
+
+            for (ModelStats stats : this.models.values())
+            {
+                stats.timeHistory[this.cursor] = stats.time;
+                stats.rendersHistory[this.cursor] = stats.renders;
+                stats.time = 0;
+                stats.renders = 0;
+            }
+
+            this.cursor = (this.cursor + 1) % WINDOW;
+            this.frames = Math.min(this.frames + 1, WINDOW);
+        }
+
+        boolean wasEnabled = enabled;
+
+        enabled = this.recording || overlay;
+
+        if (wasEnabled && !enabled)
+        {
+            this.reset();
+        }
+    }
+
+    /**
+     * Forget all collected statistics
+     */
+    public void reset()
+    {
+        for (int i = 0; i < SECTIONS.length; i++)
+        {
+            this.time.set(i, 0);
+            this.calls.set(i, 0);
+            Arrays.fill(this.timeHistory[i], 0);
+            Arrays.fill(this.callsHistory[i], 0);
+        }
+
+        this.models.clear();
+        this.cursor = 0;
+        this.frames = 0;
+    }
+
+    public int getFrames()
+    {
+        return this.frames;
+    }
+
+    /**
+     * Get statistics of every section, one line per section
+     */
+    public List<String> getSections()
+    {
+        List<String> lines = new ArrayList<String>();
+
+        for (int i = 0; i < SECTIONS.length; i++)
+        {
+            lines.add(String.format("%s: %.3f ms avg, %.3f ms p95, %.1f calls/frame", SECTIONS[i], this.average(this.timeHistory[i]) / 1000000D, this.percentile(this.timeHistory[i], 0.95F) / 1000000D, this.average(this.callsHistory[i])));
+        }
+
+        return lines;
+    }
+
+    /**
+     * Get statistics of every model which was rendered within the
+     * window, the slowest models first
+     */
+    public List<String> getModels()
+    {
+        List<String> names = new ArrayList<String>(this.models.keySet());
+        List<String> lines = new ArrayList<String>();
+
+        names.removeIf((name) -> this.average(this.models.get(name).rendersHistory) == 0);
+        names.sort((a, b) -> Double.compare(this.average(this.models.get(b).timeHistory), this.average(this.models.get(a).timeHistory)));
+
+        for (String name : names)
+        {
+            ModelStats stats = this.models.get(name);
+
+            lines.add(String.format("%s: %.3f ms avg, %.3f ms p95, %.1f renders/frame", name, this.average(stats.timeHistory) / 1000000D, this.percentile(stats.timeHistory, 0.95F) / 1000000D, this.average(stats.rendersHistory)));
+        }
+
+        return lines;
+    }
+
+    /**
+     * Get average time (in milliseconds) that all models take per frame
+     */
+    public double getFrameTime()
+    {
+        double total = 0;
+
+        for (ModelStats stats : this.models.values())
+        {
+            total += this.average(stats.timeHistory);
+        }
+
+        return total / 1000000D;
+    }
+
+    /**
+     * Get average time (in milliseconds) of given section per frame
+     */
+    public double getSectionTime(int section)
+    {
+        return this.average(this.timeHistory[section]) / 1000000D;
+    }
+
+    private double average(long[] history)
+    {
+        if (this.frames == 0)
+        {
+            return 0;
+        }
+
+        long sum = 0;
+
+        for (int i = 0; i < this.frames; i++)
+        {
+            sum += history[i];
+        }
+
+        return sum / (double) this.frames;
+    }
+
+    private long percentile(long[] history, float percentile)
+    {
+        if (this.frames == 0)
+        {
+            return 0;
+        }
+
+        System.arraycopy(history, 0, this.sorted, 0, this.frames);
+        Arrays.sort(this.sorted, 0, this.frames);
+
+        return this.sorted[Math.min((int) Math.ceil(this.frames * percentile) - 1, this.frames - 1)];
+    }
+
+    /**
+     * Statistics of one model (by animation name)
+     */
+    private static class ModelStats
+    {
+        public long time;
+        public int renders;
+        public long[] timeHistory = new long[WINDOW];
+        public long[] rendersHistory = new long[WINDOW];
+    }
+}
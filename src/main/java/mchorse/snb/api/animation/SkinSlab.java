@@ -0,0 +1,148 @@
+package mchorse.snb.api.animation;
+
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+
+import javax.vecmath.Matrix4f;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Skin slab
+ *
+ * Preallocated output of one skinning job: skinned vertices, normals
+ * and tangents of a mesh at some level of detail. Unlike
+ * {@link AnimationBuffers}, which are shared by everything skinned on
+ * the render thread, every job has its own slab, so jobs can be
+ * executed in parallel, and then the main thread only uploads them.
+ *
+ * Slabs hold only the skinned level (starting at its first vertex),
+ * and they're taken from a pool which is released every frame (see
+ * {@link #release(long)}), so there are only as many slabs as meshes
+ * skinned in one frame. Arrays only grow, so slabs don't allocate
+ * after the first frames.
+ */
+@SideOnly(Side.CLIENT)
+public class SkinSlab
+{
+    /**
+     * Slabs that weren't needed for this many frames are dropped
+     */
+    public static final int IDLE_FRAMES = 200;
+
+    private static final List<SkinSlab> pool = new ArrayList<SkinSlab>();
+    private static int used;
+
+    public float[] vertices = new float[0];
+    public float[] normals = new float[0];
+    public float[] tangents = new float[0];
+    public boolean[] flags = new boolean[0];
+
+    /**
+     * Mesh and level of detail which were skinned, level is -1 if the
+     * slab doesn't hold anything
+     */
+    public AnimationMesh mesh;
+    public int level = -1;
+
+    /**
+     * First vertex of the skinned level
+     */
+    public int offset;
+
+    private long lastFrame;
+
+    /**
+     * Take a slab from the pool for given frame, it can be called from
+     * any thread
+     */
+    public static synchronized SkinSlab acquire(long frame)
+    {
+        if (used == pool.size())
+        {
+            pool.add(new SkinSlab());
+        }
+
+        SkinSlab slab = pool.get(used++);
+
+        slab.mesh = null;
+        slab.level = -1;
+        slab.lastFrame = frame;
+
+        return slab;
+    }
+
+    /**
+     * Return all slabs back into the pool. It must be called when
+     * nothing skinned into slabs is going to be uploaded anymore
+     * (i.e. between frames), and slabs which weren't used for a while
+     * get dropped
+     */
+    public static synchronized void release(long frame)
+    {
+        used = 0;
+
+        /* Slabs are taken in order, so idle ones are at the end */
+        while (!pool.isEmpty() && frame - pool.get(pool.size() - 1).lastFrame > IDLE_FRAMES)
+        {
+            pool.remove(pool.size() - 1);
+        }
+    }
+
+    /**
+     * Get the amount of bytes taken by pooled slabs
+     */
+    public static synchronized long getBytes()
+    {
+        long bytes = 0;
+
+        for (SkinSlab slab : pool)
+        {
+            bytes += (slab.vertices.length + slab.normals.length + slab.tangents.length) * 4L + slab.flags.length;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Skin given mesh's level of detail with given skinning matrices
+     */
+    public void skin(AnimationMesh mesh, Matrix4f[] matrices, int level)
+    {
+        int offset = mesh.data.levelVertices[level];
+        int count = mesh.data.levelVertices[level + 1] - offset;
+
+        if (this.flags.length < count)
+        {
+            this.vertices = new float[count * 3];
+            this.normals = new float[count * 3];
+            this.tangents = new float[count * 4];
+            this.flags = new boolean[count];
+        }
+        else
+        {
+            Arrays.fill(this.flags, 0, count, false);
+        }
+
+        this.level = -1;
+        this.mesh = mesh;
+        this.offset = offset;
+
+        mesh.skin(matrices, level, this.vertices, this.normals, offset);
+        mesh.computeTangents(level, this.vertices, this.normals, this.tangents, this.flags, offset);
+
+        this.level = level;
+    }
+
+    /**
+     * Upload skinned data into given mesh, it must be called on the
+     * render thread, and mesh's level must match slab's level
+     */
+    public void upload(AnimationMesh mesh)
+    {
+        mesh.updateVertices(this.vertices, this.offset);
+        mesh.updateNormals(this.normals, this.offset);
+        mesh.updateTangents(this.tangents, this.offset);
+    }
+}
@@ -0,0 +1,455 @@
+package mchorse.snb.api.animation;
+
+import mchorse.snb.SnB;
+import mchorse.snb.api.animation.model.AnimatorController;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.ScaledResolution;
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.client.renderer.GlStateManager;
+import net.minecraft.client.renderer.OpenGlHelper;
+import net.minecraft.client.renderer.Tessellator;
+import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
+import net.minecraft.client.shader.Framebuffer;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.input.Mouse;
+import org.lwjgl.opengl.GL11;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Thumbnail atlas
+ *
+ * Morph menus render every animated morph every frame, which means
+ * evaluating, skinning and uploading every model over and over again.
+ * This class renders a morph's pose once into a cell of a big
+ * framebuffer, and then it's drawn as a textured quad until the model
+ * or morph's config change. Hovered and selected morphs are rendered
+ * live as before.
+ *
+ * Thumbnails are rendered in model space of
+ * {@link AnimatorController#renderModelOnScreen(EntityPlayer, float, float, float)}
+ * with scale of 1, so the same thumbnail is good for any scale.
+ */
+@SideOnly(Side.CLIENT)
+public class ThumbnailAtlas
+{
+    public static final ThumbnailAtlas INSTANCE = new ThumbnailAtlas();
+
+    /**
+     * Size of the atlas and its cells in pixels
+     */
+    public static final int SIZE = 2048;
+    public static final int CELL = 128;
+    public static final int CELLS = SIZE / CELL;
+
+    /**
+     * How many thumbnails can be rendered per frame. Menus with lots
+     * of models fill in within a few frames instead of freezing
+     */
+    public static final int PER_FRAME = 8;
+
+    /* Area that is captured (in blocks) around model's origin when
+     * model's bounds aren't known yet, it's an Y-down orthographic
+     * projection like in GUIs */
+    public static final float LEFT = -1.25F;
+    public static final float RIGHT = 1.25F;
+    public static final float TOP = -2.25F;
+    public static final float BOTTOM = 0.25F;
+
+    /* sin(45) and cos(45) of GUI's model rotation */
+    private static final float ANGLE = (float) Math.sqrt(0.5);
+
+    /* Fitted area is a bit bigger than the model, so moving models
+     * wouldn't get captured again and again */
+    private static final float MARGIN = 1.1F;
+
+    private static final float[] DEFAULT_BOX = new float[] {LEFT, RIGHT, TOP, BOTTOM};
+
+    /**
+     * Controller which is currently selected (i.e. edited), it's
+     * always rendered live
+     */
+    public AnimatorController selected;
+
+    private Framebuffer framebuffer;
+    private Map<AnimatorController, Thumbnail> thumbnails = new WeakHashMap<AnimatorController, Thumbnail>();
+    private Thumbnail[] slots = new Thumbnail[CELLS * CELLS];
+    private long frame = -1;
+    private int rendered;
+    private int scaleFactor = 1;
+
+    private FloatBuffer matrix = BufferUtils.createFloatBuffer(16);
+    private IntBuffer viewport = BufferUtils.createIntBuffer(16);
+    private IntBuffer scissor = BufferUtils.createIntBuffer(16);
+
+    /**
+     * Render given controller's thumbnail at given position in the
+     * GUI (same arguments as {@link AnimatorController#renderOnScreen(EntityPlayer, int, int, float, float)},
+     * but scale should be already multiplied by GUI scale of the
+     * config)
+     *
+     * @return whether thumbnail was used (or is going to be in next
+     *         frames), if false, the model should be rendered live
+     */
+    public boolean render(AnimatorController controller, EntityPlayer player, int x, int y, float scale)
+    {
+        if (!SnB.thumbnails.get() || !OpenGlHelper.isFramebufferEnabled() || controller == this.selected)
+        {
+            return false;
+        }
+
+        long frame = AnimationManager.INSTANCE.frame;
+
+        if (this.frame != frame)
+        {
+            this.frame = frame;
+            this.rendered = 0;
+            this.scaleFactor = new ScaledResolution(Minecraft.getMinecraft()).getScaleFactor();
+        }
+
+        Thumbnail thumbnail = this.thumbnails.get(controller);
+        float[] box = thumbnail == null ? DEFAULT_BOX : thumbnail.box;
+
+        if (this.isHovered(x + box[0] * scale, y + box[2] * scale, x + box[1] * scale, y + box[3] * scale))
+        {
+            return false;
+        }
+
+        if (thumbnail == null || !thumbnail.isValid(controller))
+        {
+            if (this.rendered >= PER_FRAME)
+            {
+                return true;
+            }
+
+            if (!controller.animation.ensureInitialized())
+            {
+                return false;
+            }
+
+            if (thumbnail == null)
+            {
+                thumbnail = this.allocate();
+                this.thumbnails.put(controller, thumbnail);
+            }
+
+            this.rendered++;
+            thumbnail.update(controller);
+            this.capture(controller, player, thumbnail);
+        }
+
+        box = thumbnail.box;
+        thumbnail.lastFrame = frame;
+        this.draw(thumbnail.slot, x + box[0] * scale, y + box[2] * scale, x + box[1] * scale, y + box[3] * scale);
+
+        return true;
+    }
+
+    /**
+     * Forget all thumbnails, for example, when textures were reloaded
+     */
+    public void clear()
+    {
+        this.thumbnails.clear();
+
+        for (int i = 0; i < this.slots.length; i++)
+        {
+            this.slots[i] = null;
+        }
+    }
+
+    /**
+     * Forget thumbnails of models whose textures start with given 
+     * path prefix (like <code>model/</code>), so only they get 
+     * captured again
+     */
+    public void clear(String prefix)
+    {
+        Iterator<Map.Entry<AnimatorController, Thumbnail>> it = this.thumbnails.entrySet().iterator();
+
+        while (it.hasNext())
+        {
+            Map.Entry<AnimatorController, Thumbnail> entry = it.next();
+            Thumbnail thumbnail = entry.getValue();
+            String path = entry.getKey().animationName + "/";
+
+            if (path.startsWith(prefix) || prefix.startsWith(path))
+            {
+                if (this.slots[thumbnail.slot] == thumbnail)
+                {
+                    this.slots[thumbnail.slot] = null;
+                }
+
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Delete the framebuffer
+     */
+    public void delete()
+    {
+        this.clear();
+
+        if (this.framebuffer != null)
+        {
+            this.framebuffer.deleteFramebuffer();
+            this.framebuffer = null;
+        }
+    }
+
+    /**
+     * Find a free slot, or take the one that wasn't drawn for the
+     * longest time
+     */
+    private Thumbnail allocate()
+    {
+        int index = 0;
+
+        for (int i = 0; i < this.slots.length; i++)
+        {
+            Thumbnail slot = this.slots[i];
+
+            if (slot == null)
+            {
+                index = i;
+
+                break;
+            }
+
+            if (slot.lastFrame < this.slots[index].lastFrame)
+            {
+                index = i;
+            }
+        }
+
+        Thumbnail old = this.slots[index];
+
+        if (old != null)
+        {
+            this.thumbnails.values().remove(old);
+        }
+
+        return this.slots[index] = new Thumbnail(index);
+    }
+
+    /**
+     * Check whether the mouse is within given GUI area. The area is
+     * transformed by current modelview matrix, because scrolling
+     * lists might translate the matrix instead of positions
+     */
+    private boolean isHovered(float x1, float y1, float x2, float y2)
+    {
+        Minecraft mc = Minecraft.getMinecraft();
+
+        this.matrix.clear();
+        GL11.glGetFloat(GL11.GL_MODELVIEW_MATRIX, this.matrix);
+
+        float sx = this.matrix.get(0);
+        float sy = this.matrix.get(5);
+        float tx = this.matrix.get(12);
+        float ty = this.matrix.get(13);
+
+        /* GUI coordinates are scaled screen coordinates with Y going down */
+        int factor = this.scaleFactor;
+
+        float mx = Mouse.getX() / (float) factor;
+        float my = (mc.displayHeight - Mouse.getY() - 1) / (float) factor;
+
+        return mx >= x1 * sx + tx && mx < x2 * sx + tx && my >= y1 * sy + ty && my < y2 * sy + ty;
+    }
+
+    /**
+     * Render controller's current pose into thumbnail's cell of the
+     * atlas. The pose's bounds are known only after it was rendered,
+     * so if the model didn't fit into the captured area, the thumbnail
+     * gets captured again with the fitted area in the next frame
+     */
+    private void capture(AnimatorController controller, EntityPlayer player, Thumbnail thumbnail)
+    {
+        Minecraft mc = Minecraft.getMinecraft();
+        float[] box = thumbnail.box;
+        int slot = thumbnail.slot;
+
+        if (this.framebuffer == null)
+        {
+            this.framebuffer = new Framebuffer(SIZE, SIZE, true);
+            this.framebuffer.setFramebufferColor(0, 0, 0, 0);
+            this.framebuffer.setFramebufferFilter(GL11.GL_LINEAR);
+        }
+
+        boolean scissorTest = GL11.glIsEnabled(GL11.GL_SCISSOR_TEST);
+
+        this.viewport.clear();
+        this.scissor.clear();
+        GL11.glGetInteger(GL11.GL_VIEWPORT, this.viewport);
+        GL11.glGetInteger(GL11.GL_SCISSOR_BOX, this.scissor);
+
+        int cx = (slot % CELLS) * CELL;
+        int cy = (slot / CELLS) * CELL;
+
+        this.framebuffer.bindFramebuffer(false);
+        GL11.glViewport(cx, cy, CELL, CELL);
+        GL11.glEnable(GL11.GL_SCISSOR_TEST);
+        GL11.glScissor(cx, cy, CELL, CELL);
+        GlStateManager.clearColor(0, 0, 0, 0);
+        GlStateManager.clear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
+
+        GlStateManager.matrixMode(GL11.GL_PROJECTION);
+        GlStateManager.pushMatrix();
+        GlStateManager.loadIdentity();
+        GlStateManager.ortho(box[0], box[1], box[3], box[2], -100, 100);
+        GlStateManager.matrixMode(GL11.GL_MODELVIEW);
+        GlStateManager.pushMatrix();
+        GlStateManager.loadIdentity();
+
+        controller.renderModelOnScreen(player, 0, 0, 1);
+
+        GlStateManager.matrixMode(GL11.GL_PROJECTION);
+        GlStateManager.popMatrix();
+        GlStateManager.matrixMode(GL11.GL_MODELVIEW);
+        GlStateManager.popMatrix();
+
+        /* Restore everything as it was */
+        mc.getFramebuffer().bindFramebuffer(false);
+        GL11.glViewport(this.viewport.get(0), this.viewport.get(1), this.viewport.get(2), this.viewport.get(3));
+        GL11.glScissor(this.scissor.get(0), this.scissor.get(1), this.scissor.get(2), this.scissor.get(3));
+
+        if (!scissorTest)
+        {
+            GL11.glDisable(GL11.GL_SCISSOR_TEST);
+        }
+
+        if (controller.hasBounds && this.fit(controller.bounds, box))
+        {
+            thumbnail.animation = null;
+        }
+    }
+
+    /**
+     * Fit given capture area to model's bounding box projected the same
+     * way {@link AnimatorController#renderModelOnScreen(EntityPlayer, float, float, float)}
+     * does it. The area is kept square, so it wouldn't get stretched in
+     * the cell. It changes only when the model doesn't fit, or when
+     * the model takes too little of it
+     *
+     * @return whether the area has changed
+     */
+    private boolean fit(float[] bounds, float[] box)
+    {
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < 8; i++)
+        {
+            float x = bounds[(i & 1) == 0 ? 0 : 3];
+            float y = bounds[(i & 2) == 0 ? 1 : 4];
+            float z = bounds[(i & 4) == 0 ? 2 : 5];
+
+            /* Rotated by 45 degrees around Y and X, and flipped on Y */
+            float sx = (x + z) * ANGLE;
+            float sy = -(y * ANGLE + (x - z) * 0.5F);
+
+            minX = Math.min(minX, sx);
+            minY = Math.min(minY, sy);
+            maxX = Math.max(maxX, sx);
+            maxY = Math.max(maxY, sy);
+        }
+
+        float size = Math.max(maxX - minX, maxY - minY) / 2F;
+        boolean fits = minX >= box[0] && maxX <= box[1] && minY >= box[2] && maxY <= box[3];
+
+        if (fits && size * MARGIN * MARGIN >= (box[1] - box[0]) / 2F)
+        {
+            return false;
+        }
+
+        float cx = (minX + maxX) / 2F;
+        float cy = (minY + maxY) / 2F;
+
+        size *= MARGIN;
+
+        box[0] = cx - size;
+        box[1] = cx + size;
+        box[2] = cy - size;
+        box[3] = cy + size;
+
+        return true;
+    }
+
+    /**
+     * Draw given cell of the atlas within given GUI area
+     */
+    private void draw(int slot, float x1, float y1, float x2, float y2)
+    {
+        float u1 = (slot % CELLS) / (float) CELLS;
+        float v1 = (slot / CELLS) / (float) CELLS;
+        float u2 = u1 + 1F / CELLS;
+        float v2 = v1 + 1F / CELLS;
+
+        GlStateManager.enableTexture2D();
+        GlStateManager.enableBlend();
+        GlStateManager.tryBlendFuncSeparate(GlStateManager.SourceFactor.SRC_ALPHA, GlStateManager.DestFactor.ONE_MINUS_SRC_ALPHA, GlStateManager.SourceFactor.ONE, GlStateManager.DestFactor.ZERO);
+        GlStateManager.color(1, 1, 1, 1);
+        this.framebuffer.bindFramebufferTexture();
+
+        /* Framebuffer's rows go bottom to top */
+        BufferBuilder buffer = Tessellator.getInstance().getBuffer();
+
+        buffer.begin(GL11.GL_QUADS, DefaultVertexFormats.POSITION_TEX);
+        buffer.pos(x1, y2, 0).tex(u1, v1).endVertex();
+        buffer.pos(x2, y2, 0).tex(u2, v1).endVertex();
+        buffer.pos(x2, y1, 0).tex(u2, v2).endVertex();
+        buffer.pos(x1, y1, 0).tex(u1, v2).endVertex();
+        Tessellator.getInstance().draw();
+
+        this.framebuffer.unbindFramebufferTexture();
+        GlStateManager.disableBlend();
+    }
+
+    /**
+     * Thumbnail's slot and the state of the controller it was
+     * rendered with
+     */
+    private static class Thumbnail
+    {
+        public int slot;
+        public long lastFrame;
+
+        /**
+         * Captured area (left, right, top and bottom)
+         */
+        public float[] box = DEFAULT_BOX.clone();
+
+        private Animation animation;
+        private int animationRevision;
+        private int revision;
+
+        public Thumbnail(int slot)
+        {
+            this.slot = slot;
+        }
+
+        public boolean isValid(AnimatorController controller)
+        {
+            return this.animation == controller.animation && this.animationRevision == controller.animation.revision && this.revision == controller.revision;
+        }
+
+        public void update(AnimatorController controller)
+        {
+            this.animation = controller.animation;
+            this.animationRevision = controller.animation.revision;
+            this.revision = controller.revision;
+        }
+    }
+}
@@ -69,6 +69,16 @@ public class AnimationMeshConfigAdapter implements JsonDeserializer<AnimationMes
             config.sharpBending = object.get("sharpBending").getAsBoolean();
         }
 
+        if (object.has("lod"))
+        {
+            config.lod = object.get("lod").getAsBoolean();
+        }
+
+        if (object.has("lodBias"))
+        {
+            config.lodBias = object.get("lodBias").getAsFloat();
+        }
+
         return config;
     }
 
@@ -86,6 +96,8 @@ public class AnimationMeshConfigAdapter implements JsonDeserializer<AnimationMes
         object.addProperty("lighting", src.lighting);
         object.addProperty("color", src.color);
         object.addProperty("sharpBending", src.sharpBending);
+        object.addProperty("lod", src.lod);
+        object.addProperty("lodBias", src.lodBias);
 
         return object;
     }
@@ -3,8 +3,7 @@ package mchorse.snb.api.animation.model;
 import mchorse.mclib.utils.MathUtils;
 import mchorse.snb.api.bobj.BOBJAction;
 import mchorse.snb.api.bobj.BOBJArmature;
-import mchorse.snb.api.bobj.BOBJBone;
-import mchorse.snb.api.bobj.BOBJGroup;
+import mchorse.snb.api.bobj.BOBJChannel;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 
@@ -185,38 +184,44 @@ public class ActionPlayback
         return ticks;
     }
 
-    public void apply(BOBJArmature armature, float partialTick)
+    /**
+     * Sample current action at current tick into given pose buffer 
+     * (it should be cleared for the armature's amount of bones)
+     */
+    public void sample(BOBJArmature armature, PoseBuffer pose, float partialTick)
     {
-        if (this.current == null)
-        {
-            return;
-        }
-
-        for (BOBJGroup group : this.current.groups.values())
-        {
-            BOBJBone bone = armature.bones.get(group.name);
+        this.sample(armature, pose, this.current, this.getTick(partialTick));
+    }
 
-            if (bone != null)
-            {
-                group.apply(bone, this.getTick(partialTick));
-            }
-        }
+    /**
+     * Sample current action into given pose buffer without partial 
+     * ticks (inactive actions are fading out, so they aren't 
+     * interpolated)
+     */
+    public void sampleInactive(BOBJArmature armature, PoseBuffer pose)
+    {
+        this.sample(armature, pose, this.current, this.ticks);
     }
 
-    public void applyInactive(BOBJArmature armature, float partialTick, float x)
+    private void sample(BOBJArmature armature, PoseBuffer pose, BOBJAction action, float tick)
     {
-        if (this.current == null)
+        if (action == null)
         {
             return;
         }
 
-        for (BOBJGroup group : this.current.groups.values())
+        BOBJAction.Binding binding = action.getBinding(armature);
+
+        for (int i = 0; i < binding.groups.length; i++)
         {
-            BOBJBone bone = armature.bones.get(group.name);
+            int bone = binding.bones[i];
 
-            if (bone != null)
+            for (BOBJChannel channel : binding.groups[i].channels)
             {
-                group.applyInterpolate(bone, this.ticks, x);
+                if (channel.slot >= 0)
+                {
+                    pose.set(bone, channel.slot, channel.calculate(tick));
+                }
             }
         }
     }
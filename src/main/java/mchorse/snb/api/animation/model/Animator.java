@@ -1,6 +1,7 @@
 package mchorse.snb.api.animation.model;
 
 import mchorse.snb.api.animation.Animation;
+import mchorse.snb.api.animation.RenderProfiler;
 import mchorse.snb.api.bobj.BOBJArmature;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.EntityLivingBase;
@@ -54,6 +55,10 @@ public class Animator implements IAnimator
     public ActionPlayback lastActive;
     public List<ActionPlayback> actions = new ArrayList<ActionPlayback>();
 
+    /* Final pose and a layer into which actions are sampled */
+    protected PoseBuffer pose = new PoseBuffer();
+    protected PoseBuffer layer = new PoseBuffer();
+
     public double prevX = Float.MAX_VALUE;
     public double prevZ = Float.MAX_VALUE;
     public double prevMY;
@@ -360,31 +365,79 @@ public class Animator implements IAnimator
     }
 
     /**
-     * Apply currently running action pipeline onto given armature
+     * Apply currently running action pipeline onto given armature. 
+     * Every action is sampled into a layer, which is blended onto the 
+     * pose with action's weight (fading actions fade out), and the 
+     * final pose is written into the bones at the end
      */
     @Override
     public void applyActions(BOBJArmature armature, float partialTicks)
     {
+        this.pose.read(armature);
+        this.applyActions(armature, this.pose, partialTicks);
+        this.pose.write(armature);
+    }
+
+    /**
+     * Blend currently running action pipeline onto given pose. Bones 
+     * aren't touched, so the pose can be evaluated on another thread 
+     * (see {@link PoseEvaluator})
+     */
+    @Override
+    public void applyActions(BOBJArmature armature, PoseBuffer pose, float partialTicks)
+    {
+        long start = RenderProfiler.start();
+
         if (this.active != null)
         {
-            this.active.apply(armature, partialTicks);
+            this.blendAction(armature, pose, this.active, false, 1, partialTicks);
         }
 
         if (this.lastActive != null && this.lastActive.isFading())
         {
-            this.lastActive.applyInactive(armature, partialTicks, 1 - this.lastActive.getFadeFactor(partialTicks));
+            this.blendAction(armature, pose, this.lastActive, true, this.lastActive.getFadeFactor(partialTicks), partialTicks);
         }
 
         for (ActionPlayback action : this.actions)
         {
             if (action.isFading())
             {
-                action.applyInactive(armature, partialTicks, 1 - action.getFadeFactor(partialTicks));
+                this.blendAction(armature, pose, action, true, action.getFadeFactor(partialTicks), partialTicks);
             }
             else
             {
-                action.apply(armature, partialTicks);
+                this.blendAction(armature, pose, action, false, 1, partialTicks);
             }
         }
+
+        RenderProfiler.end(RenderProfiler.SAMPLING, start);
+    }
+
+    /**
+     * Sample given action and blend it onto the pose 
+     */
+    protected void blendAction(BOBJArmature armature, PoseBuffer pose, ActionPlayback action, boolean inactive, float weight, float partialTicks)
+    {
+        this.layer.clear(pose.bones);
+
+        if (inactive)
+        {
+            action.sampleInactive(armature, this.layer);
+        }
+        else
+        {
+            action.sample(armature, this.layer, partialTicks);
+        }
+
+        pose.blend(this.layer, weight, this.getMask(action));
+    }
+
+    /**
+     * Get per bone weights of given action's layer, or null if it 
+     * affects all bones fully 
+     */
+    protected float[] getMask(ActionPlayback action)
+    {
+        return null;
     }
 }
\ No newline at end of file
@@ -2,11 +2,19 @@ package mchorse.snb.api.animation.model;
 
 import mchorse.mclib.client.render.RenderLightmap;
 import mchorse.mclib.utils.MatrixUtils;
+import mchorse.snb.SnB;
 import mchorse.snb.api.animation.Animation;
 import mchorse.snb.api.animation.AnimationManager;
 import mchorse.snb.api.animation.AnimationMesh;
+import mchorse.snb.api.animation.AnimationMeshConfig;
+import mchorse.snb.api.animation.CrowdRenderer;
+import mchorse.snb.api.animation.RenderProfiler;
+import mchorse.snb.api.animation.SkinSlab;
+import mchorse.snb.api.animation.ThumbnailAtlas;
 import mchorse.snb.api.bobj.BOBJArmature;
 import mchorse.snb.api.bobj.BOBJBone;
+import mchorse.snb.utils.FlightEvents;
+import mchorse.snb.utils.FrustumUtils;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.GlStateManager;
 import net.minecraft.client.renderer.RenderHelper;
@@ -20,6 +28,7 @@ import net.minecraft.item.Item;
 import net.minecraft.item.ItemArmor;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 import org.lwjgl.BufferUtils;
@@ -29,6 +38,13 @@ import javax.vecmath.Matrix4f;
 import javax.vecmath.Vector4f;
 import java.nio.FloatBuffer;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Future;
 
 @SideOnly(Side.CLIENT)
 public class AnimatorController
@@ -44,6 +60,22 @@ public class AnimatorController
      */
     public static final float[] buffer = new float[16];
 
+    /**
+     * Entities whose vanilla frustum check was turned off (see 
+     * {@link #restoreFrustumChecks()}) along with original values of 
+     * their flag, and entities that still needed it in this frame
+     */
+    private static final Map<Entity, Boolean> frustumChecks = new WeakHashMap<Entity, Boolean>();
+    private static final Set<Entity> frustumRendered = Collections.newSetFromMap(new WeakHashMap<Entity, Boolean>());
+
+    /**
+     * Whether the world is being rendered right now (set by 
+     * {@link mchorse.snb.client.EntityModelHandler}), renders outside of 
+     * it (GUIs, inventory, hand) don't use poses evaluated on workers, 
+     * batched crowds and uploads cached for repeated passes
+     */
+    public static boolean renderingWorld;
+
     /**
      * Default animator factory 
      */
@@ -59,12 +91,52 @@ public class AnimatorController
     public AnimatorConfig.AnimatorConfigEntry config;
     public AnimatorConfig userConfig = new AnimatorConfig();
     public long lastModified;
-    public int checkConfig;
+
+    /**
+     * Incremented whenever animator or user config gets changed, so 
+     * caches of rendered models (like {@link ThumbnailAtlas}) knew 
+     * when to update
+     */
+    public int revision;
 
     /* NBT config */
     public String animationName;
     public NBTTagCompound userData;
 
+    /* Culling */
+    public float[] bounds = new float[6];
+    public boolean hasBounds;
+    public boolean culled;
+
+    /* Pose evaluation (see {@link PoseEvaluator}) */
+    protected PoseBuffer pose = new PoseBuffer();
+    PoseSnapshot front = new PoseSnapshot();
+    PoseSnapshot back = new PoseSnapshot();
+    Future<?> task;
+    private boolean inWorld;
+    private boolean evaluated;
+
+    /**
+     * Levels of detail of meshes which were rendered in the world in 
+     * the last frame, they get skinned along with the pose
+     */
+    public Map<AnimationMesh, Integer> skinLevels = new IdentityHashMap<AnimationMesh, Integer>();
+
+    /**
+     * Render passes (shadows, outlines, shaders) can render the same 
+     * entity several times per frame. Every distinct render in the 
+     * world gets a stamp, and meshes remember the stamp of their last 
+     * upload (see {@link AnimationMesh#uploadStamp}), so repeated 
+     * passes can reuse uploaded buffers
+     */
+    private static long stamps;
+    private long stamp;
+    private long stampFrame = -1;
+    private EntityLivingBase stampEntity;
+    private float stampYaw;
+    private float stampPartialTicks;
+    private boolean repeated;
+
     private Minecraft mc;
     private Vector4f result = new Vector4f();
     private Matrix4f rotate = new Matrix4f();
@@ -122,49 +194,83 @@ public class AnimatorController
     {
         this.fetchAnimation();
 
-        if (this.animation != null && this.animation.meshes.size() > 0)
+        if (this.animation == null)
         {
-            RenderHelper.enableGUIStandardItemLighting();
-            GlStateManager.enableRescaleNormal();
+            return;
+        }
 
-            GlStateManager.enableAlpha();
-            GlStateManager.enableDepth();
-            GlStateManager.color(1, 1, 1, 1);
+        scale *= this.userConfig.scaleGui;
 
-            float mult = this.userConfig.scaleGui;
+        /* Thumbnails don't need meshes to be initialized, so models 
+         * that are only shown in menus can be evicted */
+        if (this.canUseThumbnail() && ThumbnailAtlas.INSTANCE.render(this, player, x, y, scale))
+        {
+            return;
+        }
 
-            GL11.glPushMatrix();
-            GL11.glTranslatef(x, y, 0);
-            /* Because orthographic matrix's positive Y is leans toward 
-             * bottom */
-            GL11.glScalef(scale * mult, -scale * mult, scale * mult);
-            GL11.glRotatef(45, 1, 0, 0);
-            GL11.glRotatef(45, 0, 1, 0);
+        if (this.animation.ensureInitialized())
+        {
+            this.renderModelOnScreen(player, x, y, scale);
+        }
+    }
 
-            /* Head looks ugly without reseting those fields */
-            float yaw = player.rotationYawHead;
-            float prevYaw = player.prevRotationYawHead;
-            float pitch = player.rotationPitch;
-            float prevPitch = player.prevRotationPitch;
+    /**
+     * Whether current pose can be rendered once into a thumbnail, 
+     * instead of being rendered every frame
+     */
+    protected boolean canUseThumbnail()
+    {
+        return this.emote == null;
+    }
+
+    /**
+     * Render the model in the GUI at given position and scale. It's 
+     * also used for rendering thumbnails (see {@link ThumbnailAtlas}) 
+     */
+    public void renderModelOnScreen(EntityPlayer player, float x, float y, float scale)
+    {
+        /* Player's rotations are changed below, so workers must be done 
+         * with evaluating poses */
+        PoseEvaluator.INSTANCE.finish();
 
-            player.rotationYawHead = player.prevRotationYawHead = 0;
-            player.rotationPitch = player.prevRotationPitch = 0;
+        RenderHelper.enableGUIStandardItemLighting();
+        GlStateManager.enableRescaleNormal();
 
-            this.renderAnimation(player, 0, 0);
+        GlStateManager.enableAlpha();
+        GlStateManager.enableDepth();
+        GlStateManager.color(1, 1, 1, 1);
 
-            player.rotationYawHead = yaw;
-            player.prevRotationYawHead = prevYaw;
-            player.rotationPitch = pitch;
-            player.prevRotationPitch = prevPitch;
+        GL11.glPushMatrix();
+        GL11.glTranslatef(x, y, 0);
+        /* Because orthographic matrix's positive Y is leans toward 
+         * bottom */
+        GL11.glScalef(scale, -scale, scale);
+        GL11.glRotatef(45, 1, 0, 0);
+        GL11.glRotatef(45, 0, 1, 0);
 
-            GL11.glPopMatrix();
+        /* Head looks ugly without reseting those fields */
+        float yaw = player.rotationYawHead;
+        float prevYaw = player.prevRotationYawHead;
+        float pitch = player.rotationPitch;
+        float prevPitch = player.prevRotationPitch;
 
-            GlStateManager.disableDepth();
-            GlStateManager.disableAlpha();
+        player.rotationYawHead = player.prevRotationYawHead = 0;
+        player.rotationPitch = player.prevRotationPitch = 0;
 
-            RenderHelper.disableStandardItemLighting();
-            GlStateManager.disableRescaleNormal();
-        }
+        this.renderAnimation(player, 0, 0);
+
+        player.rotationYawHead = yaw;
+        player.prevRotationYawHead = prevYaw;
+        player.rotationPitch = pitch;
+        player.prevRotationPitch = prevPitch;
+
+        GL11.glPopMatrix();
+
+        GlStateManager.disableDepth();
+        GlStateManager.disableAlpha();
+
+        RenderHelper.disableStandardItemLighting();
+        GlStateManager.disableRescaleNormal();
     }
 
     protected void renderOnScreen(EntityPlayer player, AnimationMesh mesh, int x, int y, float scale, float alpha)
@@ -174,7 +280,10 @@ public class AnimatorController
 
     public void render(EntityLivingBase entity, double x, double y, double z, float entityYaw, float partialTicks)
     {
-        if (this.animation != null && this.animation.meshes.size() > 0)
+        /* Worker may still be reading the state that gets changed below */
+        PoseEvaluator.INSTANCE.await(this);
+
+        if (this.animation != null && this.animation.ensureInitialized())
         {
             GlStateManager.disableCull();
             GlStateManager.enableAlpha();
@@ -182,22 +291,7 @@ public class AnimatorController
             GlStateManager.enableRescaleNormal();
             GlStateManager.blendFunc(GlStateManager.SourceFactor.SRC_ALPHA, GlStateManager.DestFactor.ONE_MINUS_SRC_ALPHA);
 
-            float yaw = this.interpolate(entity.prevRenderYawOffset, entity.renderYawOffset, partialTicks);
-
-            /* Fix the yaw when riding */
-            if (entity.isRiding())
-            {
-                Entity vehicle = entity.getRidingEntity();
-
-                /* For some reason, Minecart's always look to the left
-                 * instead of forward, so we must rotate 90 degrees in 
-                 * order to orient character forward */
-                if (vehicle instanceof EntityMinecart)
-                {
-                    yaw = this.interpolate(vehicle.prevRotationYaw , vehicle.rotationYaw, partialTicks);
-                    yaw += 90;
-                }
-            }
+            float yaw = this.getYaw(entity, partialTicks);
 
             /* Do you bleed? */
             float scale = this.userConfig.scale;
@@ -221,14 +315,119 @@ public class AnimatorController
                 GL11.glRotatef(180 - (yaw - 180), 0.0F, 1.0F, 0.0F);
             }
 
+            long start = RenderProfiler.start();
+
+            this.inWorld = renderingWorld;
             this.renderAnimation(entity, yaw, partialTicks);
+            this.inWorld = false;
+
+            RenderProfiler.endModel(this.animationName, start);
+            FlightEvents.countModel(this.animationName);
+
+            if (renderingWorld)
+            {
+                PoseEvaluator.INSTANCE.request(this, entity);
+            }
 
             if (captured) MatrixUtils.releaseMatrix();
 
             GL11.glPopMatrix();
             GlStateManager.enableCull();
             GlStateManager.disableRescaleNormal();
+
+            /* Vanilla culls entities by their hitbox, so models that are
+             * bigger than the hitbox would pop out of the view. Since 
+             * culling is done here, vanilla's check can be turned off 
+             * for as long as this model is rendered */
+            if (this.hasBounds && !this.isWithin(entity.getRenderBoundingBox(), this.getRenderBoundingBox(entity)))
+            {
+                if (!frustumChecks.containsKey(entity))
+                {
+                    frustumChecks.put(entity, entity.ignoreFrustumCheck);
+                    entity.ignoreFrustumCheck = true;
+                }
+
+                frustumRendered.add(entity);
+            }
+        }
+    }
+
+    /**
+     * Get world space bounding box of the last rendered pose. Since 
+     * it's rotated around Y axis, the box uses the radius of the pose 
+     * in XZ plane, so it stays correct for any yaw.
+     */
+    public AxisAlignedBB getRenderBoundingBox(EntityLivingBase entity)
+    {
+        if (!this.hasBounds)
+        {
+            return entity.getRenderBoundingBox();
+        }
+
+        float scale = this.userConfig.scale;
+        float x = Math.max(Math.abs(this.bounds[0]), Math.abs(this.bounds[3]));
+        float z = Math.max(Math.abs(this.bounds[2]), Math.abs(this.bounds[5]));
+        double radius = Math.sqrt(x * x + z * z) * scale;
+
+        return new AxisAlignedBB(
+            entity.posX - radius, entity.posY + this.bounds[1] * scale, entity.posZ - radius,
+            entity.posX + radius, entity.posY + this.bounds[4] * scale, entity.posZ + radius
+        );
+    }
+
+    /**
+     * Restore vanilla frustum check of entities that weren't rendered 
+     * with a model bigger than their hitbox in this frame (i.e. their 
+     * model got removed or changed). It's called at the end of every 
+     * frame
+     */
+    public static void restoreFrustumChecks()
+    {
+        Iterator<Map.Entry<Entity, Boolean>> it = frustumChecks.entrySet().iterator();
+
+        while (it.hasNext())
+        {
+            Map.Entry<Entity, Boolean> entry = it.next();
+
+            if (!frustumRendered.contains(entry.getKey()))
+            {
+                entry.getKey().ignoreFrustumCheck = entry.getValue();
+                it.remove();
+            }
+        }
+
+        frustumRendered.clear();
+    }
+
+    private boolean isWithin(AxisAlignedBB outer, AxisAlignedBB inner)
+    {
+        return inner.minX >= outer.minX && inner.minY >= outer.minY && inner.minZ >= outer.minZ
+            && inner.maxX <= outer.maxX && inner.maxY <= outer.maxY && inner.maxZ <= outer.maxZ;
+    }
+
+    /**
+     * Get interpolated body yaw of given entity
+     */
+    public float getYaw(EntityLivingBase entity, float partialTicks)
+    {
+        float yaw = this.interpolate(entity.prevRenderYawOffset, entity.renderYawOffset, partialTicks);
+
+        /* Fix the yaw when riding */
+        if (entity.isRiding())
+        {
+            Entity vehicle = entity.getRidingEntity();
+
+            /* For some reason, Minecart's always look to the left
+             * instead of forward, so we must rotate 90 degrees in 
+             * order to orient character forward */
+            if (vehicle instanceof EntityMinecart)
+            {
+                yaw = this.interpolate(vehicle.prevRotationYaw , vehicle.rotationYaw, partialTicks);
+                yaw += 90;
+            }
         }
+
+        return yaw;
     }
 
     private float interpolate(float prev, float yaw, float partialTicks)
@@ -260,15 +459,111 @@ public class AnimatorController
             alpha = !entity.isInvisibleToPlayer(Minecraft.getMinecraft().player) ? 0.15F : 0;
         }
 
+        long start = RenderProfiler.start();
+
+        this.updateStamp(entity, yaw, partialTicks);
+        this.setupPoses(entity, armatures, yaw, partialTicks);
+
+        RenderProfiler.end(RenderProfiler.POSE, start);
+
+        /* Bone matrices are enough to tell whether the model is on the 
+         * screen, so off-screen models skip skinning and drawing. The 
+         * pose of repeated passes is the same, so is its box */
+        float size = 1;
+
+        if (!this.repeated)
+        {
+            this.hasBounds = this.animation.calculateBounds(this.userConfig.meshes, this.bounds);
+
+            if (this.hasBounds)
+            {
+                this.expandBounds(entity, this.bounds);
+            }
+        }
+
+        this.culled = false;
+
+        if (this.hasBounds)
+        {
+            FrustumUtils.update();
+
+            this.culled = SnB.frustumCulling.get() && !FrustumUtils.isBoxInFrustum(this.bounds);
+            size = FrustumUtils.getScreenSize(this.bounds);
+        }
+
+        if (this.inWorld && !this.repeated)
+        {
+            this.skinLevels.clear();
+        }
+
+        if (this.culled)
+        {
+            return;
+        }
+
+        if (this.inWorld && CrowdRenderer.INSTANCE.canRender(this.animation, this.userConfig.meshes, entity, alpha))
+        {
+            this.recordInstances(size);
+        }
+        else
+        {
+            this.renderMeshes(entity, alpha, size, partialTicks);
+        }
+
         for (BOBJArmature armature : armatures)
         {
-            this.setupBoneMatrices(entity, armature, yaw, partialTicks);
+            this.renderItems(entity, armature);
+            this.renderHead(entity, armature.bones.get(this.userConfig.head));
         }
+    }
+
+    /**
+     * Extend the bounding box of the current pose by whatever else 
+     * gets rendered along with the model (used for culling)
+     */
+    protected void expandBounds(EntityLivingBase entity, float[] box)
+    {}
 
+    /**
+     * Skin, upload and render meshes of the current pose 
+     */
+    protected void renderMeshes(EntityLivingBase entity, float alpha, float size, float partialTicks)
+    {
         for (AnimationMesh part : this.animation.meshes)
         {
+            AnimationMeshConfig config = this.userConfig.meshes.get(part.name);
+            SkinSlab slab = null;
+
             part.alpha = alpha;
-            part.updateMesh(this.userConfig.meshes.get(part.name));
+            part.selectLevel(config, size);
+
+            /* Mesh's buffers still have this render's pose */
+            if (this.inWorld && part.uploadStamp == this.stamp && part.uploadLevel == part.level)
+            {
+                continue;
+            }
+
+            if (this.evaluated)
+            {
+                slab = this.front.getSlab(part, part.level);
+            }
+
+            if (slab != null)
+            {
+                slab.upload(part);
+            }
+            else
+            {
+                part.updateMesh(config);
+            }
+
+            part.uploadStamp = this.inWorld ? this.stamp : 0;
+            part.uploadLevel = part.level;
+
+            if (this.inWorld && !this.repeated && this.canSkinAsync(config))
+            {
+                this.skinLevels.put(part, part.level);
+            }
         }
 
         /* Hurt colors */
@@ -279,33 +574,96 @@ public class AnimatorController
 
         if (flag) RenderLightmap.unset();
         GlStateManager.disableRescaleNormal();
+    }
 
-        for (BOBJArmature armature : armatures)
+    /**
+     * Record meshes of the current pose to be drawn instanced once 
+     * entities are rendered (see {@link CrowdRenderer}) 
+     */
+    protected void recordInstances(float size)
+    {
+        CrowdRenderer.INSTANCE.begin();
+
+        for (AnimationMesh part : this.animation.meshes)
         {
-            this.renderItems(entity, armature);
-            this.renderHead(entity, armature.bones.get(this.userConfig.head));
+            AnimationMeshConfig config = this.userConfig.meshes.get(part.name);
+
+            part.selectLevel(config, size);
+            CrowdRenderer.INSTANCE.add(part, config);
         }
     }
 
-    public void setupBoneMatrices(EntityLivingBase entity, BOBJArmature armature, float yaw, float partialTicks)
+    /**
+     * Setup bone matrices of all armatures. World renders use the pose
+     * evaluated by {@link PoseEvaluator}, if it was evaluated for this 
+     * exact render, otherwise the pose is evaluated right here
+     */
+    protected void setupPoses(EntityLivingBase entity, Collection<BOBJArmature> armatures, float yaw, float partialTicks)
     {
-        for (BOBJBone bone : armature.orderedBones)
+        PoseEvaluator.INSTANCE.await(this);
+
+        this.evaluated = this.inWorld && this.front.matches(this, entity, yaw, partialTicks);
+
+        if (this.evaluated)
         {
-            bone.reset();
+            this.front.apply();
+
+            return;
+        }
+
+        for (BOBJArmature armature : armatures)
+        {
+            this.setupBoneMatrices(entity, armature, yaw, partialTicks);
         }
 
-        this.setupBoneTransformations(entity, armature, yaw, partialTicks);
+        /* Other passes of this frame will restore it from the snapshot */
+        if (this.inWorld)
+        {
+            this.front.capture(this, entity, yaw, partialTicks);
+        }
+    }
+
+    /**
+     * Find out whether current render in the world repeats the last one
+     * (same frame, entity, yaw and partial ticks), and if it doesn't, 
+     * take a new stamp
+     */
+    private void updateStamp(EntityLivingBase entity, float yaw, float partialTicks)
+    {
+        long frame = AnimationManager.INSTANCE.frame;
+
+        this.repeated = this.inWorld && this.stampFrame == frame && this.stampEntity == entity && this.stampYaw == yaw && this.stampPartialTicks == partialTicks;
 
-        for (BOBJBone bone : armature.orderedBones)
+        if (this.inWorld && !this.repeated)
         {
-            armature.matrices[bone.index] = bone.compute();
+            this.stamp = ++stamps;
+            this.stampFrame = frame;
+            this.stampEntity = entity;
+            this.stampYaw = yaw;
+            this.stampPartialTicks = partialTicks;
         }
     }
 
-    protected void setupBoneTransformations(EntityLivingBase entity, BOBJArmature armature, float yaw, float partialTicks)
+    public void setupBoneMatrices(EntityLivingBase entity, BOBJArmature armature, float yaw, float partialTicks)
+    {
+        PoseEvaluator.INSTANCE.await(this);
+
+        this.setupPose(entity, armature, this.pose, yaw, partialTicks);
+        this.pose.write(armature);
+        armature.setupMatrices();
+    }
+
+    /**
+     * Evaluate the pose of given armature into given pose buffer. 
+     * Armature's bones aren't touched, so it can be called off the 
+     * main thread if {@link #canEvaluatePose()} allows it
+     */
+    public void setupPose(EntityLivingBase entity, BOBJArmature armature, PoseBuffer pose, float yaw, float partialTicks)
     {
         BOBJBone head = armature.bones.get(this.userConfig.head);
 
+        pose.reset(armature.orderedBones.size());
+
         if (head != null)
         {
             float yawHead = entity.prevRotationYawHead + (entity.rotationYawHead - entity.prevRotationYawHead) * partialTicks;
@@ -314,14 +672,47 @@ public class AnimatorController
             yawHead = (yaw - yawHead) / 180F * (float) Math.PI;
             pitch = pitch / 180F * (float) Math.PI;
 
-            head.rotateX = pitch;
-            head.rotateY = yawHead;
+            pose.set(head.index, 3, pitch);
+            pose.set(head.index, 4, yawHead);
         }
 
         if (this.animator != null)
         {
-            this.animator.applyActions(armature, partialTicks);
+            this.animator.applyActions(armature, pose, partialTicks);
+        }
+    }
+
+    /**
+     * Whether given mesh can be skinned on a worker thread. Invisible 
+     * meshes don't need skinning, and sharp bending modifies joints, 
+     * so it's done on the main thread
+     */
+    protected boolean canSkinAsync(AnimationMeshConfig config)
+    {
+        return SnB.asyncSkinning.get() && (config == null || (config.visible && !config.sharpBending));
+    }
+
+    /**
+     * Whether the pose can be evaluated on a worker thread. IK 
+     * modifiers work on bones directly, and custom animators might 
+     * too, so such models are evaluated on the main thread
+     */
+    public boolean canEvaluatePose()
+    {
+        if (this.animation == null || this.animation.evicted || !(this.animator instanceof Animator))
+        {
+            return false;
         }
+
+        for (BOBJArmature armature : this.animation.data.armatures.values())
+        {
+            if (!armature.ikBones.isEmpty() || armature.matrices == null)
+            {
+                return false;
+            }
+        }
+
+        return true;
     }
 
     /**
@@ -448,32 +839,21 @@ public class AnimatorController
      */
     public void update(EntityLivingBase target)
     {
+        PoseEvaluator.INSTANCE.await(this);
         this.fetchAnimation();
 
         if (this.animator != null)
         {
-            this.watchConfig();
-            this.animator.update(target);
-        }
-    }
-
-    /**
-     * This method is responsible for checking whether the config 
-     * changed, and if it did changed, reload animator.
-     */
-    protected void watchConfig()
-    {
-        this.checkConfig++;
-
-        if (this.checkConfig > 10)
-        {
-            this.checkConfig = 0;
-
-            if (this.lastModified < this.config.lastModified)
+            /* Config entries are updated in place when their files 
+             * change (see ModelWatcher), so it's enough to compare 
+             * the modification time, there is no need to poll */
+            if (this.lastModified != this.config.lastModified)
             {
                 this.animation = null;
                 this.fetchAnimation();
             }
+
+            this.animator.update(target);
         }
     }
 
@@ -482,6 +862,11 @@ public class AnimatorController
     {
         if (this.animation != null)
         {
+            if (this.animation.evicted)
+            {
+                AnimationManager.INSTANCE.rehydrate(this.animation);
+            }
+
             return;
         }
 
@@ -498,6 +883,7 @@ public class AnimatorController
             this.animator = this.factory.createAnimator(this);
             this.animator.setEmote(this.emote);
             this.lastModified = this.config.lastModified;
+            this.revision++;
         }
     }
 }
\ No newline at end of file
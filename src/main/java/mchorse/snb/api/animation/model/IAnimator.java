@@ -29,4 +29,17 @@ public interface IAnimator
      * Apply currently running action pipeline onto given armature
      */
     public void applyActions(BOBJArmature armature, float partialTicks);
+
+    /**
+     * Blend currently running action pipeline onto given pose without 
+     * touching armature's bones. By default, the pose is applied 
+     * through the bones, so such animators can't be evaluated off the 
+     * main thread
+     */
+    public default void applyActions(BOBJArmature armature, PoseBuffer pose, float partialTicks)
+    {
+        pose.write(armature);
+        this.applyActions(armature, partialTicks);
+        pose.read(armature);
+    }
 }
\ No newline at end of file
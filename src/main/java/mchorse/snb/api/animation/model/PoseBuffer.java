@@ -0,0 +1,250 @@
+package mchorse.snb.api.animation.model;
+
+import mchorse.snb.api.bobj.BOBJArmature;
+import mchorse.snb.api.bobj.BOBJBone;
+import mchorse.snb.utils.RotationUtils;
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+
+import javax.vecmath.Quat4f;
+import javax.vecmath.Vector3f;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pose buffer
+ *
+ * Compact pose of an armature: {@link #STRIDE} floats per bone
+ * (location XYZ, rotation XYZ and scale XYZ, the same order as
+ * {@link mchorse.snb.api.bobj.BOBJChannel#slot}), indexed by bone's
+ * position in {@link BOBJArmature#orderedBones}. Every bone also has a
+ * bit mask of channels which were written, so a layer sampled from an
+ * action affects only channels that the action animates.
+ *
+ * Actions are sampled into their own buffers and blended onto the
+ * final pose with plain array operations, and bones are written only
+ * once at the end. Rotations are blended as quaternions, so
+ * crossfades take the shortest way and don't wrap around.
+ */
+@SideOnly(Side.CLIENT)
+public class PoseBuffer
+{
+    public static final int STRIDE = 9;
+    public static final int ALL = (1 << STRIDE) - 1;
+    public static final int ROTATION = 0b111000;
+
+    public float[] values = new float[0];
+    public int[] channels = new int[0];
+    public int bones;
+
+    private Quat4f a = new Quat4f();
+    private Quat4f b = new Quat4f();
+    private Vector3f euler = new Vector3f();
+
+    /**
+     * Prepare this buffer for given amount of bones and mark all
+     * channels as not written
+     */
+    public void clear(int bones)
+    {
+        if (this.channels.length < bones)
+        {
+            this.values = new float[bones * STRIDE];
+            this.channels = new int[bones];
+        }
+        else
+        {
+            Arrays.fill(this.channels, 0, bones, 0);
+        }
+
+        this.bones = bones;
+    }
+
+    /**
+     * Prepare this buffer for given amount of bones in rest pose, i.e.
+     * no translation and rotation and scale of 1 (all channels are 
+     * marked as written)
+     */
+    public void reset(int bones)
+    {
+        this.clear(bones);
+
+        for (int i = 0; i < bones; i++)
+        {
+            int offset = i * STRIDE;
+
+            Arrays.fill(this.values, offset, offset + 6, 0);
+            Arrays.fill(this.values, offset + 6, offset + STRIDE, 1);
+            this.channels[i] = ALL;
+        }
+    }
+
+    /**
+     * Read a value of given bone's channel
+     */
+    public float get(int bone, int slot)
+    {
+        return this.values[bone * STRIDE + slot];
+    }
+
+    /**
+     * Write a value of given bone's channel
+     */
+    public void set(int bone, int slot, float value)
+    {
+        this.values[bone * STRIDE + slot] = value;
+        this.channels[bone] |= 1 << slot;
+    }
+
+    /**
+     * Read current transformations of armature's bones (all channels
+     * are marked as written)
+     */
+    public void read(BOBJArmature armature)
+    {
+        List<BOBJBone> bones = armature.orderedBones;
+
+        this.clear(bones.size());
+
+        for (int i = 0, c = bones.size(); i < c; i++)
+        {
+            BOBJBone bone = bones.get(i);
+            int offset = i * STRIDE;
+
+            this.values[offset] = bone.x;
+            this.values[offset + 1] = bone.y;
+            this.values[offset + 2] = bone.z;
+            this.values[offset + 3] = bone.rotateX;
+            this.values[offset + 4] = bone.rotateY;
+            this.values[offset + 5] = bone.rotateZ;
+            this.values[offset + 6] = bone.scaleX;
+            this.values[offset + 7] = bone.scaleY;
+            this.values[offset + 8] = bone.scaleZ;
+            this.channels[i] = ALL;
+        }
+    }
+
+    /**
+     * Write written channels into armature's bones
+     */
+    public void write(BOBJArmature armature)
+    {
+        List<BOBJBone> bones = armature.orderedBones;
+
+        for (int i = 0, c = Math.min(this.bones, bones.size()); i < c; i++)
+        {
+            int mask = this.channels[i];
+
+            if (mask == 0)
+            {
+                continue;
+            }
+
+            BOBJBone bone = bones.get(i);
+            int offset = i * STRIDE;
+
+            if ((mask & 1) != 0) bone.x = this.values[offset];
+            if ((mask & 2) != 0) bone.y = this.values[offset + 1];
+            if ((mask & 4) != 0) bone.z = this.values[offset + 2];
+            if ((mask & 8) != 0) bone.rotateX = this.values[offset + 3];
+            if ((mask & 16) != 0) bone.rotateY = this.values[offset + 4];
+            if ((mask & 32) != 0) bone.rotateZ = this.values[offset + 5];
+            if ((mask & 64) != 0) bone.scaleX = this.values[offset + 6];
+            if ((mask & 128) != 0) bone.scaleY = this.values[offset + 7];
+            if ((mask & 256) != 0) bone.scaleZ = this.values[offset + 8];
+        }
+    }
+
+    /**
+     * Blend given layer onto this pose. Only channels written in the
+     * layer are affected, weight of 1 replaces them, and weight of 0
+     * leaves them as they are. This pose should have all channels 
+     * written (see {@link #read(BOBJArmature)}).
+     *
+     * @param mask optional per bone weight multipliers (can be null),
+     *        which allow layers to affect only some of the bones
+     */
+    public void blend(PoseBuffer layer, float weight, float[] mask)
+    {
+        int bones = Math.min(this.bones, layer.bones);
+
+        for (int i = 0; i < bones; i++)
+        {
+            int channels = layer.channels[i];
+
+            if (channels == 0)
+            {
+                continue;
+            }
+
+            float w = mask == null ? weight : weight * mask[i];
+            int offset = i * STRIDE;
+
+            if (w <= 0)
+            {
+                continue;
+            }
+
+            if (w >= 1)
+            {
+                /* Simply replace written channels */
+                for (int j = 0; j < STRIDE; j++)
+                {
+                    if ((channels & (1 << j)) != 0)
+                    {
+                        this.values[offset + j] = layer.values[offset + j];
+                    }
+                }
+            }
+            else
+            {
+                /* Location and scale are blended linearly */
+                for (int j = 0; j < STRIDE; j++)
+                {
+                    if ((channels & (1 << j) & ~ROTATION) != 0)
+                    {
+                        this.values[offset + j] += (layer.values[offset + j] - this.values[offset + j]) * w;
+                    }
+                }
+
+                if ((channels & ROTATION) != 0)
+                {
+                    this.blendRotation(layer, offset, channels, w);
+                }
+            }
+
+            this.channels[i] |= channels;
+        }
+    }
+
+    /**
+     * Slerp bone's rotation towards layer's rotation. Axes that the 
+     * layer doesn't have are taken from this pose. The result is the
+     * Euler solution closest to linearly blended angles, so offsets
+     * added on top (and channels blended one by one) don't pop when
+     * the angles wrap around
+     */
+    private void blendRotation(PoseBuffer layer, int offset, int channels, float weight)
+    {
+        float x = this.values[offset + 3];
+        float y = this.values[offset + 4];
+        float z = this.values[offset + 5];
+        float lx = (channels & 8) != 0 ? layer.values[offset + 3] : x;
+        float ly = (channels & 16) != 0 ? layer.values[offset + 4] : y;
+        float lz = (channels & 32) != 0 ? layer.values[offset + 5] : z;
+
+        if (x == lx && y == ly && z == lz)
+        {
+            return;
+        }
+
+        RotationUtils.fromEuler(x, y, z, this.a);
+        RotationUtils.fromEuler(lx, ly, lz, this.b);
+        RotationUtils.slerp(this.a, this.b, weight, this.a);
+        RotationUtils.toEuler(this.a, x + (lx - x) * weight, y + (ly - y) * weight, z + (lz - z) * weight, this.euler);
+
+        this.values[offset + 3] = this.euler.x;
+        this.values[offset + 4] = this.euler.y;
+        this.values[offset + 5] = this.euler.z;
+    }
+}
@@ -0,0 +1,186 @@
+package mchorse.snb.api.animation.model;
+
+import mchorse.snb.SnB;
+import mchorse.snb.api.animation.AnimationManager;
+import mchorse.snb.api.animation.SkinSlab;
+import net.minecraft.entity.EntityLivingBase;
+import net.minecraft.util.math.MathHelper;
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pose evaluator
+ *
+ * Evaluates poses of animated models on worker threads. Controllers
+ * which were rendered in the previous frame are evaluated at the
+ * start of the next frame (with its partial ticks) into controller's
+ * back {@link PoseSnapshot}, while the main thread renders the world.
+ * When the controller gets rendered, it waits for its task, swaps
+ * front and back snapshots, and the render only reads the front one.
+ *
+ * All tasks are finished by the end of the frame, so ticks, reloads
+ * and everything else that changes animations never run at the same
+ * time with the workers. Anything that doesn't match the snapshot
+ * (GUI renders, entity rendered twice, different partial ticks) is
+ * simply evaluated on the main thread as before.
+ */
+@SideOnly(Side.CLIENT)
+public class PoseEvaluator
+{
+    public static final PoseEvaluator INSTANCE = new PoseEvaluator();
+
+    /**
+     * Amount of worker threads, one core is left for the main thread
+     */
+    public static final int THREADS = MathHelper.clamp(Runtime.getRuntime().availableProcessors() - 1, 1, 4);
+
+    /**
+     * Controllers rendered in current frame and entities they were
+     * rendered with (null if they were rendered with several
+     * entities, their poses can't be reused)
+     */
+    private Map<AnimatorController, EntityLivingBase> rendered = new IdentityHashMap<AnimatorController, EntityLivingBase>();
+
+    /**
+     * Controllers which have submitted tasks
+     */
+    private List<AnimatorController> pending = new ArrayList<AnimatorController>();
+
+    private ExecutorService executor;
+
+    /**
+     * Remember that given controller was rendered in the world with
+     * given entity, so it will be evaluated in the next frame
+     */
+    public void request(AnimatorController controller, EntityLivingBase entity)
+    {
+        if (!SnB.asyncPoses.get())
+        {
+            return;
+        }
+
+        if (this.rendered.containsKey(controller) && this.rendered.get(controller) != entity)
+        {
+            entity = null;
+        }
+
+        this.rendered.put(controller, entity);
+    }
+
+    /**
+     * Submit poses of controllers rendered in the last frame. It should
+     * be called at the start of the frame with its partial ticks
+     */
+    public void evaluate(float partialTicks)
+    {
+        this.finish();
+
+        /* Slabs skinned for the last frame are not needed anymore */
+        SkinSlab.release(AnimationManager.INSTANCE.frame);
+
+        if (!SnB.asyncPoses.get())
+        {
+            this.rendered.clear();
+
+            return;
+        }
+
+        long frame = AnimationManager.INSTANCE.frame;
+
+        for (Map.Entry<AnimatorController, EntityLivingBase> entry : this.rendered.entrySet())
+        {
+            AnimatorController controller = entry.getKey();
+            EntityLivingBase entity = entry.getValue();
+
+            if (entity == null || entity.isDead || !controller.canEvaluatePose())
+            {
+                continue;
+            }
+
+            PoseSnapshot snapshot = controller.back;
+            float yaw = controller.getYaw(entity, partialTicks);
+
+            controller.task = this.getExecutor().submit(() -> snapshot.evaluate(controller, entity, yaw, partialTicks, frame));
+            this.pending.add(controller);
+        }
+
+        this.rendered.clear();
+    }
+
+    /**
+     * Wait until given controller's pose is evaluated, and publish it
+     * as controller's front snapshot. It must be called before the
+     * controller's pose is used or modified on the main thread
+     */
+    public void await(AnimatorController controller)
+    {
+        Future<?> task = controller.task;
+
+        if (task == null)
+        {
+            return;
+        }
+
+        controller.task = null;
+
+        try
+        {
+            task.get();
+
+            PoseSnapshot snapshot = controller.front;
+
+            controller.front = controller.back;
+            controller.back = snapshot;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e)
+        {
+            SnB.LOGGER.error("Failed to evaluate pose of {} model!", controller.animationName, e.getCause());
+        }
+    }
+
+    /**
+     * Wait for all submitted tasks
+     */
+    public void finish()
+    {
+        for (AnimatorController controller : this.pending)
+        {
+            this.await(controller);
+        }
+
+        this.pending.clear();
+    }
+
+    private ExecutorService getExecutor()
+    {
+        if (this.executor == null)
+        {
+            AtomicInteger counter = new AtomicInteger();
+
+            this.executor = Executors.newFixedThreadPool(THREADS, (runnable) ->
+            {
+                Thread thread = new Thread(runnable, "S&B pose evaluator #" + counter.incrementAndGet());
+
+                thread.setDaemon(true);
+
+                return thread;
+            });
+        }
+
+        return this.executor;
+    }
+}
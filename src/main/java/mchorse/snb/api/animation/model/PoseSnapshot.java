@@ -0,0 +1,294 @@
+package mchorse.snb.api.animation.model;
+
+import mchorse.snb.api.animation.Animation;
+import mchorse.snb.api.animation.AnimationManager;
+import mchorse.snb.api.animation.AnimationMesh;
+import mchorse.snb.api.animation.SkinSlab;
+import mchorse.snb.api.bobj.BOBJArmature;
+import mchorse.snb.api.bobj.BOBJBone;
+import net.minecraft.entity.EntityLivingBase;
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+
+import javax.vecmath.Matrix4f;
+import javax.vecmath.Quat4f;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pose snapshot
+ *
+ * Evaluated pose of all controller's armatures: pose buffers, bone
+ * matrices and skinning matrices (bone matrices multiplied by inverse
+ * bone matrices). It's computed by {@link PoseEvaluator} on a worker
+ * thread, using only controller's own state and immutable data of the
+ * armatures, and then it's simply copied into the armatures when the
+ * controller gets rendered. Meshes which were visible in the last
+ * frame are also skinned into {@link SkinSlab}s (taken from the pool
+ * for the current frame only), so the render thread only needs to
+ * upload them.
+ *
+ * The snapshot remembers what it was evaluated for (frame, entity,
+ * yaw and partial ticks), so it's never applied to a different render.
+ */
+@SideOnly(Side.CLIENT)
+public class PoseSnapshot
+{
+    /* What this snapshot was evaluated for */
+    public Animation animation;
+    public EntityLivingBase entity;
+    public long frame = -1;
+    public float yaw;
+    public float partialTicks;
+    public boolean ready;
+
+    private List<BOBJArmature> armatures = new ArrayList<BOBJArmature>();
+    private List<PoseBuffer> poses = new ArrayList<PoseBuffer>();
+    private List<Matrix4f[]> globals = new ArrayList<Matrix4f[]>();
+    private List<Matrix4f[]> skins = new ArrayList<Matrix4f[]>();
+    private List<SkinSlab> slabs = new ArrayList<SkinSlab>();
+
+    /* Temporaries, they're per snapshot, so snapshots can be
+     * evaluated in parallel */
+    private Matrix4f transform = new Matrix4f();
+    private Matrix4f local = new Matrix4f();
+    private Quat4f rotation = new Quat4f();
+
+    /**
+     * Evaluate controller's pose for given entity
+     */
+    public void evaluate(AnimatorController controller, EntityLivingBase entity, float yaw, float partialTicks, long frame)
+    {
+        this.ready = false;
+        this.animation = controller.animation;
+        this.entity = entity;
+        this.frame = frame;
+        this.yaw = yaw;
+        this.partialTicks = partialTicks;
+        this.armatures.clear();
+
+        List<BOBJArmature> armatures = this.animation.armatures;
+
+        for (int index = 0; index < armatures.size(); index++)
+        {
+            BOBJArmature armature = armatures.get(index);
+
+            if (this.poses.size() <= index)
+            {
+                this.poses.add(new PoseBuffer());
+                this.globals.add(new Matrix4f[0]);
+                this.skins.add(new Matrix4f[0]);
+            }
+
+            PoseBuffer pose = this.poses.get(index);
+
+            controller.setupPose(entity, armature, pose, yaw, partialTicks);
+            this.computeMatrices(armature, pose, index);
+            this.armatures.add(armature);
+        }
+
+        this.skinMeshes(controller);
+        this.ready = true;
+    }
+
+    /**
+     * Capture current pose of controller's armatures, which was set up 
+     * on the main thread, so other render passes of the same frame 
+     * could restore it (see {@link #apply()}) instead of evaluating it 
+     * again
+     */
+    public void capture(AnimatorController controller, EntityLivingBase entity, float yaw, float partialTicks)
+    {
+        this.animation = controller.animation;
+        this.entity = entity;
+        this.frame = AnimationManager.INSTANCE.frame;
+        this.yaw = yaw;
+        this.partialTicks = partialTicks;
+        this.armatures.clear();
+
+        List<BOBJArmature> armatures = this.animation.armatures;
+
+        for (int index = 0; index < armatures.size(); index++)
+        {
+            BOBJArmature armature = armatures.get(index);
+
+            if (this.poses.size() <= index)
+            {
+                this.poses.add(new PoseBuffer());
+                this.globals.add(new Matrix4f[0]);
+                this.skins.add(new Matrix4f[0]);
+            }
+
+            List<BOBJBone> bones = armature.orderedBones;
+            Matrix4f[] globals = this.ensureCapacity(this.globals, index, bones.size());
+            Matrix4f[] skins = this.ensureCapacity(this.skins, index, bones.size());
+
+            this.poses.get(index).read(armature);
+
+            for (int i = 0, c = bones.size(); i < c; i++)
+            {
+                BOBJBone bone = bones.get(i);
+
+                globals[i].set(bone.mat);
+                skins[i].set(armature.matrices[bone.index]);
+            }
+
+            this.armatures.add(armature);
+        }
+
+        /* Slabs were skinned for some other pose */
+        this.slabs.clear();
+        this.ready = true;
+    }
+
+    /**
+     * Skin meshes which were rendered with given levels of detail in 
+     * the last frame into their slabs
+     */
+    private void skinMeshes(AnimatorController controller)
+    {
+        this.slabs.clear();
+
+        /* Iterating the map would allocate an entry per mesh */
+        for (int i = 0, c = this.animation.meshes.size(); i < c; i++)
+        {
+            AnimationMesh mesh = this.animation.meshes.get(i);
+            Integer level = controller.skinLevels.get(mesh);
+            int index = this.armatures.indexOf(mesh.armature);
+
+            if (level == null || index < 0 || mesh.data == null)
+            {
+                continue;
+            }
+
+            SkinSlab slab = SkinSlab.acquire(this.frame);
+
+            slab.skin(mesh, this.skins.get(index), level);
+            this.slabs.add(slab);
+        }
+    }
+
+    /**
+     * Get the slab with given mesh skinned at given level of detail, 
+     * or null if it wasn't skinned
+     */
+    public SkinSlab getSlab(AnimationMesh mesh, int level)
+    {
+        for (int i = 0, c = this.slabs.size(); i < c; i++)
+        {
+            SkinSlab slab = this.slabs.get(i);
+
+            if (slab.mesh == mesh && slab.level == level)
+            {
+                return slab;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Compute bone matrices the same way as {@link BOBJBone#compute()},
+     * but into snapshot's own matrices instead of bones'
+     */
+    private void computeMatrices(BOBJArmature armature, PoseBuffer pose, int index)
+    {
+        List<BOBJBone> bones = armature.orderedBones;
+        Matrix4f[] globals = this.ensureCapacity(this.globals, index, bones.size());
+        Matrix4f[] skins = this.ensureCapacity(this.skins, index, bones.size());
+        float[] values = pose.values;
+
+        for (int i = 0, c = bones.size(); i < c; i++)
+        {
+            BOBJBone bone = bones.get(i);
+            Matrix4f global = globals[i];
+            int offset = i * PoseBuffer.STRIDE;
+
+            BOBJBone.setTransformations(this.transform, this.rotation,
+                values[offset], values[offset + 1], values[offset + 2],
+                values[offset + 3], values[offset + 4], values[offset + 5],
+                values[offset + 6], values[offset + 7], values[offset + 8]
+            );
+
+            global.set(bone.relBoneMat);
+            global.mul(this.transform);
+
+            /* Ordered bones are sorted by index, and parents come before
+             * their children, same as in armature's own computation */
+            if (bone.parentBone != null)
+            {
+                this.local.set(global);
+                global.set(globals[bone.parentBone.index]);
+                global.mul(this.local);
+            }
+
+            skins[i].set(global);
+            skins[i].mul(bone.invBoneMat);
+        }
+    }
+
+    private Matrix4f[] ensureCapacity(List<Matrix4f[]> list, int index, int size)
+    {
+        Matrix4f[] matrices = list.get(index);
+
+        if (matrices.length < size)
+        {
+            matrices = new Matrix4f[size];
+
+            for (int i = 0; i < size; i++)
+            {
+                matrices[i] = new Matrix4f();
+            }
+
+            list.set(index, matrices);
+        }
+
+        return matrices;
+    }
+
+    /**
+     * Whether this snapshot was evaluated for given render
+     */
+    public boolean matches(AnimatorController controller, EntityLivingBase entity, float yaw, float partialTicks)
+    {
+        return this.ready
+            && this.animation == controller.animation
+            && this.entity == entity
+            && this.frame == AnimationManager.INSTANCE.frame
+            && this.yaw == yaw
+            && this.partialTicks == partialTicks;
+    }
+
+    /**
+     * Copy evaluated pose and matrices into the armatures, as if they
+     * were set up by {@link AnimatorController#setupBoneMatrices(EntityLivingBase, BOBJArmature, float, float)}
+     */
+    public void apply()
+    {
+        for (int i = 0, c = this.armatures.size(); i < c; i++)
+        {
+            BOBJArmature armature = this.armatures.get(i);
+            List<BOBJBone> bones = armature.orderedBones;
+            Matrix4f[] globals = this.globals.get(i);
+            Matrix4f[] skins = this.skins.get(i);
+
+            this.poses.get(i).write(armature);
+
+            for (int j = 0, d = bones.size(); j < d; j++)
+            {
+                BOBJBone bone = bones.get(j);
+                Matrix4f matrix = armature.matrices[bone.index];
+
+                if (matrix == null)
+                {
+                    matrix = armature.matrices[bone.index] = new Matrix4f();
+                }
+
+                bone.mat.set(globals[j]);
+                matrix.set(skins[j]);
+            }
+
+            armature.revision++;
+        }
+    }
+}
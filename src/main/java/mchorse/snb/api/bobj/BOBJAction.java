@@ -1,27 +1,165 @@
 package mchorse.snb.api.bobj;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 public class BOBJAction
 {
     public String name;
     public Map<String, BOBJGroup> groups = new HashMap<String, BOBJGroup>();
 
+    /**
+     * Content hash (see {@link BOBJHash})
+     */
+    public long hash;
+
+    /**
+     * Precomputed metadata (see {@link #getInfo()})
+     */
+    private BOBJActionInfo info;
+
+    /**
+     * Bindings of this action's groups to bones of armatures it was 
+     * applied to (see {@link #getBinding(BOBJArmature)})
+     */
+    private Map<BOBJArmature, Binding> bindings = new WeakHashMap<BOBJArmature, Binding>();
+    private BOBJArmature lastArmature;
+    private Binding lastBinding;
+
     public BOBJAction(String name)
     {
         this.name = name;
     }
 
-    public int getDuration()
+    /**
+     * Replace the content of this action with given action's content. 
+     * It's used upon reloading, so objects that reference this action 
+     * could keep using it
+     */
+    public synchronized void replace(BOBJAction action)
     {
-        int max = 0;
+        this.groups = action.groups;
+        this.hash = action.hash;
+        this.info = action.info;
+
+        this.bindings.clear();
+        this.lastArmature = null;
+        this.lastBinding = null;
+    }
+
+    /**
+     * Get the binding of this action's groups to given armature's 
+     * bones. It's built once per armature, so applying an action 
+     * doesn't need to look up bones by name every frame. Poses can be
+     * evaluated on several threads at once, hence synchronization
+     */
+    public synchronized Binding getBinding(BOBJArmature armature)
+    {
+        if (this.lastArmature == armature)
+        {
+            return this.lastBinding;
+        }
+
+        Binding binding = this.bindings.get(armature);
+
+        if (binding == null)
+        {
+            binding = new Binding(this, armature);
+            this.bindings.put(armature, binding);
+        }
+
+        this.lastArmature = armature;
+        this.lastBinding = binding;
+
+        return binding;
+    }
+
+    /**
+     * Forget given armature if it was the last one this action was 
+     * bound to. Bindings are weakly keyed, but the last armature is a 
+     * strong reference, so it should be forgotten once the armature 
+     * is replaced
+     */
+    public synchronized void forget(BOBJArmature armature)
+    {
+        if (this.lastArmature == armature)
+        {
+            this.lastArmature = null;
+            this.lastBinding = null;
+        }
 
-        for (BOBJGroup group : this.groups.values())
+        this.bindings.remove(armature);
+    }
+
+    /**
+     * Get metadata of this action. It's computed once, so if groups 
+     * are changed manually, {@link #updateInfo()} should be called
+     */
+    public BOBJActionInfo getInfo()
+    {
+        if (this.info == null)
         {
-            max = Math.max(max, group.getDuration());
+            this.updateInfo();
         }
 
-        return max;
+        return this.info;
+    }
+
+    /**
+     * Compute metadata of this action again
+     */
+    public void updateInfo()
+    {
+        this.info = new BOBJActionInfo(this);
+    }
+
+    public int getDuration()
+    {
+        return this.getInfo().duration;
+    }
+
+    /**
+     * Action binding
+     * 
+     * Groups of an action which have a bone in the armature (sorted by 
+     * name, so the order is stable) and indices of these bones in 
+     * {@link BOBJArmature#orderedBones}
+     */
+    public static class Binding
+    {
+        public final BOBJGroup[] groups;
+        public final int[] bones;
+
+        public Binding(BOBJAction action, BOBJArmature armature)
+        {
+            List<BOBJGroup> groups = new ArrayList<BOBJGroup>();
+            List<Integer> bones = new ArrayList<Integer>();
+            List<BOBJGroup> sorted = new ArrayList<BOBJGroup>(action.groups.values());
+
+            sorted.sort(Comparator.comparing(g -> g.name));
+
+            for (BOBJGroup group : sorted)
+            {
+                BOBJBone bone = armature.bones.get(group.name);
+
+                if (bone != null)
+                {
+                    groups.add(group);
+                    bones.add(armature.orderedBones.indexOf(bone));
+                }
+            }
+
+            this.groups = groups.toArray(new BOBJGroup[groups.size()]);
+            this.bones = new int[bones.size()];
+
+            for (int i = 0; i < this.bones.length; i++)
+            {
+                this.bones[i] = bones.get(i);
+            }
+        }
     }
 }
\ No newline at end of file
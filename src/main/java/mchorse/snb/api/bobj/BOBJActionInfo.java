@@ -0,0 +1,113 @@
+package mchorse.snb.api.bobj;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * BOBJ action info
+ *
+ * Immutable metadata of an action, which is computed once the action
+ * is loaded (and again when it's reloaded), so playbacks don't have to
+ * walk all groups and channels to find out action's duration.
+ */
+public final class BOBJActionInfo
+{
+    /**
+     * Duration in ticks, i.e. rounded frame of the latest keyframe
+     */
+    public final int duration;
+
+    /**
+     * Frames of the earliest and the latest keyframes (0 if there are
+     * no keyframes)
+     */
+    public final float start;
+    public final float end;
+
+    /* Totals */
+    public final int groups;
+    public final int channels;
+    public final int keyframes;
+
+    /**
+     * Keyframe counts of every group's channels (in the same order as
+     * {@link BOBJGroup#channels})
+     */
+    private final Map<String, int[]> counts;
+
+    public BOBJActionInfo(BOBJAction action)
+    {
+        Map<String, int[]> counts = new HashMap<String, int[]>();
+        int duration = 0;
+        float start = Float.POSITIVE_INFINITY;
+        float end = Float.NEGATIVE_INFINITY;
+        int channels = 0;
+        int keyframes = 0;
+
+        for (BOBJGroup group : action.groups.values())
+        {
+            int[] groupCounts = new int[group.channels.size()];
+
+            for (int i = 0; i < groupCounts.length; i++)
+            {
+                BOBJChannel channel = group.channels.get(i);
+                int size = channel.keyframes.size();
+
+                groupCounts[i] = size;
+                channels++;
+                keyframes += size;
+
+                if (size > 0)
+                {
+                    float first = channel.keyframes.get(0).frame;
+                    float last = channel.keyframes.get(size - 1).frame;
+
+                    duration = Math.max(duration, Math.round(last));
+                    start = Math.min(start, first);
+                    end = Math.max(end, last);
+                }
+            }
+
+            counts.put(group.name, groupCounts);
+        }
+
+        this.duration = duration;
+        this.start = keyframes == 0 ? 0 : start;
+        this.end = keyframes == 0 ? 0 : end;
+        this.groups = action.groups.size();
+        this.channels = channels;
+        this.keyframes = keyframes;
+        this.counts = counts;
+    }
+
+    /**
+     * Names of groups in the action
+     */
+    public Set<String> getGroups()
+    {
+        return Collections.unmodifiableSet(this.counts.keySet());
+    }
+
+    /**
+     * Amount of keyframes in given group's channel, or 0 if there is
+     * no such group or channel
+     */
+    public int getKeyframes(String group, int channel)
+    {
+        int[] counts = this.counts.get(group);
+
+        return counts == null || channel < 0 || channel >= counts.length ? 0 : counts[channel];
+    }
+
+    /**
+     * Amount of channels in given group
+     */
+    public int getChannels(String group)
+    {
+        int[] counts = this.counts.get(group);
+
+        return counts == null ? 0 : counts.length;
+    }
+}
@@ -41,6 +41,18 @@ public class BOBJArmature
      */
     public Matrix4f[] matrices;
 
+    /**
+     * Content hash (see {@link BOBJHash})
+     */
+    public long hash;
+
+    /**
+     * Incremented every time the bones get posed, so whoever posed them 
+     * can tell whether somebody else (i.e. another model sharing this 
+     * armature) posed them since
+     */
+    public int revision;
+
     /**
      * Whether this armature was initialized already 
      */
@@ -99,18 +111,30 @@ public class BOBJArmature
             this.orderedBones.sort(Comparator.comparingInt(o -> o.index));
 
             this.matrices = new Matrix4f[this.orderedBones.size()];
+
+            for (int i = 0; i < this.matrices.length; i++)
+            {
+                this.matrices[i] = new Matrix4f();
+            }
+
             this.initialized = true;
         }
     }
 
     /**
-     * Setup matrices  
+     * Setup matrices. Matrices are computed in place, so it doesn't 
+     * allocate anything, but the matrices are shared between 
+     * everything that uses this armature (copy them to keep them)
      */
     public void setupMatrices()
     {
-        for (BOBJBone bone : this.orderedBones)
+        for (int i = 0, c = this.orderedBones.size(); i < c; i++)
         {
-            this.matrices[bone.index] = bone.compute();
+            BOBJBone bone = this.orderedBones.get(i);
+
+            bone.compute(this.matrices[bone.index]);
         }
+
+        this.revision++;
     }
 }
\ No newline at end of file
@@ -1,6 +1,9 @@
 package mchorse.snb.api.bobj;
 
+import mchorse.snb.utils.RotationUtils;
+
 import javax.vecmath.Matrix4f;
+import javax.vecmath.Quat4f;
 import javax.vecmath.Vector3f;
 import java.util.ArrayList;
 import java.util.List;
@@ -58,6 +61,11 @@ public class BOBJBone
      */
     public Matrix4f tempMat = new Matrix4f();
 
+    /**
+     * Temporary quaternion of the rotation 
+     */
+    private Quat4f rotation = new Quat4f();
+
     public BOBJBone(int index, String name, String parent, Vector3f tail, Matrix4f boneMat)
     {
         this.index = index;
@@ -93,7 +101,16 @@ public class BOBJBone
 
     public Matrix4f compute()
     {
-        Matrix4f mat = this.computeMatrix(new Matrix4f());
+        return this.compute(new Matrix4f());
+    }
+
+    /**
+     * Compute skinning matrix of this bone (global matrix multiplied 
+     * by inverse bone matrix) into given matrix without allocating 
+     */
+    public Matrix4f compute(Matrix4f mat)
+    {
+        this.computeMatrix(mat);
 
         this.mat.set(mat);
         this.applyModifiers();
@@ -134,7 +151,7 @@ public class BOBJBone
 
         if (this.parentBone != null)
         {
-            m = new Matrix4f(this.parentBone.mat);
+            m.set(this.parentBone.mat);
         }
 
         m.mul(this.mat);
@@ -142,40 +159,66 @@ public class BOBJBone
         return m;
     }
 
+    /**
+     * Apply translation, scale and rotation (Z, then Y, then X) onto 
+     * bone's matrix. All three are combined into one matrix, and the 
+     * rotation part is built from a quaternion
+     */
     public void applyTransformations()
     {
-        this.tempMat.setIdentity();
-        this.tempMat.m03 = this.x;
-        this.tempMat.m13 = this.y;
-        this.tempMat.m23 = this.z;
-        this.mat.mul(this.tempMat);
+        if (this.hasModifiers())
+        {
+            setTransformations(this.tempMat, this.rotation, this.x, this.y, this.z, 0, 0, 0, this.scaleX, this.scaleY, this.scaleZ);
+        }
+        else
+        {
+            setTransformations(this.tempMat, this.rotation, this.x, this.y, this.z, this.rotateX, this.rotateY, this.rotateZ, this.scaleX, this.scaleY, this.scaleZ);
+        }
 
-        this.tempMat.setIdentity();
-        this.tempMat.m00 = this.scaleX;
-        this.tempMat.m11 = this.scaleY;
-        this.tempMat.m22 = this.scaleZ;
         this.mat.mul(this.tempMat);
+    }
 
-        if (!this.hasModifiers())
+    /**
+     * Build T * S * R matrix out of given bone transformations into 
+     * given matrix. Given quaternion is used as a temporary, so it can 
+     * be called from any thread with its own temporaries
+     */
+    public static void setTransformations(Matrix4f m, Quat4f q, float x, float y, float z, float rotateX, float rotateY, float rotateZ, float scaleX, float scaleY, float scaleZ)
+    {
+        if (rotateX != 0 || rotateY != 0 || rotateZ != 0)
         {
-            if (this.rotateZ != 0)
-            {
-                this.tempMat.rotZ(this.rotateZ);
-                this.mat.mul(this.tempMat);
-            }
-
-            if (this.rotateY != 0)
-            {
-                this.tempMat.rotY(this.rotateY);
-                this.mat.mul(this.tempMat);
-            }
-
-            if (this.rotateX != 0)
-            {
-                this.tempMat.rotX(this.rotateX);
-                this.mat.mul(this.tempMat);
-            }
+            RotationUtils.fromEuler(rotateX, rotateY, rotateZ, q);
+        }
+        else
+        {
+            q.set(0, 0, 0, 1);
         }
+
+        float xx = q.x * q.x;
+        float yy = q.y * q.y;
+        float zz = q.z * q.z;
+        float xy = q.x * q.y;
+        float xz = q.x * q.z;
+        float yz = q.y * q.z;
+        float wx = q.w * q.x;
+        float wy = q.w * q.y;
+        float wz = q.w * q.z;
+
+        /* T * S * R, i.e. rotation rows get scaled */
+        m.m00 = scaleX * (1 - 2 * (yy + zz));
+        m.m01 = scaleX * 2 * (xy - wz);
+        m.m02 = scaleX * 2 * (xz + wy);
+        m.m03 = x;
+        m.m10 = scaleY * 2 * (xy + wz);
+        m.m11 = scaleY * (1 - 2 * (xx + zz));
+        m.m12 = scaleY * 2 * (yz - wx);
+        m.m13 = y;
+        m.m20 = scaleZ * 2 * (xz - wy);
+        m.m21 = scaleZ * 2 * (yz + wx);
+        m.m22 = scaleZ * (1 - 2 * (xx + yy));
+        m.m23 = z;
+        m.m30 = m.m31 = m.m32 = 0;
+        m.m33 = 1;
     }
 
     public void reset()
@@ -32,6 +32,7 @@ public class BOBJBoneModifier
     private Vector4f global = new Vector4f();
     private Vector4f local = new Vector4f();
     private Matrix4f inverse = new Matrix4f();
+    private Matrix4f temporary = new Matrix4f();
 
     /**
      * Construct modifier out of bone and chain length  
@@ -110,14 +111,16 @@ public class BOBJBoneModifier
             this.inverse.m23 = this.local.z;
         }
 
-        Matrix4f m = new Matrix4f();
+        Matrix4f m = this.temporary;
+
+        m.setIdentity();
         bone.mat.set(bone.relBoneMat);
         bone.applyTransformations();
         bone.mat.mul(this.inverse);
 
         if (bone.parentBone != null)
         {
-            m = new Matrix4f(bone.parentBone.mat);
+            m.set(bone.parentBone.mat);
         }
 
         m.mul(bone.mat);
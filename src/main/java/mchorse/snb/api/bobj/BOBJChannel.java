@@ -9,10 +9,41 @@ public class BOBJChannel
     public int index;
     public List<BOBJKeyframe> keyframes = new ArrayList<BOBJKeyframe>();
 
+    /**
+     * Index of the transformation this channel animates: location XYZ 
+     * (0-2), rotation XYZ (3-5) and scale XYZ (6-8), or -1 if it's 
+     * unknown
+     */
+    public int slot;
+
     public BOBJChannel(String path, int index)
     {
         this.path = path;
         this.index = index;
+        this.slot = getSlot(path, index);
+    }
+
+    public static int getSlot(String path, int index)
+    {
+        if (index < 0 || index > 2)
+        {
+            return -1;
+        }
+
+        if (path.equals("location"))
+        {
+            return index;
+        }
+        else if (path.equals("rotation"))
+        {
+            return 3 + index;
+        }
+        else if (path.equals("scale"))
+        {
+            return 6 + index;
+        }
+
+        return -1;
     }
 
     public float calculate(float frame)
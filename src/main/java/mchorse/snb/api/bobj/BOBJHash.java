@@ -0,0 +1,180 @@
+package mchorse.snb.api.bobj;
+
+import mchorse.snb.api.bobj.BOBJLoader.BOBJData;
+import mchorse.snb.api.bobj.BOBJLoader.BOBJMesh;
+import mchorse.snb.api.bobj.BOBJLoader.Face;
+import mchorse.snb.api.bobj.BOBJLoader.IndexGroup;
+import mchorse.snb.api.bobj.BOBJLoader.Vertex;
+import mchorse.snb.api.bobj.BOBJLoader.Weight;
+
+import javax.vecmath.Matrix4f;
+import javax.vecmath.Vector2f;
+import javax.vecmath.Vector3f;
+import java.util.TreeMap;
+
+/**
+ * BOBJ content hash
+ *
+ * 64-bit FNV-1a hashes of meshes, armatures and actions. They're
+ * computed right after parsing, and used upon reloading to find out
+ * which parts of a model were actually changed. Meshes are hashed by
+ * their dereferenced data, so it doesn't matter where in the file
+ * their vertices are stored.
+ */
+public class BOBJHash
+{
+    private static final long OFFSET = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private long hash = OFFSET;
+
+    /**
+     * Compute hashes of all meshes, armatures and actions in given data
+     */
+    public static void compute(BOBJData data)
+    {
+        for (BOBJMesh mesh : data.meshes)
+        {
+            mesh.hash = hash(data, mesh);
+        }
+
+        for (BOBJArmature armature : data.armatures.values())
+        {
+            armature.hash = hash(armature);
+        }
+
+        for (BOBJAction action : data.actions.values())
+        {
+            action.hash = hash(action);
+        }
+    }
+
+    public static long hash(BOBJData data, BOBJMesh mesh)
+    {
+        BOBJHash hash = new BOBJHash();
+
+        hash.add(mesh.name).add(mesh.armatureName);
+
+        for (Face face : mesh.faces)
+        {
+            for (IndexGroup group : face.idxGroups)
+            {
+                Vertex vertex = group.idxPos >= 0 ? data.vertices.get(group.idxPos) : null;
+                Vector2f texture = group.idxTextCoord >= 0 ? data.textures.get(group.idxTextCoord) : null;
+                Vector3f normal = group.idxVecNormal >= 0 ? data.normals.get(group.idxVecNormal) : null;
+
+                if (vertex != null)
+                {
+                    hash.add(vertex.x).add(vertex.y).add(vertex.z).add(vertex.weights.size());
+
+                    for (Weight weight : vertex.weights)
+                    {
+                        hash.add(weight.name).add(weight.factor);
+                    }
+                }
+
+                if (texture != null)
+                {
+                    hash.add(texture.x).add(texture.y);
+                }
+
+                if (normal != null)
+                {
+                    hash.add(normal.x).add(normal.y).add(normal.z);
+                }
+            }
+        }
+
+        return hash.hash;
+    }
+
+    public static long hash(BOBJArmature armature)
+    {
+        BOBJHash hash = new BOBJHash();
+
+        hash.add(armature.name).add(armature.action);
+
+        for (BOBJBone bone : armature.orderedBones)
+        {
+            hash.add(bone.index).add(bone.name).add(bone.parent);
+            hash.add(bone.tail.x).add(bone.tail.y).add(bone.tail.z);
+
+            Matrix4f mat = bone.boneMat;
+
+            hash.add(mat.m00).add(mat.m01).add(mat.m02).add(mat.m03);
+            hash.add(mat.m10).add(mat.m11).add(mat.m12).add(mat.m13);
+            hash.add(mat.m20).add(mat.m21).add(mat.m22).add(mat.m23);
+            hash.add(mat.m30).add(mat.m31).add(mat.m32).add(mat.m33);
+
+            if (bone.modifiers != null)
+            {
+                for (BOBJBoneModifier modifier : bone.modifiers)
+                {
+                    hash.add(modifier.target == null ? "" : modifier.target.name).add(modifier.chain).add(modifier.stick ? 1 : 0);
+                }
+            }
+        }
+
+        return hash.hash;
+    }
+
+    public static long hash(BOBJAction action)
+    {
+        BOBJHash hash = new BOBJHash();
+
+        hash.add(action.name);
+
+        /* Groups are stored in a hash map, so they're sorted to not
+         * depend on its iteration order */
+        for (BOBJGroup group : new TreeMap<String, BOBJGroup>(action.groups).values())
+        {
+            hash.add(group.name);
+
+            for (BOBJChannel channel : group.channels)
+            {
+                hash.add(channel.path).add(channel.index).add(channel.keyframes.size());
+
+                for (BOBJKeyframe keyframe : channel.keyframes)
+                {
+                    hash.add(keyframe.frame).add(keyframe.value).add(keyframe.interpolation.ordinal());
+                    hash.add(keyframe.leftX).add(keyframe.leftY).add(keyframe.rightX).add(keyframe.rightY);
+                }
+            }
+        }
+
+        return hash.hash;
+    }
+
+    private BOBJHash add(int value)
+    {
+        for (int i = 0; i < 4; i++)
+        {
+            this.hash ^= (value >>> (i * 8)) & 0xff;
+            this.hash *= PRIME;
+        }
+
+        return this;
+    }
+
+    private BOBJHash add(float value)
+    {
+        return this.add(Float.floatToIntBits(value));
+    }
+
+    private BOBJHash add(String string)
+    {
+        if (string == null)
+        {
+            return this.add(-1);
+        }
+
+        this.add(string.length());
+
+        for (int i = 0; i < string.length(); i++)
+        {
+            this.add((int) string.charAt(i));
+        }
+
+        return this;
+    }
+}
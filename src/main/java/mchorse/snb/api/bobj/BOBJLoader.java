@@ -1,10 +1,13 @@
 package mchorse.snb.api.bobj;
 
+import mchorse.snb.SnB;
+import mchorse.snb.utils.FlightEvents;
 import org.apache.commons.lang3.ArrayUtils;
 
 import javax.vecmath.Matrix4f;
 import javax.vecmath.Vector2f;
 import javax.vecmath.Vector3f;
+import javax.vecmath.Vector4f;
 import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -18,6 +21,12 @@ import java.util.Map;
 
 public class BOBJLoader
 {
+    /**
+     * Texture V ranges (min and max) of joints of player-like models, 
+     * which get displaced by sharp bending (see AnimationMesh)
+     */
+    public static final float[] JOINT_RANGES = {22 / 64F, 30 / 64F, 54 / 64F, 62 / 64F, 38 / 64F, 46 / 64F};
+
     public static void merge(BOBJData to, BOBJData from)
     {
         int vertSize = to.vertices.size();
@@ -70,6 +79,16 @@ public class BOBJLoader
      */
     public static BOBJLoader.BOBJData readData(InputStream stream) throws Exception
     {
+        return readData(stream, null);
+    }
+
+    /**
+     * Read the data of given model from OBJ file input stream (the 
+     * name is only used for profiling)
+     */
+    public static BOBJLoader.BOBJData readData(InputStream stream, String name) throws Exception
+    {
+        Object event = FlightEvents.PARSE.begin();
         List<String> lines = readAllLines(stream);
 
         List<Vertex> vertices = new ArrayList<Vertex>();
@@ -210,7 +229,20 @@ public class BOBJLoader
             vertex.eliminateTinyWeights(data);
         }
 
-        return data.setupMeshes();
+        BOBJHash.compute(data);
+
+        /* Precompute action durations, so playbacks don't need to 
+         * walk through channels every frame */
+        for (BOBJAction value : actions.values())
+        {
+            value.updateInfo();
+        }
+
+        data.setupMeshes();
+        data.countBytes();
+        FlightEvents.PARSE.commit(event, name, lines.size(), vertices.size(), objects.size(), actions.size());
+
+        return data;
     }
 
     /**
@@ -218,44 +250,227 @@ public class BOBJLoader
      */
     public static Map<String, CompiledData> loadMeshes(BOBJData data)
     {
+        return loadMeshes(data, true);
+    }
+
+    /**
+     * Load separate meshes from OBJ file, optionally with simplified 
+     * levels of detail (see {@link BOBJSimplifier})
+     */
+    public static Map<String, CompiledData> loadMeshes(BOBJData data, boolean simplify)
+    {
+        return loadMeshes(data, data.meshes, simplify);
+    }
+
+    /**
+     * Load only given meshes (which should belong to given data)
+     */
+    public static Map<String, CompiledData> loadMeshes(BOBJData data, List<BOBJMesh> list, boolean simplify)
+    {
+        Object event = FlightEvents.COMPILE.begin();
         Map<String, CompiledData> meshes = new HashMap<String, CompiledData>();
+        long totalVertices = 0;
+        long totalIndices = 0;
 
-        for (BOBJMesh mesh : data.meshes)
+        for (BOBJMesh mesh : list)
         {
-            List<Integer> indices = new ArrayList<Integer>();
-            List<Face> facesList = mesh.faces;
+            List<List<Face>> levels = new ArrayList<List<Face>>();
+
+            /* Simplified levels of detail are stored right after the 
+             * original geometry in the same arrays */
+            levels.add(mesh.faces);
+
+            if (simplify)
+            {
+                levels.addAll(BOBJSimplifier.simplify(data, mesh));
+            }
+
+            /* Face corners which share position, texture coordinate and 
+             * normal become one vertex */
+            List<int[]> levelIndices = new ArrayList<int[]>();
+            List<List<IndexGroup>> levelGroups = new ArrayList<List<IndexGroup>>();
+            int vertices = 0;
+            int indices = 0;
+
+            /* Cache miss ratios (weighted by triangles) before and 
+             * after optimization, they're only measured for debugging */
+            boolean debug = SnB.LOGGER.isDebugEnabled();
+            float before = 0;
+            float after = 0;
+
+            for (List<Face> level : levels)
+            {
+                Map<String, Integer> lookup = new HashMap<String, Integer>();
+                List<IndexGroup> groups = new ArrayList<IndexGroup>();
+                int[] local = new int[level.size() * 3];
+                int j = 0;
+
+                for (Face face : level)
+                {
+                    for (IndexGroup group : face.idxGroups)
+                    {
+                        String key = group.idxPos + "/" + group.idxTextCoord + "/" + group.idxVecNormal;
+                        Integer index = lookup.get(key);
+
+                        /* Sharp bending copies normals between corners 
+                         * of the same triangle, so corners of joints in 
+                         * the full detail level keep their own vertices */
+                        if (level == mesh.faces && isJointCorner(group, mesh, data))
+                        {
+                            index = groups.size();
+                            groups.add(group);
+                        }
+                        else if (index == null)
+                        {
+                            index = groups.size();
+                            lookup.put(key, index);
+                            groups.add(group);
+                        }
+
+                        local[j++] = index;
+                    }
+                }
+
+                /* Reorder triangles for vertex cache and then vertices 
+                 * in the order they're fetched */
+                if (debug)
+                {
+                    before += BOBJOptimizer.getACMR(local, groups.size()) * level.size();
+                }
+
+                BOBJOptimizer.optimizeTriangles(local, groups.size());
+
+                if (debug)
+                {
+                    after += BOBJOptimizer.getACMR(local, groups.size()) * level.size();
+                }
+
+                int[] order = BOBJOptimizer.optimizeVertexFetch(local, groups.size());
+                List<IndexGroup> ordered = new ArrayList<IndexGroup>(groups.size());
+
+                for (int index : order)
+                {
+                    ordered.add(groups.get(index));
+                }
+
+                levelIndices.add(local);
+                levelGroups.add(ordered);
+                vertices += ordered.size();
+                indices += local.length;
+            }
+
+            if (debug && indices > 0)
+            {
+                SnB.LOGGER.debug("Optimized mesh {}: average cache miss ratio {} -> {}", mesh.name, String.format("%.3f", before / (indices / 3)), String.format("%.3f", after / (indices / 3)));
+            }
 
             /* Initiate arrays for mesh data */
-            int[] boneIndicesArr = new int[facesList.size() * 3 * data.maxWeights];
-            float[] weightsArr = new float[facesList.size() * 3 * data.maxWeights];
-            float[] posArr = new float[facesList.size() * 3 * 4];
-            float[] textCoordArr = new float[facesList.size() * 3 * 2];
-            float[] normArr = new float[facesList.size() * 3 * 3];
+            int[] boneIndicesArr = new int[vertices * data.maxWeights];
+            float[] weightsArr = new float[vertices * data.maxWeights];
+            float[] posArr = new float[vertices * 3];
+            float[] textCoordArr = new float[vertices * 2];
+            float[] normArr = new float[vertices * 3];
+            int[] indicesArr = new int[indices];
+            int[] vertexOffsets = new int[levels.size() + 1];
+            int[] indexOffsets = new int[levels.size() + 1];
 
             Arrays.fill(boneIndicesArr, -1);
             Arrays.fill(weightsArr, -1);
 
             int i = 0;
+            int j = 0;
 
-            for (Face face : facesList)
+            for (int l = 0; l < levels.size(); l++)
             {
-                for (IndexGroup indValue : face.idxGroups)
+                vertexOffsets[l] = i;
+                indexOffsets[l] = j;
+
+                for (int index : levelIndices.get(l))
+                {
+                    indicesArr[j++] = vertexOffsets[l] + index;
+                }
+
+                for (IndexGroup group : levelGroups.get(l))
                 {
-                    processFaceVertex(i, indValue, mesh, data, indices, posArr, textCoordArr, normArr, weightsArr, boneIndicesArr);
+                    processFaceVertex(i, group, mesh, data, posArr, textCoordArr, normArr, weightsArr, boneIndicesArr);
 
                     i++;
                 }
             }
 
-            Integer[] integerArray = indices.toArray(new Integer[0]);
-            int[] indicesArr = ArrayUtils.toPrimitive(integerArray);
+            vertexOffsets[levels.size()] = i;
+            indexOffsets[levels.size()] = j;
+
+            CompiledData compiled = new CompiledData(data.maxWeights, posArr, textCoordArr, normArr, weightsArr, boneIndicesArr, indicesArr, mesh);
+
+            compiled.levelVertices = vertexOffsets;
+            compiled.levelIndices = indexOffsets;
+            compiled.computeBounds(mesh.armature.orderedBones.size());
+            meshes.put(mesh.name, compiled);
 
-            meshes.put(mesh.name, new CompiledData(data.maxWeights, posArr, textCoordArr, normArr, weightsArr, boneIndicesArr, indicesArr, mesh));
+            totalVertices += vertices;
+            totalIndices += indices;
+        }
+
+        if (event != null)
+        {
+            FlightEvents.COMPILE.commit(event, String.join(", ", meshes.keySet()), meshes.size(), totalVertices, totalIndices);
         }
 
         return meshes;
     }
 
+    /**
+     * Whether given texture V coordinate is within joints of 
+     * player-like models (see {@link #JOINT_RANGES}), extended by 
+     * given margin
+     */
+    public static boolean isJointTexCoord(double v, double margin)
+    {
+        for (int i = 0; i < JOINT_RANGES.length; i += 2)
+        {
+            if (v >= JOINT_RANGES[i] - margin && v <= JOINT_RANGES[i + 1] + margin)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Whether given face corner may be displaced by sharp bending, 
+     * i.e. it's within joint's texture coordinates and is weighted to 
+     * a leg, arm or body bone. The margin covers texture coordinates 
+     * quantization
+     */
+    private static boolean isJointCorner(IndexGroup group, BOBJMesh mesh, BOBJData data)
+    {
+        if (group.idxPos < 0 || group.idxTextCoord < 0 || mesh.armature == null)
+        {
+            return false;
+        }
+
+        if (!isJointTexCoord(1 - data.textures.get(group.idxTextCoord).y, 1 / 1024D))
+        {
+            return false;
+        }
+
+        Vertex vertex = data.vertices.get(group.idxPos);
+
+        for (int i = 0, c = Math.min(data.maxWeights, vertex.weights.size()); i < c; i++)
+        {
+            String name = vertex.weights.get(i).name;
+
+            if (mesh.armature.bones.containsKey(name) && (name.contains("leg") || name.contains("arm") || name.contains("body")))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     /**
      * Load all meshes as one
      */
@@ -270,7 +485,7 @@ public class BOBJLoader
         }
 
         /* Initiate arrays for mesh data */
-        float[] posArr = new float[facesList.size() * 3 * 4];
+        float[] posArr = new float[facesList.size() * 3 * 3];
         float[] textCoordArr = new float[facesList.size() * 3 * 2];
         float[] normArr = new float[facesList.size() * 3 * 3];
 
@@ -280,7 +495,8 @@ public class BOBJLoader
         {
             for (IndexGroup indValue : face.idxGroups)
             {
-                processFaceVertex(i, indValue, null, data, indices, posArr, textCoordArr, normArr, null, null);
+                processFaceVertex(i, indValue, null, data, posArr, textCoordArr, normArr, null, null);
+                indices.add(i);
 
                 i++;
             }
@@ -288,22 +504,23 @@ public class BOBJLoader
 
         Integer[] integerArray = indices.toArray(new Integer[0]);
         int[] indicesArr = ArrayUtils.toPrimitive(integerArray);
+        CompiledData compiled = new CompiledData(data.maxWeights, posArr, textCoordArr, normArr, null, null, indicesArr, null);
 
-        return new CompiledData(data.maxWeights, posArr, textCoordArr, normArr, null, null, indicesArr, null);
+        compiled.levelVertices = new int[] {0, i};
+        compiled.levelIndices = new int[] {0, indicesArr.length};
+
+        return compiled;
     }
 
-    private static void processFaceVertex(int index, IndexGroup indices, BOBJMesh mesh, BOBJData data, List<Integer> indicesList, float[] posArr, float[] texCoordArr, float[] normArr, float[] weightsArr, int[] boneIndicesArr)
+    private static void processFaceVertex(int index, IndexGroup indices, BOBJMesh mesh, BOBJData data, float[] posArr, float[] texCoordArr, float[] normArr, float[] weightsArr, int[] boneIndicesArr)
     {
-        indicesList.add(index);
-
         if (indices.idxPos >= 0)
         {
             Vertex vec = data.vertices.get(indices.idxPos);
 
-            posArr[index * 4] = vec.x;
-            posArr[index * 4 + 1] = vec.y;
-            posArr[index * 4 + 2] = vec.z;
-            posArr[index * 4 + 3] = 1;
+            posArr[index * 3] = vec.x;
+            posArr[index * 3 + 1] = vec.y;
+            posArr[index * 3 + 2] = vec.z;
 
             if (mesh != null)
             {
@@ -349,6 +566,11 @@ public class BOBJLoader
         public String armatureName;
         public BOBJArmature armature;
 
+        /**
+         * Content hash (see {@link BOBJHash})
+         */
+        public long hash;
+
         public BOBJMesh(String name)
         {
             this.name = name;
@@ -359,6 +581,7 @@ public class BOBJLoader
             BOBJMesh mesh = new BOBJMesh(this.name);
             mesh.armatureName = this.armatureName;
             mesh.armature = this.armature;
+            mesh.hash = this.hash;
 
             for (Face face : this.faces)
             {
@@ -526,6 +749,11 @@ public class BOBJLoader
         public Map<String, BOBJArmature> armatures;
         public int maxWeights;
 
+        /**
+         * Rough amount of bytes taken by this data (see {@link #countBytes()})
+         */
+        private long bytes;
+
         public BOBJData(List<Vertex> vertices, List<Vector2f> textures, List<Vector3f> normals, List<BOBJMesh> meshes, Map<String, BOBJAction> actions, Map<String, BOBJArmature> armatures)
         {
             this.vertices = vertices;
@@ -551,15 +779,73 @@ public class BOBJLoader
             return !this.meshes.isEmpty();
         }
 
+        /**
+         * Get rough amount of bytes which parsed data takes on the 
+         * heap: geometry (until it's disposed), actions' keyframes and 
+         * armatures' bones
+         */
+        public long getBytes()
+        {
+            return this.bytes;
+        }
+
+        /**
+         * Count bytes returned by {@link #getBytes()}. It walks all of 
+         * the data, so it's done only when the data changes (upon 
+         * reading and disposal)
+         */
+        public void countBytes()
+        {
+            long bytes = 0;
+
+            for (Vertex vertex : this.vertices)
+            {
+                bytes += 64 + vertex.weights.size() * 24L;
+            }
+
+            bytes += this.textures.size() * 24L + this.normals.size() * 24L;
+
+            for (BOBJMesh mesh : this.meshes)
+            {
+                bytes += mesh.faces.size() * 128L;
+            }
+
+            for (BOBJAction action : this.actions.values())
+            {
+                for (BOBJGroup group : action.groups.values())
+                {
+                    for (BOBJChannel channel : group.channels)
+                    {
+                        bytes += 48 + channel.keyframes.size() * 40L;
+                    }
+                }
+            }
+
+            for (BOBJArmature armature : this.armatures.values())
+            {
+                bytes += armature.orderedBones.size() * 640L;
+            }
+
+            this.bytes = bytes;
+        }
+
         /**
          * Should clean up all the geometry data used for constructing VBOs
          */
         public void dispose()
         {
+            /* Compiled data keeps references to meshes, so their faces 
+             * have to be cleared as well */
+            for (BOBJMesh mesh : this.meshes)
+            {
+                mesh.faces.clear();
+            }
+
             this.vertices.clear();
             this.textures.clear();
             this.normals.clear();
             this.meshes.clear();
+            this.countBytes();
         }
     }
 
@@ -568,8 +854,17 @@ public class BOBJLoader
      */
     public static class CompiledData
     {
+        /**
+         * Per thread temporaries of {@link #skin(Matrix4f[], int, float[], float[], int)},
+         * so skinning doesn't allocate and can be executed in parallel
+         */
+        private static final ThreadLocal<SkinTemporaries> skinTemporaries = ThreadLocal.withInitial(SkinTemporaries::new);
+
         public int maxWeights;
 
+        /* Positions (XYZ), texture coordinates (UV) and normals (XYZ). 
+         * After {@link #quantize(boolean)} they're replaced by their 
+         * quantized versions and set to null, so use getters */
         public float[] posData;
         public float[] texData;
         public float[] normData;
@@ -578,6 +873,45 @@ public class BOBJLoader
         public int[] indexData;
         public BOBJMesh mesh;
 
+        /**
+         * Quantized positions, 16-bit per component within the mesh's 
+         * bounding box described by {@link #posRange} (min XYZ and 
+         * scale XYZ)
+         */
+        public short[] posQuantized;
+        public float[] posRange;
+
+        /**
+         * Quantized texture coordinates, 16-bit per component within 
+         * the bounding box described by {@link #texRange} (min UV and 
+         * scale UV)
+         */
+        public short[] texQuantized;
+        public float[] texRange;
+
+        /**
+         * Octahedron encoded normals (two 16-bit values per normal)
+         */
+        public short[] normQuantized;
+
+        /**
+         * Bind pose extents of vertices per bone (min XYZ and max XYZ, 
+         * i.e. six floats per bone). The last six floats are extents 
+         * of the vertices which aren't weighted to any bone
+         */
+        public float[] bounds;
+
+        /**
+         * Start offsets of vertices of every level of detail (the 
+         * first one is the original mesh), plus the total vertex count
+         */
+        public int[] levelVertices;
+
+        /**
+         * Start offsets of indices of every level of detail, plus the 
+         * total index count
+         */
+        public int[] levelIndices;
 
         public CompiledData(int maxWeights, float[] posData, float[] texData, float[] normData, float[] weightData, int[] boneIndexData, int[] indexData, BOBJMesh mesh)
         {
@@ -591,5 +925,318 @@ public class BOBJLoader
             this.indexData = indexData;
             this.mesh = mesh;
         }
+
+        /**
+         * Get the amount of vertices
+         */
+        public int getVertices()
+        {
+            return this.levelVertices[this.levelVertices.length - 1];
+        }
+
+        /**
+         * Get the component (0 is X, 1 is Y and 2 is Z) of vertex's 
+         * position
+         */
+        public float getPosition(int vertex, int axis)
+        {
+            if (this.posData != null)
+            {
+                return this.posData[vertex * 3 + axis];
+            }
+
+            return BOBJQuantizer.dequantize(this.posQuantized[vertex * 3 + axis], this.posRange[axis], this.posRange[axis + 3]);
+        }
+
+        /**
+         * Get the component (0 is U and 1 is V) of vertex's texture 
+         * coordinate
+         */
+        public float getTexCoord(int vertex, int axis)
+        {
+            if (this.texData != null)
+            {
+                return this.texData[vertex * 2 + axis];
+            }
+
+            return BOBJQuantizer.dequantize(this.texQuantized[vertex * 2 + axis], this.texRange[axis], this.texRange[axis + 2]);
+        }
+
+        /**
+         * Get vertex's normal into given vector
+         */
+        public void getNormal(int vertex, Vector3f normal)
+        {
+            if (this.normData != null)
+            {
+                normal.set(this.normData[vertex * 3], this.normData[vertex * 3 + 1], this.normData[vertex * 3 + 2]);
+            }
+            else
+            {
+                BOBJQuantizer.decodeOct(this.normQuantized[vertex * 2], this.normQuantized[vertex * 2 + 1], normal);
+            }
+        }
+
+        /**
+         * Replace float normals and texture coordinates, and optionally 
+         * positions, with their 16-bit quantized versions. Quantized 
+         * data takes less than half of the memory, and it's precise 
+         * enough for Minecraft sized models.
+         */
+        public void quantize(boolean positions)
+        {
+            int vertices = this.getVertices();
+
+            if (this.normData != null)
+            {
+                this.normQuantized = new short[vertices * 2];
+
+                for (int i = 0; i < vertices; i++)
+                {
+                    float x = this.normData[i * 3];
+                    float y = this.normData[i * 3 + 1];
+                    float z = this.normData[i * 3 + 2];
+
+                    this.normQuantized[i * 2] = BOBJQuantizer.encodeOctX(x, y, z);
+                    this.normQuantized[i * 2 + 1] = BOBJQuantizer.encodeOctY(x, y, z);
+                }
+
+                this.normData = null;
+            }
+
+            if (this.texData != null)
+            {
+                this.texRange = getRange(this.texData, 2);
+                this.texQuantized = quantize(this.texData, this.texRange, 2);
+                this.texData = null;
+            }
+
+            if (positions && this.posData != null)
+            {
+                this.posRange = getRange(this.posData, 3);
+                this.posQuantized = quantize(this.posData, this.posRange, 3);
+                this.posData = null;
+            }
+        }
+
+        /**
+         * Get the range (min and scale per component) for quantization 
+         * of given data
+         */
+        private static float[] getRange(float[] data, int size)
+        {
+            float[] range = new float[size * 2];
+
+            for (int j = 0; j < size; j++)
+            {
+                float min = Float.POSITIVE_INFINITY;
+                float max = Float.NEGATIVE_INFINITY;
+
+                for (int i = j; i < data.length; i += size)
+                {
+                    min = Math.min(min, data[i]);
+                    max = Math.max(max, data[i]);
+                }
+
+                if (min > max)
+                {
+                    min = max = 0;
+                }
+
+                range[j] = min;
+                range[j + size] = (max - min) / BOBJQuantizer.MAX;
+            }
+
+            return range;
+        }
+
+        private static short[] quantize(float[] data, float[] range, int size)
+        {
+            short[] quantized = new short[data.length];
+
+            for (int i = 0; i < data.length; i++)
+            {
+                quantized[i] = BOBJQuantizer.quantize(data[i], range[i % size], range[i % size + size]);
+            }
+
+            return quantized;
+        }
+
+        /**
+         * Get the amount of bytes taken by arrays of this data
+         */
+        public long getBytes()
+        {
+            long bytes = 0;
+
+            bytes += this.posData == null ? 0 : this.posData.length * 4L;
+            bytes += this.texData == null ? 0 : this.texData.length * 4L;
+            bytes += this.normData == null ? 0 : this.normData.length * 4L;
+            bytes += this.weightData == null ? 0 : this.weightData.length * 4L;
+            bytes += this.boneIndexData == null ? 0 : this.boneIndexData.length * 4L;
+            bytes += this.indexData == null ? 0 : this.indexData.length * 4L;
+            bytes += this.posQuantized == null ? 0 : this.posQuantized.length * 2L;
+            bytes += this.texQuantized == null ? 0 : this.texQuantized.length * 2L;
+            bytes += this.normQuantized == null ? 0 : this.normQuantized.length * 2L;
+            bytes += this.bounds == null ? 0 : this.bounds.length * 4L;
+
+            return bytes;
+        }
+
+        /**
+         * Get the amount of levels of detail (including the original)
+         */
+        public int getLevels()
+        {
+            return this.levelVertices.length - 1;
+        }
+
+        /**
+         * Compute per bone extents of the bind pose vertices. Every 
+         * vertex extends the extents of every bone that influences it, 
+         * so transforming these extents with bone matrices gives a 
+         * conservative bounding box of the posed mesh.
+         */
+        public void computeBounds(int bones)
+        {
+            this.bounds = new float[(bones + 1) * 6];
+
+            for (int i = 0; i <= bones; i++)
+            {
+                Arrays.fill(this.bounds, i * 6, i * 6 + 3, Float.POSITIVE_INFINITY);
+                Arrays.fill(this.bounds, i * 6 + 3, i * 6 + 6, Float.NEGATIVE_INFINITY);
+            }
+
+            for (int i = 0, c = this.getVertices(); i < c; i++)
+            {
+                boolean weighted = false;
+
+                if (this.weightData != null)
+                {
+                    for (int w = 0; w < this.maxWeights; w++)
+                    {
+                        int index = this.boneIndexData[i * this.maxWeights + w];
+
+                        if (this.weightData[i * this.maxWeights + w] > 0 && index >= 0 && index < bones)
+                        {
+                            this.extendBounds(index, i);
+                            weighted = true;
+                        }
+                    }
+                }
+
+                if (!weighted)
+                {
+                    this.extendBounds(bones, i);
+                }
+            }
+        }
+
+        /**
+         * Skin vertices and normals of given level of detail with 
+         * given skinning matrices (indexed by bone index) into given 
+         * arrays. It doesn't touch OpenGL nor modifies this data, so 
+         * it can be called from any thread
+         */
+        public void skin(Matrix4f[] matrices, int level, float[] newVertices, float[] newNormals)
+        {
+            this.skin(matrices, level, newVertices, newNormals, 0);
+        }
+
+        /**
+         * Skin given level of detail into arrays which start at given 
+         * vertex (instead of the first vertex of the mesh)
+         */
+        public void skin(Matrix4f[] matrices, int level, float[] newVertices, float[] newNormals, int offset)
+        {
+            int max = this.maxWeights;
+            SkinTemporaries temporaries = skinTemporaries.get();
+
+            Vector4f sumVertex = temporaries.sumVertex;
+            Vector4f resultVertex = temporaries.resultVertex;
+
+            Vector3f normal = temporaries.normal;
+            Vector3f sumNormal = temporaries.sumNormal;
+            Vector3f resultNormal = temporaries.resultNormal;
+
+            resultVertex.set(0, 0, 0, 0);
+            resultNormal.set(0, 0, 0);
+
+            for (int i = this.levelVertices[level], c = this.levelVertices[level + 1]; i < c; i++)
+            {
+                int count = 0;
+                float x = this.getPosition(i, 0);
+                float y = this.getPosition(i, 1);
+                float z = this.getPosition(i, 2);
+
+                this.getNormal(i, normal);
+
+                for (int w = 0; w < max; w++)
+                {
+                    float weight = this.weightData[i * max + w];
+
+                    if (weight > 0)
+                    {
+                        int index = this.boneIndexData[i * max + w];
+
+                        sumVertex.set(x, y, z, 1);
+                        matrices[index].transform(sumVertex);
+                        sumVertex.scale(weight);
+                        resultVertex.add(sumVertex);
+
+                        sumNormal.set(normal);
+                        matrices[index].transform(sumNormal);
+                        sumNormal.scale(weight);
+                        resultNormal.add(sumNormal);
+
+                        count++;
+                    }
+                }
+
+                if (count == 0)
+                {
+                    resultNormal.set(normal);
+                    resultVertex.set(x, y, z, 1);
+                }
+
+                /* Thanks MiaoNLI for the fix insight! */
+                resultVertex.x /= resultVertex.w;
+                resultVertex.y /= resultVertex.w;
+                resultVertex.z /= resultVertex.w;
+
+                int j = (i - offset) * 3;
+
+                newVertices[j] = resultVertex.x;
+                newVertices[j + 1] = resultVertex.y;
+                newVertices[j + 2] = resultVertex.z;
+
+                newNormals[j] = resultNormal.x;
+                newNormals[j + 1] = resultNormal.y;
+                newNormals[j + 2] = resultNormal.z;
+
+                resultVertex.set(0, 0, 0, 0);
+                resultNormal.set(0, 0, 0);
+            }
+        }
+
+        private void extendBounds(int slot, int vertex)
+        {
+            for (int j = 0; j < 3; j++)
+            {
+                float value = this.getPosition(vertex, j);
+
+                this.bounds[slot * 6 + j] = Math.min(this.bounds[slot * 6 + j], value);
+                this.bounds[slot * 6 + 3 + j] = Math.max(this.bounds[slot * 6 + 3 + j], value);
+            }
+        }
+
+        private static class SkinTemporaries
+        {
+            public Vector4f sumVertex = new Vector4f();
+            public Vector4f resultVertex = new Vector4f();
+            public Vector3f normal = new Vector3f();
+            public Vector3f sumNormal = new Vector3f();
+            public Vector3f resultNormal = new Vector3f();
+        }
     }
 }
\ No newline at end of file
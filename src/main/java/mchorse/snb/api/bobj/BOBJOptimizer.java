@@ -0,0 +1,310 @@
+package mchorse.snb.api.bobj;
+
+import java.util.Arrays;
+
+/**
+ * BOBJ index optimizer
+ *
+ * This class is responsible for reordering indexed triangles so they
+ * hit GPU's post-transform vertex cache more often (Tom Forsyth's
+ * linear-speed vertex cache optimisation), and for reordering vertices
+ * in the order they are fetched, so both GPU and the CPU skinning loop
+ * read vertex data mostly sequentially.
+ *
+ * All methods work on triangle lists of local indices (0 to vertex
+ * count).
+ */
+public class BOBJOptimizer
+{
+    /**
+     * Size of the simulated cache used for measuring cache miss ratio.
+     * It's smaller than the one used for optimisation, so the measured
+     * ratio is rather pessimistic.
+     */
+    public static final int FIFO_SIZE = 16;
+
+    /* Forsyth's scoring constants */
+    private static final int CACHE_SIZE = 32;
+    private static final float CACHE_DECAY_POWER = 1.5F;
+    private static final float LAST_TRI_SCORE = 0.75F;
+    private static final float VALENCE_BOOST_SCALE = 2.0F;
+    private static final float VALENCE_BOOST_POWER = 0.5F;
+
+    /**
+     * Calculate average cache miss ratio (amount of vertex transforms
+     * per triangle) of given indices with a FIFO cache. It's between
+     * 0.5 (ideal) and 3 (no vertex reuse).
+     */
+    public static float getACMR(int[] indices, int vertices)
+    {
+        if (indices.length == 0)
+        {
+            return 0;
+        }
+
+        int[] stamps = new int[vertices];
+        int misses = 0;
+
+        for (int index : indices)
+        {
+            /* Vertex is in the cache if it was added less than cache
+             * size misses ago */
+            if (stamps[index] == 0 || misses - stamps[index] >= FIFO_SIZE)
+            {
+                misses++;
+                stamps[index] = misses;
+            }
+        }
+
+        return misses / (indices.length / 3F);
+    }
+
+    /**
+     * Reorder triangles of given indices (in place) to improve vertex
+     * cache hit rate. It greedily picks the triangle with the highest
+     * score, where score favors vertices that are recently used
+     * and vertices that have few remaining triangles left.
+     */
+    public static void optimizeTriangles(int[] indices, int vertices)
+    {
+        int triangles = indices.length / 3;
+
+        if (triangles == 0)
+        {
+            return;
+        }
+
+        /* Build vertex to triangle adjacency */
+        int[] valence = new int[vertices];
+
+        for (int index : indices)
+        {
+            valence[index]++;
+        }
+
+        int[] offsets = new int[vertices + 1];
+
+        for (int i = 0; i < vertices; i++)
+        {
+            offsets[i + 1] = offsets[i] + valence[i];
+        }
+
+        int[] adjacency = new int[indices.length];
+        int[] remaining = new int[vertices];
+
+        for (int i = 0; i < indices.length; i++)
+        {
+            int index = indices[i];
+
+            adjacency[offsets[index] + remaining[index]] = i / 3;
+            remaining[index]++;
+        }
+
+        /* Initial scores */
+        int[] position = new int[vertices];
+        float[] vertexScores = new float[vertices];
+        float[] triangleScores = new float[triangles];
+        boolean[] emitted = new boolean[triangles];
+
+        Arrays.fill(position, -1);
+
+        for (int i = 0; i < vertices; i++)
+        {
+            vertexScores[i] = getVertexScore(-1, remaining[i]);
+        }
+
+        for (int i = 0; i < triangles; i++)
+        {
+            triangleScores[i] = vertexScores[indices[i * 3]] + vertexScores[indices[i * 3 + 1]] + vertexScores[indices[i * 3 + 2]];
+        }
+
+        int[] cache = new int[CACHE_SIZE + 3];
+        int[] newCache = new int[CACHE_SIZE + 3];
+        int cached = 0;
+        int[] result = new int[indices.length];
+        int cursor = 0;
+        int best = getBestTriangle(triangleScores, emitted, 0);
+
+        for (int t = 0; t < triangles; t++)
+        {
+            if (best < 0)
+            {
+                /* Nothing in the cache touches remaining triangles, so
+                 * find the next best one the slow way */
+                while (emitted[cursor])
+                {
+                    cursor++;
+                }
+
+                best = getBestTriangle(triangleScores, emitted, cursor);
+            }
+
+            emitted[best] = true;
+
+            /* Emitted triangle's vertices go to the front of the cache */
+            int newCached = 0;
+
+            for (int j = 0; j < 3; j++)
+            {
+                int index = indices[best * 3 + j];
+
+                result[t * 3 + j] = index;
+                newCache[newCached++] = index;
+
+                /* Remove the triangle from vertex's remaining list */
+                int start = offsets[index];
+                int end = start + remaining[index];
+
+                for (int k = start; k < end; k++)
+                {
+                    if (adjacency[k] == best)
+                    {
+                        adjacency[k] = adjacency[end - 1];
+                        break;
+                    }
+                }
+
+                remaining[index]--;
+            }
+
+            for (int j = 0; j < cached; j++)
+            {
+                int index = cache[j];
+
+                if (index != newCache[0] && index != newCache[1] && index != newCache[2])
+                {
+                    newCache[newCached++] = index;
+                }
+            }
+
+            int[] swap = cache;
+
+            cache = newCache;
+            newCache = swap;
+            cached = newCached;
+
+            /* Update scores of vertices in the cache (including the ones
+             * which just got pushed out) and their triangles */
+            best = -1;
+            float bestScore = -1;
+
+            for (int j = 0; j < cached; j++)
+            {
+                int index = cache[j];
+
+                position[index] = j < CACHE_SIZE ? j : -1;
+                vertexScores[index] = getVertexScore(position[index], remaining[index]);
+            }
+
+            for (int j = 0; j < cached; j++)
+            {
+                int index = cache[j];
+
+                for (int k = offsets[index], end = k + remaining[index]; k < end; k++)
+                {
+                    int triangle = adjacency[k];
+                    float score = vertexScores[indices[triangle * 3]] + vertexScores[indices[triangle * 3 + 1]] + vertexScores[indices[triangle * 3 + 2]];
+
+                    triangleScores[triangle] = score;
+
+                    if (score > bestScore)
+                    {
+                        best = triangle;
+                        bestScore = score;
+                    }
+                }
+            }
+
+            cached = Math.min(cached, CACHE_SIZE);
+        }
+
+        System.arraycopy(result, 0, indices, 0, indices.length);
+    }
+
+    /**
+     * Reorder vertices in the order they're first referenced by given
+     * indices. Indices are remapped in place, and returned array maps
+     * new vertex indices to old ones. Vertices that aren't referenced
+     * are put at the end.
+     */
+    public static int[] optimizeVertexFetch(int[] indices, int vertices)
+    {
+        int[] remap = new int[vertices];
+        int[] order = new int[vertices];
+        int next = 0;
+
+        Arrays.fill(remap, -1);
+
+        for (int i = 0; i < indices.length; i++)
+        {
+            int index = indices[i];
+
+            if (remap[index] < 0)
+            {
+                remap[index] = next;
+                order[next] = index;
+                next++;
+            }
+
+            indices[i] = remap[index];
+        }
+
+        for (int i = 0; i < vertices; i++)
+        {
+            if (remap[i] < 0)
+            {
+                order[next++] = i;
+            }
+        }
+
+        return order;
+    }
+
+    private static int getBestTriangle(float[] scores, boolean[] emitted, int start)
+    {
+        int best = -1;
+        float bestScore = -1;
+
+        for (int i = start; i < scores.length; i++)
+        {
+            if (!emitted[i] && scores[i] > bestScore)
+            {
+                best = i;
+                bestScore = scores[i];
+            }
+        }
+
+        return best;
+    }
+
+    private static float getVertexScore(int position, int remaining)
+    {
+        if (remaining == 0)
+        {
+            /* No triangles left, so it's no use */
+            return -1;
+        }
+
+        float score = 0;
+
+        if (position >= 0)
+        {
+            if (position < 3)
+            {
+                /* Vertices of the last triangle get a fixed score,
+                 * otherwise it would favor the same vertices too much */
+                score = LAST_TRI_SCORE;
+            }
+            else
+            {
+                float scaler = 1F / (CACHE_SIZE - 3);
+
+                score = (float) Math.pow(1F - (position - 3) * scaler, CACHE_DECAY_POWER);
+            }
+        }
+
+        /* Boost vertices with few triangles left, so lone triangles
+         * don't get left behind */
+        return score + VALENCE_BOOST_SCALE * (float) Math.pow(remaining, -VALENCE_BOOST_POWER);
+    }
+}
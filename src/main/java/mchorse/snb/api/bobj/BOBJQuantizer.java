@@ -0,0 +1,157 @@
+package mchorse.snb.api.bobj;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * BOBJ quantizer
+ *
+ * Compact encodings of vertex attributes: unit vectors are
+ * octahedron encoded into two 16-bit values, and bounded values are
+ * stored as 16-bit fractions of their range. Half floats are used for
+ * data which is uploaded to the GPU as is.
+ */
+public class BOBJQuantizer
+{
+    public static final int MAX = 65535;
+
+    /**
+     * Quantize a value within given range (min and scale, i.e. range
+     * size divided by {@link #MAX}) into unsigned 16-bit value stored
+     * in a short
+     */
+    public static short quantize(float value, float min, float scale)
+    {
+        if (scale == 0)
+        {
+            return 0;
+        }
+
+        int quantized = Math.round((value - min) / scale);
+
+        return (short) Math.max(0, Math.min(MAX, quantized));
+    }
+
+    /**
+     * Dequantize a value which was quantized with {@link #quantize(float, float, float)}
+     */
+    public static float dequantize(short value, float min, float scale)
+    {
+        return min + (value & 0xffff) * scale;
+    }
+
+    /**
+     * Encode unit vector's X component on an octahedron. The vector
+     * is projected on the octahedron, and its lower half is folded
+     * over the upper one, so it can be stored with two values.
+     */
+    public static short encodeOctX(float x, float y, float z)
+    {
+        return encodeOct(x, y, z, true);
+    }
+
+    /**
+     * Encode unit vector's Y component on an octahedron
+     */
+    public static short encodeOctY(float x, float y, float z)
+    {
+        return encodeOct(x, y, z, false);
+    }
+
+    private static short encodeOct(float x, float y, float z, boolean first)
+    {
+        float length = Math.abs(x) + Math.abs(y) + Math.abs(z);
+
+        if (length == 0)
+        {
+            return 0;
+        }
+
+        float u = x / length;
+        float v = y / length;
+
+        if (z < 0)
+        {
+            float tu = (1 - Math.abs(v)) * (u >= 0 ? 1 : -1);
+            float tv = (1 - Math.abs(u)) * (v >= 0 ? 1 : -1);
+
+            u = tu;
+            v = tv;
+        }
+
+        return (short) Math.round((first ? u : v) * 32767F);
+    }
+
+    /**
+     * Decode octahedron encoded unit vector into given vector
+     */
+    public static void decodeOct(short ox, short oy, Vector3f vector)
+    {
+        float x = Math.max(ox / 32767F, -1);
+        float y = Math.max(oy / 32767F, -1);
+        float z = 1 - Math.abs(x) - Math.abs(y);
+
+        if (z < 0)
+        {
+            float tx = (1 - Math.abs(y)) * (x >= 0 ? 1 : -1);
+            float ty = (1 - Math.abs(x)) * (y >= 0 ? 1 : -1);
+
+            x = tx;
+            y = ty;
+        }
+
+        vector.set(x, y, z);
+
+        if (x != 0 || y != 0 || z != 0)
+        {
+            vector.normalize();
+        }
+    }
+
+    /**
+     * Convert a float into IEEE 754 half float (rounding to the nearest)
+     */
+    public static short toHalf(float value)
+    {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xff) - 127 + 15;
+        int mantissa = bits & 0x7fffff;
+
+        if (exponent >= 31)
+        {
+            /* Too big (or NaN/infinity) */
+            return (short) (sign | 0x7c00 | (((bits >>> 23) & 0xff) == 0xff && mantissa != 0 ? 0x200 : 0));
+        }
+
+        if (exponent <= 0)
+        {
+            if (exponent < -10)
+            {
+                return (short) sign;
+            }
+
+            /* Denormalized half */
+            mantissa |= 0x800000;
+
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+
+            if (((mantissa >> (shift - 1)) & 1) != 0)
+            {
+                half++;
+            }
+
+            return (short) (sign | half);
+        }
+
+        int half = sign | (exponent << 10) | (mantissa >> 13);
+
+        /* Round to the nearest, overflow into the exponent is fine */
+        if ((mantissa & 0x1000) != 0)
+        {
+            half++;
+        }
+
+        return (short) half;
+    }
+}
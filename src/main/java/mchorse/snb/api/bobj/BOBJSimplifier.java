@@ -0,0 +1,598 @@
+package mchorse.snb.api.bobj;
+
+import mchorse.snb.api.bobj.BOBJLoader.BOBJData;
+import mchorse.snb.api.bobj.BOBJLoader.BOBJMesh;
+import mchorse.snb.api.bobj.BOBJLoader.Face;
+import mchorse.snb.api.bobj.BOBJLoader.IndexGroup;
+import mchorse.snb.api.bobj.BOBJLoader.Vertex;
+import mchorse.snb.api.bobj.BOBJLoader.Weight;
+
+import javax.vecmath.Vector2f;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * BOBJ mesh simplifier
+ *
+ * This class is responsible for generating levels of detail of a mesh
+ * by collapsing edges with the least quadric error (Garland-Heckbert).
+ * Vertices collapse only onto other existing vertices, so simplified
+ * faces reference the same positions, texture coordinates and normals
+ * as the original faces do. Vertices on UV seams and open borders are
+ * never moved, and vertices which are driven by different bones never
+ * collapse onto each other.
+ */
+public class BOBJSimplifier
+{
+    /**
+     * Target face ratios of generated levels of detail
+     */
+    public static final float[] RATIOS = {0.5F, 0.25F, 0.125F};
+
+    /**
+     * Meshes with less faces than this aren't worth simplifying
+     */
+    public static final int MIN_FACES = 64;
+
+    private BOBJData data;
+
+    /* Vertices */
+    private int[] positions;
+    private double[][] quadrics;
+    private boolean[] locked;
+    private boolean[] removed;
+    private int[] versions;
+    private Map<String, Float>[] weights;
+    private List<Integer>[] adjacent;
+
+    /* Faces */
+    private int[] faceVertices;
+    private IndexGroup[] faceGroups;
+    private boolean[] dead;
+    private int alive;
+
+    private PriorityQueue<Collapse> queue = new PriorityQueue<Collapse>();
+
+    /**
+     * Generate simplified face lists of given mesh, from the most
+     * detailed to the least detailed one. Levels which couldn't be
+     * simplified enough are omitted.
+     */
+    public static List<List<Face>> simplify(BOBJData data, BOBJMesh mesh)
+    {
+        List<List<Face>> levels = new ArrayList<List<Face>>();
+
+        if (mesh.faces.size() >= MIN_FACES)
+        {
+            new BOBJSimplifier(data, mesh.faces).generate(RATIOS, levels);
+        }
+
+        return levels;
+    }
+
+    @SuppressWarnings("unchecked")
+    private BOBJSimplifier(BOBJData data, List<Face> faces)
+    {
+        this.data = data;
+
+        Map<Integer, Integer> local = new HashMap<Integer, Integer>();
+        List<Integer> positions = new ArrayList<Integer>();
+        int count = faces.size();
+
+        this.faceVertices = new int[count * 3];
+        this.faceGroups = new IndexGroup[count * 3];
+        this.dead = new boolean[count];
+        this.alive = count;
+
+        for (int i = 0; i < count; i++)
+        {
+            for (int j = 0; j < 3; j++)
+            {
+                IndexGroup group = faces.get(i).idxGroups[j];
+                Integer index = local.get(group.idxPos);
+
+                if (index == null)
+                {
+                    local.put(group.idxPos, index = positions.size());
+                    positions.add(group.idxPos);
+                }
+
+                this.faceVertices[i * 3 + j] = index;
+                this.faceGroups[i * 3 + j] = group;
+            }
+        }
+
+        int vertices = positions.size();
+
+        this.positions = new int[vertices];
+        this.quadrics = new double[vertices][10];
+        this.locked = new boolean[vertices];
+        this.removed = new boolean[vertices];
+        this.versions = new int[vertices];
+        this.weights = new Map[vertices];
+        this.adjacent = new List[vertices];
+
+        for (int i = 0; i < vertices; i++)
+        {
+            this.positions[i] = positions.get(i);
+            this.weights[i] = new HashMap<String, Float>();
+            this.adjacent[i] = new ArrayList<Integer>();
+
+            for (Weight weight : this.vertex(i).weights)
+            {
+                this.weights[i].put(weight.name, weight.factor);
+            }
+        }
+
+        for (int i = 0; i < count; i++)
+        {
+            for (int j = 0; j < 3; j++)
+            {
+                this.adjacent[this.faceVertices[i * 3 + j]].add(i);
+            }
+
+            this.addFaceQuadric(i);
+        }
+
+        this.lockSeams();
+        this.lockBorders();
+
+        for (int i = 0; i < count; i++)
+        {
+            for (int j = 0; j < 3; j++)
+            {
+                int a = this.faceVertices[i * 3 + j];
+                int b = this.faceVertices[i * 3 + (j + 1) % 3];
+
+                if (a < b)
+                {
+                    this.queueEdge(a, b);
+                }
+            }
+        }
+    }
+
+    private void generate(float[] ratios, List<List<Face>> levels)
+    {
+        int total = this.alive;
+        int last = total;
+
+        for (float ratio : ratios)
+        {
+            int target = (int) (total * ratio);
+
+            while (this.alive > target && !this.queue.isEmpty())
+            {
+                Collapse collapse = this.queue.poll();
+
+                if (collapse.isValid(this))
+                {
+                    this.collapse(collapse.from, collapse.to);
+                }
+            }
+
+            /* There is no point in a level that is barely simpler than
+             * the previous one */
+            if (this.alive > last * 0.8F)
+            {
+                break;
+            }
+
+            levels.add(this.collectFaces());
+            last = this.alive;
+        }
+    }
+
+    /* Setup */
+
+    private Vertex vertex(int index)
+    {
+        return this.data.vertices.get(this.positions[index]);
+    }
+
+    private void addFaceQuadric(int face)
+    {
+        Vertex a = this.vertex(this.faceVertices[face * 3]);
+        Vertex b = this.vertex(this.faceVertices[face * 3 + 1]);
+        Vertex c = this.vertex(this.faceVertices[face * 3 + 2]);
+
+        double ux = b.x - a.x, uy = b.y - a.y, uz = b.z - a.z;
+        double vx = c.x - a.x, vy = c.y - a.y, vz = c.z - a.z;
+        double nx = uy * vz - uz * vy;
+        double ny = uz * vx - ux * vz;
+        double nz = ux * vy - uy * vx;
+        double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+        if (length == 0)
+        {
+            return;
+        }
+
+        nx /= length;
+        ny /= length;
+        nz /= length;
+
+        /* Planes are weighted by triangle's area */
+        double d = -(nx * a.x + ny * a.y + nz * a.z);
+        double area = length / 2;
+        double[] plane = {nx * nx, nx * ny, nx * nz, nx * d, ny * ny, ny * nz, ny * d, nz * nz, nz * d, d * d};
+
+        for (int j = 0; j < 3; j++)
+        {
+            double[] quadric = this.quadrics[this.faceVertices[face * 3 + j]];
+
+            for (int k = 0; k < 10; k++)
+            {
+                quadric[k] += plane[k] * area;
+            }
+        }
+    }
+
+    /**
+     * Lock vertices which have different texture coordinates in
+     * different faces, moving them would tear the texture apart
+     */
+    private void lockSeams()
+    {
+        IndexGroup[] first = new IndexGroup[this.positions.length];
+
+        for (int i = 0; i < this.faceGroups.length; i++)
+        {
+            int vertex = this.faceVertices[i];
+            IndexGroup group = this.faceGroups[i];
+
+            if (first[vertex] == null)
+            {
+                first[vertex] = group;
+            }
+            else if (!this.sameTexture(first[vertex].idxTextCoord, group.idxTextCoord))
+            {
+                this.locked[vertex] = true;
+            }
+        }
+    }
+
+    private boolean sameTexture(int a, int b)
+    {
+        if (a == b)
+        {
+            return true;
+        }
+
+        if (a < 0 || b < 0)
+        {
+            return false;
+        }
+
+        Vector2f ta = this.data.textures.get(a);
+        Vector2f tb = this.data.textures.get(b);
+
+        return ta.x == tb.x && ta.y == tb.y;
+    }
+
+    /**
+     * Lock vertices of edges which aren't shared by exactly two faces,
+     * so open borders and silhouettes of separate parts are preserved
+     */
+    private void lockBorders()
+    {
+        Map<Long, Integer> edges = new HashMap<Long, Integer>();
+
+        for (int i = 0; i < this.faceVertices.length; i++)
+        {
+            int j = i - i % 3 + (i % 3 + 1) % 3;
+            Long key = this.edgeKey(this.faceVertices[i], this.faceVertices[j]);
+            Integer count = edges.get(key);
+
+            edges.put(key, count == null ? 1 : count + 1);
+        }
+
+        for (Map.Entry<Long, Integer> entry : edges.entrySet())
+        {
+            if (entry.getValue() != 2)
+            {
+                long key = entry.getKey();
+
+                this.locked[(int) (key >> 32)] = true;
+                this.locked[(int) key] = true;
+            }
+        }
+    }
+
+    private long edgeKey(int a, int b)
+    {
+        return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+    }
+
+    /* Collapsing */
+
+    private void queueEdge(int a, int b)
+    {
+        double ab = this.cost(a, b);
+        double ba = this.cost(b, a);
+
+        if (ab == Double.MAX_VALUE && ba == Double.MAX_VALUE)
+        {
+            return;
+        }
+
+        if (ab <= ba)
+        {
+            this.queue.add(new Collapse(a, b, ab, this.versions[a], this.versions[b]));
+        }
+        else
+        {
+            this.queue.add(new Collapse(b, a, ba, this.versions[b], this.versions[a]));
+        }
+    }
+
+    /**
+     * Cost of moving vertex "from" onto vertex "to". It's the quadric
+     * error of both vertices at "to"'s position, plus a penalty for
+     * the difference in bone weights.
+     */
+    private double cost(int from, int to)
+    {
+        if (this.locked[from] || !this.sameDominantBone(from, to))
+        {
+            return Double.MAX_VALUE;
+        }
+
+        Vertex v = this.vertex(to);
+        double[] a = this.quadrics[from];
+        double[] b = this.quadrics[to];
+        double x = v.x, y = v.y, z = v.z;
+        double error = 0;
+
+        error += (a[0] + b[0]) * x * x + 2 * (a[1] + b[1]) * x * y + 2 * (a[2] + b[2]) * x * z + 2 * (a[3] + b[3]) * x;
+        error += (a[4] + b[4]) * y * y + 2 * (a[5] + b[5]) * y * z + 2 * (a[6] + b[6]) * y;
+        error += (a[7] + b[7]) * z * z + 2 * (a[8] + b[8]) * z + (a[9] + b[9]);
+
+        Vertex u = this.vertex(from);
+        double dx = u.x - x, dy = u.y - y, dz = u.z - z;
+
+        return Math.max(error, 0) + this.weightDifference(from, to) * (dx * dx + dy * dy + dz * dz);
+    }
+
+    private boolean sameDominantBone(int a, int b)
+    {
+        String boneA = this.dominantBone(a);
+        String boneB = this.dominantBone(b);
+
+        return boneA == null ? boneB == null : boneA.equals(boneB);
+    }
+
+    private String dominantBone(int vertex)
+    {
+        String bone = null;
+        float max = 0;
+
+        for (Map.Entry<String, Float> entry : this.weights[vertex].entrySet())
+        {
+            if (entry.getValue() > max)
+            {
+                bone = entry.getKey();
+                max = entry.getValue();
+            }
+        }
+
+        return bone;
+    }
+
+    private float weightDifference(int a, int b)
+    {
+        float difference = 0;
+
+        for (Map.Entry<String, Float> entry : this.weights[a].entrySet())
+        {
+            Float other = this.weights[b].get(entry.getKey());
+
+            difference += Math.abs(entry.getValue() - (other == null ? 0 : other));
+        }
+
+        for (Map.Entry<String, Float> entry : this.weights[b].entrySet())
+        {
+            if (!this.weights[a].containsKey(entry.getKey()))
+            {
+                difference += entry.getValue();
+            }
+        }
+
+        return difference;
+    }
+
+    private boolean collapse(int from, int to)
+    {
+        IndexGroup replacement = null;
+
+        /* Since "from" isn't on a seam, "to"'s corner in a face which
+         * shares the edge has the right texture coordinates for the
+         * rest of "from"'s faces */
+        for (int face : this.adjacent[from])
+        {
+            int corner = this.findCorner(face, to);
+
+            if (!this.dead[face] && corner >= 0)
+            {
+                replacement = this.faceGroups[corner];
+
+                break;
+            }
+        }
+
+        if (replacement == null || this.flips(from, to))
+        {
+            return false;
+        }
+
+        for (int face : this.adjacent[from])
+        {
+            if (this.dead[face])
+            {
+                continue;
+            }
+
+            if (this.findCorner(face, to) >= 0)
+            {
+                this.dead[face] = true;
+                this.alive--;
+
+                continue;
+            }
+
+            int corner = this.findCorner(face, from);
+
+            this.faceVertices[corner] = to;
+            this.faceGroups[corner] = replacement;
+            this.adjacent[to].add(face);
+        }
+
+        for (int k = 0; k < 10; k++)
+        {
+            this.quadrics[to][k] += this.quadrics[from][k];
+        }
+
+        this.removed[from] = true;
+        this.versions[from]++;
+        this.versions[to]++;
+
+        for (int face : this.adjacent[to])
+        {
+            if (this.dead[face])
+            {
+                continue;
+            }
+
+            for (int j = 0; j < 3; j++)
+            {
+                int neighbor = this.faceVertices[face * 3 + j];
+
+                if (neighbor != to)
+                {
+                    this.queueEdge(to, neighbor);
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private int findCorner(int face, int vertex)
+    {
+        for (int j = 0; j < 3; j++)
+        {
+            if (this.faceVertices[face * 3 + j] == vertex)
+            {
+                return face * 3 + j;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Check whether moving "from" onto "to" flips any of the faces
+     * which survive the collapse
+     */
+    private boolean flips(int from, int to)
+    {
+        for (int face : this.adjacent[from])
+        {
+            if (this.dead[face] || this.findCorner(face, to) >= 0)
+            {
+                continue;
+            }
+
+            double[] before = this.normal(face, -1, -1);
+            double[] after = this.normal(face, from, to);
+
+            if (before[0] * after[0] + before[1] * after[1] + before[2] * after[2] <= 0)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private double[] normal(int face, int from, int to)
+    {
+        Vertex[] vertices = new Vertex[3];
+
+        for (int j = 0; j < 3; j++)
+        {
+            int vertex = this.faceVertices[face * 3 + j];
+
+            vertices[j] = this.vertex(vertex == from ? to : vertex);
+        }
+
+        double ux = vertices[1].x - vertices[0].x, uy = vertices[1].y - vertices[0].y, uz = vertices[1].z - vertices[0].z;
+        double vx = vertices[2].x - vertices[0].x, vy = vertices[2].y - vertices[0].y, vz = vertices[2].z - vertices[0].z;
+
+        return new double[] {uy * vz - uz * vy, uz * vx - ux * vz, ux * vy - uy * vx};
+    }
+
+    private List<Face> collectFaces()
+    {
+        List<Face> faces = new ArrayList<Face>();
+
+        for (int i = 0; i < this.dead.length; i++)
+        {
+            if (this.dead[i])
+            {
+                continue;
+            }
+
+            Face face = new Face();
+
+            for (int j = 0; j < 3; j++)
+            {
+                face.idxGroups[j] = this.faceGroups[i * 3 + j];
+            }
+
+            faces.add(face);
+        }
+
+        return faces;
+    }
+
+    /**
+     * Edge collapse candidate
+     */
+    private static class Collapse implements Comparable<Collapse>
+    {
+        public int from;
+        public int to;
+        public double cost;
+        public int fromVersion;
+        public int toVersion;
+
+        public Collapse(int from, int to, double cost, int fromVersion, int toVersion)
+        {
+            this.from = from;
+            this.to = to;
+            this.cost = cost;
+            this.fromVersion = fromVersion;
+            this.toVersion = toVersion;
+        }
+
+        /**
+         * Candidates become stale once any of their vertices change
+         */
+        public boolean isValid(BOBJSimplifier simplifier)
+        {
+            return !simplifier.removed[this.from] && !simplifier.removed[this.to]
+                && simplifier.versions[this.from] == this.fromVersion
+                && simplifier.versions[this.to] == this.toVersion;
+        }
+
+        @Override
+        public int compareTo(Collapse o)
+        {
+            return Double.compare(this.cost, o.cost);
+        }
+    }
+}
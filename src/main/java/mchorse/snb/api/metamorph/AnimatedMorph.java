@@ -10,7 +10,7 @@ import mchorse.metamorph.api.morphs.utils.IMorphGenerator;
 import mchorse.metamorph.api.morphs.utils.ISyncableMorph;
 import mchorse.metamorph.bodypart.BodyPartManager;
 import mchorse.metamorph.bodypart.IBodyPartProvider;
-import mchorse.snb.api.animation.AnimationMesh;
+import mchorse.snb.api.animation.model.PoseEvaluator;
 import mchorse.snb.api.bobj.BOBJArmature;
 import net.minecraft.entity.EntityLivingBase;
 import net.minecraft.entity.player.EntityPlayer;
@@ -224,8 +224,13 @@ public class AnimatedMorph extends AbstractMorph implements IBodyPartProvider, I
         }
     }
 
+    @SideOnly(Side.CLIENT)
     public void updateAnimator()
     {
+        /* User config, playbacks and actions are read by the worker 
+         * that evaluates animator's pose */
+        PoseEvaluator.INSTANCE.await(this.animator);
+
         if (this.animator.animation == null)
         {
             return;
@@ -234,6 +239,7 @@ public class AnimatedMorph extends AbstractMorph implements IBodyPartProvider, I
         this.animator.userConfig.copy(this.animator.config.config);
         this.animator.userConfig.fromNBT(this.userConfigData);
         this.animator.animator.refresh();
+        this.animator.revision++;
     }
 
     @Override
@@ -352,8 +358,7 @@ public class AnimatedMorph extends AbstractMorph implements IBodyPartProvider, I
             return this.pose == null ? new AnimatedPose() : this.pose.clone();
         }
 
-        AnimationMesh mesh = this.animator.animation.meshes.get(0);
-        BOBJArmature armature = mesh.armature;
+        BOBJArmature armature = this.animator.animation.getArmature();
 
         return this.animation.calculatePose(this.pose, armature, partialTicks).clone();
     }
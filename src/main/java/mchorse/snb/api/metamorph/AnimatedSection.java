@@ -11,6 +11,12 @@ public class AnimatedSection extends MorphSection
 {
     public MorphCategory category;
 
+    /**
+     * Generation of animations (see {@link AnimationManager#generation}) 
+     * the category was built for
+     */
+    private int generation = -1;
+
     public AnimatedSection(String title)
     {
         super(title);
@@ -21,8 +27,17 @@ public class AnimatedSection extends MorphSection
     @Override
     public void update(World world)
     {
-        ClientProxy.modelHandler.refreshAnimations();
+        ClientProxy.modelHandler.requestRefresh();
+
+        this.categories.clear();
+        this.categories.add(this.category);
+
+        if (this.generation == AnimationManager.INSTANCE.generation)
+        {
+            return;
+        }
 
+        this.generation = AnimationManager.INSTANCE.generation;
         this.category.clear();
 
         for (AnimationManager.AnimationEntry entry : AnimationManager.INSTANCE.animations.values())
@@ -37,9 +52,6 @@ public class AnimatedSection extends MorphSection
 
             this.category.add(morph);
         }
-
-        this.categories.clear();
-        this.categories.add(this.category);
     }
 
     @Override
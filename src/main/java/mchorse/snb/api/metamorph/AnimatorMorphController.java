@@ -1,9 +1,12 @@
 package mchorse.snb.api.metamorph;
 
 import mchorse.mclib.utils.Interpolations;
+import mchorse.metamorph.api.morphs.AbstractMorph;
 import mchorse.metamorph.bodypart.BodyPart;
 import mchorse.snb.api.animation.model.AnimatorController;
 import mchorse.snb.api.animation.model.AnimatorPoseTransform;
+import mchorse.snb.api.animation.model.PoseBuffer;
+import mchorse.snb.api.animation.model.PoseSnapshot;
 import mchorse.snb.api.bobj.BOBJArmature;
 import mchorse.snb.api.bobj.BOBJBone;
 import net.minecraft.entity.EntityLivingBase;
@@ -13,6 +16,7 @@ import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 import org.lwjgl.opengl.GL11;
 
+import javax.vecmath.Vector4f;
 import java.util.Map;
 
 @SideOnly(Side.CLIENT)
@@ -20,6 +24,13 @@ public class AnimatorMorphController extends AnimatorController
 {
     public AnimatedMorph morph;
 
+    /**
+     * Pose of this model, saved while its body parts are rendered
+     */
+    private PoseSnapshot partsPose = new PoseSnapshot();
+
+    private Vector4f position = new Vector4f();
+
     public AnimatorMorphController(String animationName, NBTTagCompound userData, AnimatedMorph morph)
     {
         super(animationName, userData);
@@ -27,19 +38,72 @@ public class AnimatorMorphController extends AnimatorController
         this.morph = morph;
     }
 
+    @Override
+    protected boolean canUseThumbnail()
+    {
+        return super.canUseThumbnail() && !this.morph.animation.isInProgress();
+    }
+
     @Override
     public void renderAnimation(EntityLivingBase entity, float yaw, float partialTicks)
     {
         super.renderAnimation(entity, yaw, partialTicks);
 
-        this.renderBodyParts(entity, yaw, partialTicks);
+        if (!this.culled)
+        {
+            this.renderBodyParts(entity, yaw, partialTicks);
+        }
+    }
+
+    /**
+     * Body parts stick out of the model, so every body part extends 
+     * the box by a sphere around its bone that fits part's morph
+     */
+    @Override
+    protected void expandBounds(EntityLivingBase entity, float[] box)
+    {
+        for (BOBJArmature armature : this.animation.data.armatures.values())
+        {
+            for (BodyPart part : this.morph.parts.parts)
+            {
+                BOBJBone bone = armature.bones.get(part.limb);
+                AbstractMorph morph = part.morph.get();
+
+                if (bone == null || morph == null)
+                {
+                    continue;
+                }
+
+                float scale = Math.max(Math.abs(part.scale.x), Math.max(Math.abs(part.scale.y), Math.abs(part.scale.z)));
+                float radius = Math.max(morph.getWidth(entity), morph.getHeight(entity)) * scale + part.translate.length();
+
+                this.position.set(0, 0, 0, 1);
+                bone.mat.transform(this.position);
+
+                box[0] = Math.min(box[0], this.position.x - radius);
+                box[1] = Math.min(box[1], this.position.y - radius);
+                box[2] = Math.min(box[2], this.position.z - radius);
+                box[3] = Math.max(box[3], this.position.x + radius);
+                box[4] = Math.max(box[4], this.position.y + radius);
+                box[5] = Math.max(box[5], this.position.z + radius);
+            }
+        }
     }
 
     protected void renderBodyParts(EntityLivingBase entity, float yaw, float partialTicks)
     {
+        if (this.morph.parts.parts.isEmpty())
+        {
+            return;
+        }
+
+        this.partsPose.capture(this, entity, yaw, partialTicks);
+
         /* Render body part */
         for (BOBJArmature armature : this.animation.data.armatures.values())
         {
+            int revision = armature.revision;
+
             for (BodyPart part : this.morph.parts.parts)
             {
                 BOBJBone bone = armature.bones.get(part.limb);
@@ -52,16 +116,30 @@ public class AnimatorMorphController extends AnimatorController
                     GL11.glPopMatrix();
                 }
 
-                /* I hope this won't affect performance too much, but it's
-                 * necessary because it restores animation data if the body
-                 * part is an animated morph that uses the same animation */
-                this.setupBoneMatrices(entity, armature, yaw, partialTicks);
+                /* Body part might be an animated morph that uses the same
+                 * animation, so if it posed the armature, this model's
+                 * pose gets restored from the saved one */
+                if (armature.revision != revision)
+                {
+                    this.partsPose.apply();
+                    revision = armature.revision;
+                }
             }
         }
     }
 
+    /**
+     * Morph's pose animation is advanced while it's calculated, so it 
+     * must be done on the main thread
+     */
     @Override
-    protected void setupBoneTransformations(EntityLivingBase entity, BOBJArmature armature, float yaw, float partialTicks)
+    public boolean canEvaluatePose()
+    {
+        return super.canEvaluatePose() && !this.morph.animation.isInProgress();
+    }
+
+    @Override
+    public void setupPose(EntityLivingBase entity, BOBJArmature armature, PoseBuffer buffer, float yaw, float partialTicks)
     {
         AnimatedPose pose = this.morph.pose;
         boolean inProgress = this.morph.animation.isInProgress();
@@ -71,33 +149,36 @@ public class AnimatorMorphController extends AnimatorController
             pose = this.morph.animation.calculatePose(pose, armature, partialTicks);
         }
 
-        super.setupBoneTransformations(entity, armature, yaw, partialTicks);
+        super.setupPose(entity, armature, buffer, yaw, partialTicks);
 
         if (pose == null)
         {
             return;
         }
 
+        float[] values = buffer.values;
+
         for (Map.Entry<String, AnimatorPoseTransform> entry : pose.bones.entrySet())
         {
             BOBJBone bone = armature.bones.get(entry.getKey());
             AnimatorPoseTransform transform = entry.getValue();
             float factor = MathHelper.clamp(transform.fixed, 0, 1);
+            int offset = bone.index * PoseBuffer.STRIDE;
 
             if (!this.morph.animated)
             {
                 factor = AnimatorPoseTransform.FIXED;
             }
 
-            bone.x = Interpolations.lerp(transform.x, bone.x + transform.x, factor);
-            bone.y = Interpolations.lerp(transform.y, bone.y + transform.y, factor);
-            bone.z = Interpolations.lerp(transform.z, bone.z + transform.z, factor);
-            bone.scaleX = Interpolations.lerp(transform.scaleX, bone.scaleX * transform.scaleX, factor);
-            bone.scaleY = Interpolations.lerp(transform.scaleY, bone.scaleY * transform.scaleY, factor);
-            bone.scaleZ = Interpolations.lerp(transform.scaleZ, bone.scaleZ * transform.scaleZ, factor);
-            bone.rotateX = Interpolations.lerp(transform.rotateX, bone.rotateX + transform.rotateX, factor);
-            bone.rotateY = Interpolations.lerp(transform.rotateY, bone.rotateY + transform.rotateY, factor);
-            bone.rotateZ = Interpolations.lerp(transform.rotateZ, bone.rotateZ + transform.rotateZ, factor);
+            values[offset] = Interpolations.lerp(transform.x, values[offset] + transform.x, factor);
+            values[offset + 1] = Interpolations.lerp(transform.y, values[offset + 1] + transform.y, factor);
+            values[offset + 2] = Interpolations.lerp(transform.z, values[offset + 2] + transform.z, factor);
+            values[offset + 3] = Interpolations.lerp(transform.rotateX, values[offset + 3] + transform.rotateX, factor);
+            values[offset + 4] = Interpolations.lerp(transform.rotateY, values[offset + 4] + transform.rotateY, factor);
+            values[offset + 5] = Interpolations.lerp(transform.rotateZ, values[offset + 5] + transform.rotateZ, factor);
+            values[offset + 6] = Interpolations.lerp(transform.scaleX, values[offset + 6] * transform.scaleX, factor);
+            values[offset + 7] = Interpolations.lerp(transform.scaleY, values[offset + 7] * transform.scaleY, factor);
+            values[offset + 8] = Interpolations.lerp(transform.scaleZ, values[offset + 8] * transform.scaleZ, factor);
         }
     }
 }
\ No newline at end of file
@@ -32,6 +32,6 @@ public class MetamorphHandler
     @SideOnly(Side.CLIENT)
     public void onMorphsReload(ReloadMorphs event)
     {
-        ClientProxy.modelHandler.refreshAnimations();
+        ClientProxy.modelHandler.requestRefresh();
     }
 }
\ No newline at end of file
@@ -170,7 +170,7 @@ public class GuiAnimatedModelRenderer extends GuiModelRenderer
     {
         if (this.controller != null && this.controller.animation != null)
         {
-            return this.controller.animation.meshes.get(0).armature;
+            return this.controller.animation.getArmature();
         }
 
         return null;
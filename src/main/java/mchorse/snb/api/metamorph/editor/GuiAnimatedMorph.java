@@ -9,6 +9,7 @@ import mchorse.metamorph.bodypart.GuiBodyPartEditor;
 import mchorse.metamorph.client.gui.editor.GuiAbstractMorph;
 import mchorse.metamorph.client.gui.editor.GuiMorphPanel;
 import mchorse.snb.api.animation.AnimationManager;
+import mchorse.snb.api.animation.ThumbnailAtlas;
 import mchorse.snb.api.animation.model.AnimatorConfig;
 import mchorse.snb.api.metamorph.AnimatedMorph;
 import net.minecraft.client.Minecraft;
@@ -95,6 +96,7 @@ public class GuiAnimatedMorph extends GuiAbstractMorph<AnimatedMorph>
         this.userConfig = new AnimatorConfig();
         this.bodyPart.setLimbs(morph.animator.animation.collectBones());
         this.model.controller = morph.animator;
+        ThumbnailAtlas.INSTANCE.selected = morph.animator;
 
         if (morph.userConfigData != null && !morph.userConfigData.hasNoTags())
         {
@@ -109,6 +111,8 @@ public class GuiAnimatedMorph extends GuiAbstractMorph<AnimatedMorph>
     {
         this.updateMorph();
         super.finishEdit();
+
+        ThumbnailAtlas.INSTANCE.selected = null;
     }
 
     public void updateMorph()
@@ -105,7 +105,7 @@ public class GuiAnimatedMorphPanel extends GuiMorphPanel<AnimatedMorph, GuiAnima
         {
             AnimatedPose pose = new AnimatedPose();
 
-            for (String bone : this.morph.animator.animation.meshes.get(0).armature.bones.keySet())
+            for (String bone : this.morph.animator.animation.getArmature().bones.keySet())
             {
                 pose.bones.put(bone, new AnimatorPoseTransform(bone));
             }
@@ -181,7 +181,7 @@ public class GuiAnimatedMorphPanel extends GuiMorphPanel<AnimatedMorph, GuiAnima
         this.transforms.setVisible(pose != null);
 
         this.bones.clear();
-        this.bones.add(this.morph.animator.animation.meshes.get(0).armature.bones.keySet());
+        this.bones.add(this.morph.animator.animation.getArmature().bones.keySet());
         this.bones.sort();
 
         if (pose != null)
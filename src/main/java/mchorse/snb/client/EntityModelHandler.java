@@ -2,22 +2,35 @@ package mchorse.snb.client;
 
 import mchorse.mclib.utils.ReflectionUtils;
 import mchorse.snb.ClientProxy;
+import mchorse.snb.SnB;
 import mchorse.snb.api.animation.Animation;
 import mchorse.snb.api.animation.AnimationManager;
 import mchorse.snb.api.animation.AnimationManager.AnimationEntry;
-import mchorse.snb.api.animation.AnimationMesh;
 import mchorse.snb.api.animation.AnimationPack;
+import mchorse.snb.api.animation.CrowdRenderer;
+import mchorse.snb.api.animation.RenderProfiler;
+import mchorse.snb.api.animation.ThumbnailAtlas;
 import mchorse.snb.api.animation.model.AnimatorConfig;
+import mchorse.snb.api.animation.model.AnimatorController;
 import mchorse.snb.api.animation.model.AnimatorConfig.AnimatorConfigEntry;
+import mchorse.snb.api.animation.model.PoseEvaluator;
 import mchorse.snb.api.bobj.BOBJLoader;
 import mchorse.snb.api.bobj.BOBJLoader.BOBJData;
+import mchorse.snb.api.bobj.BOBJLoader.BOBJMesh;
 import mchorse.snb.events.RefreshAnimationsEvent;
+import mchorse.snb.utils.FlightEvents;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.texture.ITextureObject;
 import net.minecraft.client.renderer.texture.TextureUtil;
 import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.client.event.EntityViewRenderEvent;
+import net.minecraftforge.client.event.RenderGameOverlayEvent;
+import net.minecraftforge.client.event.RenderWorldLastEvent;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent.ClientTickEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent.Phase;
+import net.minecraftforge.fml.common.gameevent.TickEvent.RenderTickEvent;
 import net.minecraftforge.fml.common.network.FMLNetworkEvent.ClientConnectedToServerEvent;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
@@ -27,8 +40,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -39,6 +54,19 @@ import java.util.Set;
 @SideOnly(Side.CLIENT)
 public class EntityModelHandler
 {
+    /**
+     * Minimal interval (in milliseconds) between scans of the models 
+     * folder requested by {@link #requestRefresh()}
+     */
+    public static final long SCAN_INTERVAL = 5000;
+
+    private long lastScan;
+
+    /**
+     * Flight event of current render frame (null if it's not recorded)
+     */
+    private Object frameEvent;
+
     @SubscribeEvent
     public void onClientJoin(ClientConnectedToServerEvent event)
     {
@@ -56,54 +84,151 @@ public class EntityModelHandler
         });
     }
 
+    /**
+     * Count render frames for tracking which animations were used 
+     * recently, and evaluate poses of models rendered in the last 
+     * frame on worker threads (they're done by the end of the frame)
+     */
+    @SubscribeEvent
+    public void onRenderTick(RenderTickEvent event)
+    {
+        if (event.phase == Phase.START)
+        {
+            AnimationManager.INSTANCE.frame++;
+
+            this.frameEvent = FlightEvents.FRAME.begin();
+            FlightEvents.counting = this.frameEvent != null;
+
+            PoseEvaluator.INSTANCE.evaluate(event.renderTickTime);
+        }
+        else
+        {
+            AnimatorController.renderingWorld = false;
+            PoseEvaluator.INSTANCE.finish();
+            AnimatorController.restoreFrustumChecks();
+
+            if (this.frameEvent != null)
+            {
+                FlightEvents.FRAME.commit(this.frameEvent, String.join(", ", FlightEvents.models), FlightEvents.skinned.getAndSet(0), FlightEvents.uploaded.getAndSet(0));
+                FlightEvents.models.clear();
+                this.frameEvent = null;
+            }
+
+            RenderProfiler.INSTANCE.endFrame(SnB.profilerOverlay.get());
+        }
+    }
+
+    /**
+     * Show profiler's statistics along with the debug text
+     */
+    @SubscribeEvent
+    public void onRenderOverlayText(RenderGameOverlayEvent.Text event)
+    {
+        if (!SnB.profilerOverlay.get() || RenderProfiler.INSTANCE.getFrames() == 0)
+        {
+            return;
+        }
+
+        RenderProfiler profiler = RenderProfiler.INSTANCE;
+
+        event.getLeft().add(String.format("S&B: %.2f ms/frame (skin %.2f, tangents %.2f, upload %.2f, draw %.2f)", profiler.getFrameTime(),
+            profiler.getSectionTime(RenderProfiler.SKINNING), profiler.getSectionTime(RenderProfiler.TANGENTS),
+            profiler.getSectionTime(RenderProfiler.UPLOAD), profiler.getSectionTime(RenderProfiler.DRAW)));
+    }
+
+    /**
+     * Draw models which were recorded for instanced rendering during 
+     * entity rendering. Fog is set up right after entities (before 
+     * particles, weather and translucent blocks), and it's never set 
+     * up during entity rendering
+     */
+    @SubscribeEvent
+    public void onRenderFog(EntityViewRenderEvent.RenderFogEvent event)
+    {
+        if (AnimatorController.renderingWorld)
+        {
+            CrowdRenderer.INSTANCE.flush();
+        }
+    }
+
+    /**
+     * Draw whatever crowds are left, world rendering is done
+     */
+    @SubscribeEvent
+    public void onRenderWorldLast(RenderWorldLastEvent event)
+    {
+        CrowdRenderer.INSTANCE.endFrame();
+        AnimatorController.renderingWorld = false;
+    }
+
+    /**
+     * Camera gets set up only when the world is rendered, so models 
+     * rendered from now on until {@link RenderWorldLastEvent} are in 
+     * the world
+     */
+    @SubscribeEvent
+    public void onCameraSetup(EntityViewRenderEvent.CameraSetup event)
+    {
+        AnimatorController.renderingWorld = true;
+    }
+
+    /**
+     * Unload animations which weren't used for a while, if they take 
+     * too much memory
+     */
+    @SubscribeEvent
+    public void onClientTick(ClientTickEvent event)
+    {
+        if (event.phase == Phase.END)
+        {
+            AnimationManager.INSTANCE.evict();
+        }
+    }
+
+    /**
+     * Refresh animations, unless changes in the models folder are 
+     * already reloaded by the {@link ModelWatcher} or the folder was 
+     * scanned recently. Use it in places which get called often, 
+     * like morph menus
+     */
+    public void requestRefresh()
+    {
+        if (ClientProxy.modelWatcher != null && ClientProxy.modelWatcher.watching)
+        {
+            return;
+        }
+
+        if (System.currentTimeMillis() - this.lastScan >= SCAN_INTERVAL)
+        {
+            this.refreshAnimations();
+        }
+    }
+
     /**
      * Refresh animation
      */
     public void refreshAnimations()
     {
+        Object event = FlightEvents.RELOAD.begin();
         Set<String> names = new HashSet<String>();
+        List<String> reloaded = new ArrayList<String>();
+
+        this.lastScan = System.currentTimeMillis();
 
         /* (Re)load animations */
         for (File file : ClientProxy.pack.config.listFiles())
         {
-            if (file.isDirectory())
+            String name = file.getName();
+            AnimationEntry entry = AnimationManager.INSTANCE.animations.get(name);
+            long modified = entry == null ? -1 : entry.lastModified;
+
+            if (file.isDirectory() && this.refreshAnimation(file, false))
             {
-                File model = new File(file, "model.bobj");
+                names.add(name);
 
-                if (model.exists())
+                if (AnimationManager.INSTANCE.animations.get(name).lastModified != modified)
                 {
-                    String name = file.getName();
-
-                    try
-                    {
-                        AnimationEntry entry = AnimationManager.INSTANCE.animations.get(name);
-                        BOBJData data = null;
-
-                        long modified = model.lastModified();
-
-                        if (entry != null && entry.lastModified < modified)
-                        {
-                            data = BOBJLoader.readData(new FileInputStream(model));
-                            entry.reloadAnimation(data, modified);
-                        }
-                        else if (entry == null)
-                        {
-                            data = BOBJLoader.readData(new FileInputStream(model));
-                            Animation animation = new Animation(name, data);
-
-                            AnimationManager.INSTANCE.animations.put(name, entry = new AnimationEntry(animation, file, modified));
-
-                            animation.init();
-                            this.createTextureFolders(animation);
-                        }
-
-                        names.add(name);
-                    }
-                    catch (Exception e)
-                    {
-                        System.err.println("An error occurred during refreshing animation procedure for animation named '" + name + "'!");
-                        e.printStackTrace();
-                    }
+                    reloaded.add(name);
                 }
             }
         }
@@ -119,10 +244,120 @@ public class EntityModelHandler
             {
                 it.remove();
                 entry.getValue().animation.delete();
+                AnimationManager.INSTANCE.generation++;
             }
         }
 
         MinecraftForge.EVENT_BUS.post(new RefreshAnimationsEvent(AnimationManager.INSTANCE));
+        FlightEvents.RELOAD.commit(event, String.join(", ", reloaded), names.size());
+    }
+
+    /**
+     * Refresh a single animation in given folder. If forced, then 
+     * the animation gets reloaded even if its modification time 
+     * didn't change.
+     * 
+     * @return whether the animation is loaded
+     */
+    public boolean refreshAnimation(File file, boolean force)
+    {
+        File model = new File(file, "model.bobj");
+
+        if (!model.exists())
+        {
+            return false;
+        }
+
+        String name = file.getName();
+
+        try
+        {
+            AnimationEntry entry = AnimationManager.INSTANCE.animations.get(name);
+            BOBJData data = null;
+
+            long modified = model.lastModified();
+
+            if (entry != null && (force || entry.lastModified < modified))
+            {
+                data = BOBJLoader.readData(new FileInputStream(model), name);
+                entry.reloadAnimation(data, modified);
+            }
+            else if (entry == null)
+            {
+                data = BOBJLoader.readData(new FileInputStream(model), name);
+                Animation animation = new Animation(name, data);
+
+                AnimationManager.INSTANCE.animations.put(name, entry = new AnimationEntry(animation, file, modified));
+                AnimationManager.INSTANCE.generation++;
+                animation.updateBytes();
+
+                /* Meshes get compiled and uploaded upon the first 
+                 * render */
+                this.createTextureFolders(animation);
+            }
+
+            return true;
+        }
+        catch (Exception e)
+        {
+            System.err.println("An error occurred during refreshing animation procedure for animation named '" + name + "'!");
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+    /**
+     * Refresh model's animation, config or textures, depending on 
+     * given flags (see {@link ModelWatcher}). It's used for reloading 
+     * only the things that were changed on the disk.
+     */
+    public void refreshModel(String name, int flags)
+    {
+        if ((flags & ModelWatcher.MODEL) != 0)
+        {
+            AnimationEntry old = AnimationManager.INSTANCE.animations.get(name);
+            long changed = old == null ? -1 : old.lastChanged;
+
+            if (this.refreshAnimation(new File(ClientProxy.pack.config, name), true))
+            {
+                AnimationEntry entry = AnimationManager.INSTANCE.animations.get(name);
+
+                /* Animators get recreated only if actions or armatures 
+                 * were changed, so playing actions don't restart */
+                if (entry.lastChanged != changed || (flags & ModelWatcher.CONFIG) != 0)
+                {
+                    this.refreshConfig(name, entry, true);
+                }
+            }
+            else
+            {
+                AnimationEntry entry = AnimationManager.INSTANCE.animations.remove(name);
+
+                if (entry != null)
+                {
+                    entry.animation.delete();
+                    AnimationManager.INSTANCE.generation++;
+                }
+            }
+
+            /* Configs get refreshed by the event */
+            MinecraftForge.EVENT_BUS.post(new RefreshAnimationsEvent(AnimationManager.INSTANCE));
+        }
+        else if ((flags & ModelWatcher.CONFIG) != 0)
+        {
+            AnimationEntry entry = AnimationManager.INSTANCE.animations.get(name);
+
+            if (entry != null)
+            {
+                this.refreshConfig(name, entry, true);
+            }
+        }
+
+        if ((flags & ModelWatcher.TEXTURES) != 0)
+        {
+            this.refreshAnimationSkins(name + "/");
+        }
     }
 
     /**
@@ -131,7 +366,7 @@ public class EntityModelHandler
      */
     private void createTextureFolders(Animation animation)
     {
-        for (AnimationMesh mesh : animation.meshes)
+        for (BOBJMesh mesh : animation.data.meshes)
         {
             new File(ClientProxy.pack.config, animation.name + "/textures/" + mesh.name).mkdirs();
         }
@@ -141,6 +376,15 @@ public class EntityModelHandler
      * Refresh textures related to Skin&Bones animations
      */
     public void refreshAnimationSkins()
+    {
+        this.refreshAnimationSkins("");
+    }
+
+    /**
+     * Refresh textures related to Skin&Bones animations which paths 
+     * start with given prefix
+     */
+    public void refreshAnimationSkins(String prefix)
     {
         Map<ResourceLocation, ITextureObject> textureMap = ReflectionUtils.getTextures(Minecraft.getMinecraft().renderEngine);
         Iterator<Map.Entry<ResourceLocation, ITextureObject>> it = textureMap.entrySet().iterator();
@@ -150,12 +394,15 @@ public class EntityModelHandler
             Map.Entry<ResourceLocation, ITextureObject> entry = it.next();
             ResourceLocation key = entry.getKey();
 
-            if (AnimationPack.DOMAINS.contains(key.getResourceDomain()))
+            if (AnimationPack.DOMAINS.contains(key.getResourceDomain()) && key.getResourcePath().startsWith(prefix))
             {
                 TextureUtil.deleteTexture(entry.getValue().getGlTextureId());
                 it.remove();
             }
         }
+
+        /* Thumbnails would show old textures otherwise */
+        ThumbnailAtlas.INSTANCE.clear(prefix);
     }
 
     /**
@@ -167,63 +414,75 @@ public class EntityModelHandler
     {
         for (Map.Entry<String, AnimationEntry> entry : event.manager.animations.entrySet())
         {
-            String name = entry.getKey();
-            AnimationEntry anim = entry.getValue();
+            this.refreshConfig(entry.getKey(), entry.getValue(), false);
+        }
 
-            File file = new File(anim.directory, "model.json");
-            AnimatorConfigEntry config = AnimationManager.INSTANCE.configs.get(name);
+        /* Remove irrelevant models */
+        Iterator<String> it = AnimationManager.INSTANCE.configs.keySet().iterator();
+        Set<String> keys = event.manager.animations.keySet();
 
-            /* This makes sure that animated morphs are get updated even 
-             * if the config hasn't changed but the animation has 
-             * changed */
-            long modified = Math.max(file.lastModified(), anim.lastModified);
-            boolean needsUpdate = config != null && modified <= config.lastModified;
+        while (it.hasNext())
+        {
+            String key = it.next();
 
-            if (!file.exists() || needsUpdate)
+            if (!keys.contains(key))
             {
-                continue;
+                it.remove();
             }
+        }
+    }
 
-            try
-            {
-                String json = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
-
-                if (json.isEmpty())
-                {
-                    continue;
-                }
+    /**
+     * Refresh morph config of given animation. If forced, then the 
+     * config gets reloaded even if modification time didn't change.
+     */
+    public void refreshConfig(String name, AnimationEntry anim, boolean force)
+    {
+        File file = new File(anim.directory, "model.json");
+        AnimatorConfigEntry config = AnimationManager.INSTANCE.configs.get(name);
 
-                AnimatorConfig morph = AnimationManager.INSTANCE.gson.fromJson(json, AnimatorConfig.class);
+        /* This makes sure that animated morphs are get updated even 
+         * if the config hasn't changed but the animation's actions 
+         * or armatures have changed */
+        long modified = Math.max(file.lastModified(), anim.lastChanged);
+        boolean needsUpdate = config != null && modified <= config.lastModified;
 
-                if (config == null)
-                {
-                    AnimationManager.INSTANCE.configs.put(name, new AnimatorConfigEntry(morph, modified));
-                }
-                else
-                {
-                    config.config.copy(morph);
-                    config.lastModified = modified;
-                }
-            }
-            catch (Exception e)
-            {
-                System.err.println("An error occurred during reloading of animated morph configs for animation '" + name + "'!");
-                e.printStackTrace();
-            }
+        if (!file.exists() || (needsUpdate && !force))
+        {
+            return;
         }
 
-        /* Remove irrelevant models */
-        Iterator<String> it = AnimationManager.INSTANCE.configs.keySet().iterator();
-        Set<String> keys = event.manager.animations.keySet();
+        /* Animator controllers reload when modification time changes */
+        if (config != null && modified <= config.lastModified)
+        {
+            modified = config.lastModified + 1;
+        }
 
-        while (it.hasNext())
+        try
         {
-            String key = it.next();
+            String json = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
 
-            if (!keys.contains(key))
+            if (json.isEmpty())
             {
-                it.remove();
+                return;
             }
+
+            AnimatorConfig morph = AnimationManager.INSTANCE.gson.fromJson(json, AnimatorConfig.class);
+
+            if (config == null)
+            {
+                AnimationManager.INSTANCE.configs.put(name, new AnimatorConfigEntry(morph, modified));
+            }
+            else
+            {
+                config.config.copy(morph);
+                config.lastModified = modified;
+            }
+        }
+        catch (Exception e)
+        {
+            System.err.println("An error occurred during reloading of animated morph configs for animation '" + name + "'!");
+            e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+}
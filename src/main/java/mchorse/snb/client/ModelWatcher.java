@@ -0,0 +1,248 @@
+package mchorse.snb.client;
+
+import mchorse.snb.ClientProxy;
+import net.minecraft.client.Minecraft;
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Model watcher
+ *
+ * This class is responsible for watching the models folder on a
+ * background thread, and reloading models, configs and textures of
+ * models that were changed. Changes are debounced, so saving a model
+ * (which might fire a bunch of events) reloads it only once.
+ */
+@SideOnly(Side.CLIENT)
+public class ModelWatcher implements Runnable
+{
+    /**
+     * How long (in milliseconds) the folder should be quiet before
+     * collected changes are reloaded
+     */
+    public static final long DEBOUNCE = 250;
+
+    /* Change flags */
+    public static final int MODEL = 1;
+    public static final int CONFIG = 2;
+    public static final int TEXTURES = 4;
+
+    public File folder;
+
+    /**
+     * Whether the folder is being watched, i.e. whether changes get 
+     * reloaded without scanning
+     */
+    public volatile boolean watching;
+
+    private Path root;
+    private WatchService service;
+    private Map<WatchKey, Path> keys = new HashMap<WatchKey, Path>();
+    private Map<String, Integer> changes = new HashMap<String, Integer>();
+    private boolean overflow;
+
+    public ModelWatcher(File folder)
+    {
+        this.folder = folder;
+        this.root = folder.toPath();
+    }
+
+    /**
+     * Start watching the folder on a daemon thread
+     */
+    public void start()
+    {
+        try
+        {
+            this.service = FileSystems.getDefault().newWatchService();
+            this.registerAll(this.root);
+
+            Thread thread = new Thread(this, "S&B model watcher");
+
+            thread.setDaemon(true);
+            thread.start();
+
+            this.watching = true;
+        }
+        catch (IOException e)
+        {
+            System.err.println("Skin&Bones: Failed to start watching models folder, use /snb reload to reload models!");
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        while (true)
+        {
+            WatchKey key;
+
+            try
+            {
+                /* Block until something happens, and once changes
+                 * started coming, wait until they stop */
+                key = this.changes.isEmpty() && !this.overflow ? this.service.take() : this.service.poll(DEBOUNCE, TimeUnit.MILLISECONDS);
+            }
+            catch (Exception e)
+            {
+                this.watching = false;
+
+                return;
+            }
+
+            if (key == null)
+            {
+                this.flush();
+
+                continue;
+            }
+
+            Path directory = this.keys.get(key);
+
+            for (WatchEvent<?> event : key.pollEvents())
+            {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null)
+                {
+                    this.overflow = true;
+
+                    continue;
+                }
+
+                this.handle(directory.resolve((Path) event.context()), event.kind());
+            }
+
+            if (!key.reset())
+            {
+                this.keys.remove(key);
+            }
+        }
+    }
+
+    private void handle(Path path, WatchEvent.Kind<?> kind)
+    {
+        Path relative = this.root.relativize(path);
+        int count = relative.getNameCount();
+
+        if (count == 0)
+        {
+            return;
+        }
+
+        if (kind == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path))
+        {
+            /* Files could've been created before the folder got
+             * registered, so everything in there is considered changed */
+            this.registerAll(path);
+            this.mark(relative.getName(0).toString(), MODEL | CONFIG | TEXTURES);
+
+            return;
+        }
+
+        String name = relative.getName(0).toString();
+        String file = relative.getFileName().toString();
+
+        if (count == 1)
+        {
+            this.mark(name, MODEL | CONFIG | TEXTURES);
+        }
+        else if (count == 2 && file.equals("model.bobj"))
+        {
+            this.mark(name, MODEL);
+        }
+        else if (count == 2 && file.equals("model.json"))
+        {
+            this.mark(name, CONFIG);
+        }
+        else if (count > 2 && relative.getName(1).toString().equals("textures"))
+        {
+            this.mark(name, TEXTURES);
+        }
+    }
+
+    private void mark(String name, int flags)
+    {
+        Integer old = this.changes.get(name);
+
+        this.changes.put(name, old == null ? flags : old | flags);
+    }
+
+    /**
+     * Reload collected changes on the main thread
+     */
+    private void flush()
+    {
+        final Map<String, Integer> changes = new HashMap<String, Integer>(this.changes);
+        final boolean overflow = this.overflow;
+
+        this.changes.clear();
+        this.overflow = false;
+
+        Minecraft.getMinecraft().addScheduledTask(() ->
+        {
+            EntityModelHandler handler = ClientProxy.modelHandler;
+
+            try
+            {
+                if (overflow)
+                {
+                    handler.refreshAnimations();
+                    handler.refreshAnimationSkins();
+                }
+                else
+                {
+                    for (Map.Entry<String, Integer> entry : changes.entrySet())
+                    {
+                        handler.refreshModel(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            catch (Exception e)
+            {
+                System.err.println("Skin&Bones: Failed to reload changed models!");
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Register given folder and all of its sub-folders
+     */
+    private void registerAll(Path path)
+    {
+        try (Stream<Path> stream = Files.walk(path))
+        {
+            stream.filter(Files::isDirectory).forEach((directory) ->
+            {
+                try
+                {
+                    WatchKey key = directory.register(this.service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+                    this.keys.put(key, directory);
+                }
+                catch (IOException e)
+                {
+                    e.printStackTrace();
+                }
+            });
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+}
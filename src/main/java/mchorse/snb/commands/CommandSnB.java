@@ -1,6 +1,12 @@
 package mchorse.snb.commands;
 
 import mchorse.snb.ClientProxy;
+import mchorse.snb.api.animation.Animation;
+import mchorse.snb.api.animation.AnimationBuffers;
+import mchorse.snb.api.animation.AnimationManager;
+import mchorse.snb.api.animation.CrowdRenderer;
+import mchorse.snb.api.animation.RenderProfiler;
+import mchorse.snb.api.animation.SkinSlab;
 import mchorse.snb.client.EntityModelHandler;
 import net.minecraft.command.CommandBase;
 import net.minecraft.command.CommandException;
@@ -12,6 +18,8 @@ import net.minecraft.util.text.TextComponentString;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @SideOnly(Side.CLIENT)
@@ -43,6 +51,10 @@ public class CommandSnB extends CommandBase
         if (action.equals("clear"))
         {
             models.refreshAnimationSkins();
+
+            /* Also gives instanced rendering another try, in case it 
+             * was turned off because of a shader error */
+            CrowdRenderer.INSTANCE.delete();
         }
         else if (action.equals("reload"))
         {
@@ -56,18 +68,122 @@ public class CommandSnB extends CommandBase
                 e.printStackTrace();
             }
         }
+        else if (action.equals("memory"))
+        {
+            this.printMemory(sender);
+        }
+        else if (action.equals("stats"))
+        {
+            this.printStats(sender, args.length > 1 && args[1].equals("stop"));
+        }
         else
         {
             throw new CommandException("Given command wasn't recognized!");
         }
     }
 
+    /**
+     * Print how much memory loaded models take on the heap and on 
+     * the GPU 
+     */
+    private void printMemory(ICommandSender sender)
+    {
+        List<String> names = new ArrayList<String>(AnimationManager.INSTANCE.animations.keySet());
+        long heap = 0;
+        long gpu = 0;
+
+        Collections.sort(names);
+
+        for (String name : names)
+        {
+            Animation animation = AnimationManager.INSTANCE.animations.get(name).animation;
+            long animationHeap = animation.getHeapBytes();
+            long animationGpu = animation.getGpuBytes();
+
+            sender.sendMessage(new TextComponentString(String.format("%s: %s heap, %s GPU", name, formatBytes(animationHeap), formatBytes(animationGpu))));
+
+            heap += animationHeap;
+            gpu += animationGpu;
+        }
+
+        sender.sendMessage(new TextComponentString(String.format("Total: %s heap, %s GPU, %s shared buffers, %s skin slabs", formatBytes(heap), formatBytes(gpu), formatBytes(AnimationBuffers.getBytes()), formatBytes(SkinSlab.getBytes()))));
+    }
+
+    /**
+     * Print where S&B's frame time goes. The first call starts 
+     * collecting statistics, since profiler doesn't measure anything 
+     * unless it's asked to
+     */
+    private void printStats(ICommandSender sender, boolean stop)
+    {
+        RenderProfiler profiler = RenderProfiler.INSTANCE;
+
+        if (stop)
+        {
+            profiler.recording = false;
+            sender.sendMessage(new TextComponentString("Stopped collecting S&B render statistics."));
+
+            return;
+        }
+
+        if (!profiler.recording && !RenderProfiler.enabled)
+        {
+            profiler.recording = true;
+            sender.sendMessage(new TextComponentString("Started collecting S&B render statistics, run /snb stats again in a few seconds."));
+
+            return;
+        }
+
+        profiler.recording = true;
+
+        if (profiler.getFrames() == 0)
+        {
+            sender.sendMessage(new TextComponentString("No frames were collected yet, try again in a few seconds."));
+
+            return;
+        }
+
+        sender.sendMessage(new TextComponentString(String.format("S&B render statistics over last %d frames (%.3f ms/frame):", profiler.getFrames(), profiler.getFrameTime())));
+
+        for (String line : profiler.getSections())
+        {
+            sender.sendMessage(new TextComponentString("  " + line));
+        }
+
+        sender.sendMessage(new TextComponentString("Models:"));
+
+        for (String line : profiler.getModels())
+        {
+            sender.sendMessage(new TextComponentString("  " + line));
+        }
+    }
+
+    private static String formatBytes(long bytes)
+    {
+        if (bytes < 1024)
+        {
+            return bytes + " B";
+        }
+
+        if (bytes < 1024 * 1024)
+        {
+            return String.format("%.1f KB", bytes / 1024D);
+        }
+
+        return String.format("%.2f MB", bytes / 1024D / 1024D);
+    }
+
     @Override
     public List<String> getTabCompletions(MinecraftServer server, ICommandSender sender, String[] args, BlockPos pos)
     {
         if (args.length == 1)
         {
-            return getListOfStringsMatchingLastWord(args, "clear", "reload");
+            return getListOfStringsMatchingLastWord(args, "clear", "reload", "memory", "stats");
+        }
+
+        if (args.length == 2 && args[0].equals("stats"))
+        {
+            return getListOfStringsMatchingLastWord(args, "stop");
         }
 
         return super.getTabCompletions(server, sender, args, pos);
@@ -0,0 +1,253 @@
+package mchorse.snb.utils;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flight events
+ *
+ * Java Flight Recorder events of S&B, so its loading hitches and per
+ * frame work can be seen in one recording along with GC and the rest
+ * of the game. Minecraft is built against Java 8, which doesn't
+ * necessarily have JFR's API, so event types are defined at runtime
+ * through reflection with jdk.jfr.EventFactory. On JVMs without JFR
+ * (or if anything fails) events are simply not recorded.
+ *
+ * Events are recorded only while some recording enables them, so
+ * otherwise {@link Type#begin()} only checks whether the type is
+ * enabled and returns null.
+ */
+public class FlightEvents
+{
+    public static final Type PARSE = new Type("Parse", "BOBJ Parse", "Reading a .bobj model", "lines:Lines", "vertices:Vertices", "meshes:Meshes", "actions:Actions");
+    public static final Type COMPILE = new Type("Compile", "BOBJ Compile", "Compiling meshes for rendering", "meshes:Meshes", "vertices:Vertices", "indices:Indices");
+    public static final Type UPLOAD = new Type("Upload", "Mesh Upload", "Uploading mesh's buffers to the GPU", "vertices:Vertices", "bytes:Bytes");
+    public static final Type RELOAD = new Type("Reload", "Models Reload", "Scanning and reloading models folder", "models:Models");
+    public static final Type FRAME = new Type("Frame", "Frame Skinning", "Skinning and uploading work of one render frame", "skinned:Skinned Vertices", "uploaded:Uploaded Vertices");
+
+    /**
+     * Whether vertices should be counted for current frame's event
+     */
+    public static volatile boolean counting;
+
+    public static final AtomicLong skinned = new AtomicLong();
+    public static final AtomicLong uploaded = new AtomicLong();
+
+    /**
+     * Names of models rendered in current frame
+     */
+    public static final Set<String> models = new LinkedHashSet<String>();
+
+    public static void countSkinned(int vertices)
+    {
+        if (counting)
+        {
+            skinned.addAndGet(vertices);
+        }
+    }
+
+    public static void countUploaded(int vertices)
+    {
+        if (counting)
+        {
+            uploaded.addAndGet(vertices);
+        }
+    }
+
+    /**
+     * Remember that given model was rendered in current frame, it
+     * should be called only on the render thread
+     */
+    public static void countModel(String name)
+    {
+        if (counting)
+        {
+            models.add(name);
+        }
+    }
+
+    /**
+     * Event type, every event has a text field (model or mesh name)
+     * and given long fields (in "name:Label" format)
+     */
+    public static class Type
+    {
+        private Object factory;
+        private Object type;
+
+        public Type(String name, String label, String description, String... fields)
+        {
+            if (!JFR.AVAILABLE)
+            {
+                return;
+            }
+
+            try
+            {
+                List<Object> annotations = new ArrayList<Object>();
+                List<Object> values = new ArrayList<Object>();
+
+                annotations.add(JFR.annotation.newInstance(JFR.name, "mchorse.snb." + name));
+                annotations.add(JFR.annotation.newInstance(JFR.label, label));
+                annotations.add(JFR.annotation.newInstance(JFR.description, description));
+                annotations.add(JFR.annotation.newInstance(JFR.category, new String[] {"Skin&Bones"}));
+
+                /* Stack traces would only show reflection frames */
+                annotations.add(JFR.annotation.newInstance(JFR.stackTrace, false));
+
+                values.add(JFR.value.newInstance(String.class, "model", Collections.singletonList(JFR.annotation.newInstance(JFR.label, "Model"))));
+
+                for (String field : fields)
+                {
+                    String[] parts = field.split(":");
+
+                    values.add(JFR.value.newInstance(long.class, parts[0], Collections.singletonList(JFR.annotation.newInstance(JFR.label, parts[1]))));
+                }
+
+                this.factory = JFR.create.invoke(null, annotations, values);
+                this.type = JFR.getEventType.invoke(this.factory);
+            }
+            catch (Throwable e)
+            {
+                System.err.println("Skin&Bones: Failed to register " + name + " flight event!");
+                e.printStackTrace();
+
+                this.factory = null;
+            }
+        }
+
+        /**
+         * Whether any recording records this event type
+         */
+        public boolean isEnabled()
+        {
+            try
+            {
+                return this.factory != null && (Boolean) JFR.isEnabled.invoke(this.type);
+            }
+            catch (Throwable e)
+            {
+                return false;
+            }
+        }
+
+        /**
+         * Begin an event, it returns null if the event isn't recorded
+         */
+        public Object begin()
+        {
+            if (!this.isEnabled())
+            {
+                return null;
+            }
+
+            try
+            {
+                Object event = JFR.newEvent.invoke(this.factory);
+
+                JFR.begin.invoke(event);
+
+                return event;
+            }
+            catch (Throwable e)
+            {
+                return null;
+            }
+        }
+
+        /**
+         * Finish and commit an event returned by {@link #begin()},
+         * values should be in the same order as type's fields
+         */
+        public void commit(Object event, String model, long... values)
+        {
+            if (event == null)
+            {
+                return;
+            }
+
+            try
+            {
+                JFR.end.invoke(event);
+                JFR.set.invoke(event, 0, model);
+
+                for (int i = 0; i < values.length; i++)
+                {
+                    JFR.set.invoke(event, i + 1, values[i]);
+                }
+
+                JFR.commit.invoke(event);
+            }
+            catch (Throwable e)
+            {}
+        }
+    }
+
+    /**
+     * Reflected JFR API, it's in a separate class, so it's looked up
+     * before any of the types get registered
+     */
+    private static class JFR
+    {
+        public static final boolean AVAILABLE;
+
+        public static Class<?> name;
+        public static Class<?> label;
+        public static Class<?> description;
+        public static Class<?> category;
+        public static Class<?> stackTrace;
+
+        public static Constructor<?> annotation;
+        public static Constructor<?> value;
+        public static Method create;
+        public static Method getEventType;
+        public static Method newEvent;
+        public static Method isEnabled;
+        public static Method begin;
+        public static Method end;
+        public static Method set;
+        public static Method commit;
+
+        static
+        {
+            boolean available = false;
+
+            try
+            {
+                Class<?> event = Class.forName("jdk.jfr.Event");
+                Class<?> factory = Class.forName("jdk.jfr.EventFactory");
+
+                name = Class.forName("jdk.jfr.Name");
+                label = Class.forName("jdk.jfr.Label");
+                description = Class.forName("jdk.jfr.Description");
+                category = Class.forName("jdk.jfr.Category");
+                stackTrace = Class.forName("jdk.jfr.StackTrace");
+
+                annotation = Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+                value = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+                create = factory.getMethod("create", List.class, List.class);
+                getEventType = factory.getMethod("getEventType");
+                newEvent = factory.getMethod("newEvent");
+                isEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+                begin = event.getMethod("begin");
+                end = event.getMethod("end");
+                set = event.getMethod("set", int.class, Object.class);
+                commit = event.getMethod("commit");
+
+                available = true;
+            }
+            catch (Throwable e)
+            {
+                /* No JFR on this JVM, events won't be recorded */
+            }
+
+            AVAILABLE = available;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package mchorse.snb.utils;
+
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Frustum utilities
+ *
+ * Unlike vanilla's frustum, which is computed once per frame in world
+ * space, this one is extracted from current OpenGL matrices. That
+ * means that given boxes are tested in whatever space is currently
+ * set up (i.e. model space), and that it works in GUIs and shader
+ * passes just as well.
+ */
+@SideOnly(Side.CLIENT)
+public class FrustumUtils
+{
+    private static final FloatBuffer buffer = BufferUtils.createFloatBuffer(16);
+    private static final float[] modelview = new float[16];
+    private static final float[] projection = new float[16];
+    private static final float[] clip = new float[16];
+
+    /**
+     * Read current modelview and projection matrices. It should be
+     * called before testing boxes, whenever matrices change.
+     */
+    public static void update()
+    {
+        read(GL11.GL_MODELVIEW_MATRIX, modelview);
+        read(GL11.GL_PROJECTION_MATRIX, projection);
+
+        /* Column-major clip = projection * modelview */
+        for (int c = 0; c < 4; c++)
+        {
+            for (int r = 0; r < 4; r++)
+            {
+                clip[c * 4 + r] = projection[r] * modelview[c * 4]
+                    + projection[4 + r] * modelview[c * 4 + 1]
+                    + projection[8 + r] * modelview[c * 4 + 2]
+                    + projection[12 + r] * modelview[c * 4 + 3];
+            }
+        }
+    }
+
+    /**
+     * Check whether given box (min XYZ and max XYZ) is at least
+     * partially inside of the view frustum
+     */
+    public static boolean isBoxInFrustum(float[] box)
+    {
+        /* Left, right, bottom, top, near and far planes are sums and
+         * differences of the fourth row with the first three rows */
+        for (int row = 0; row < 3; row++)
+        {
+            for (int sign = -1; sign <= 1; sign += 2)
+            {
+                float a = clip[3] + sign * clip[row];
+                float b = clip[7] + sign * clip[4 + row];
+                float c = clip[11] + sign * clip[8 + row];
+                float d = clip[15] + sign * clip[12 + row];
+
+                /* Test the corner that lies the furthest along plane's normal */
+                float x = a >= 0 ? box[3] : box[0];
+                float y = b >= 0 ? box[4] : box[1];
+                float z = c >= 0 ? box[5] : box[2];
+
+                if (a * x + b * y + c * z + d < 0)
+                {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Get approximate size of given box (min XYZ and max XYZ) on the
+     * screen, i.e. how much of the screen's height would its bounding
+     * sphere's diameter take
+     */
+    public static float getScreenSize(float[] box)
+    {
+        float cx = (box[0] + box[3]) / 2F;
+        float cy = (box[1] + box[4]) / 2F;
+        float cz = (box[2] + box[5]) / 2F;
+        float dx = box[3] - cx;
+        float dy = box[4] - cy;
+        float dz = box[5] - cz;
+
+        /* Modelview might be scaled, so the radius is scaled by the
+         * largest axis scale */
+        float scale = 0;
+
+        for (int i = 0; i < 3; i++)
+        {
+            float x = modelview[i * 4];
+            float y = modelview[i * 4 + 1];
+            float z = modelview[i * 4 + 2];
+
+            scale = Math.max(scale, x * x + y * y + z * z);
+        }
+
+        float radius = (float) Math.sqrt((dx * dx + dy * dy + dz * dz) * scale);
+        float size = radius * Math.abs(projection[5]);
+
+        /* Orthographic projection doesn't have perspective division */
+        if (projection[11] == 0)
+        {
+            return size;
+        }
+
+        float depth = -(modelview[2] * cx + modelview[6] * cy + modelview[10] * cz + modelview[14]);
+
+        return depth <= radius ? Float.MAX_VALUE : size / depth;
+    }
+
+    private static void read(int matrix, float[] array)
+    {
+        buffer.clear();
+        GL11.glGetFloat(matrix, buffer);
+        buffer.get(array);
+    }
+}
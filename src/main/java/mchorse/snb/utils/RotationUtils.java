@@ -0,0 +1,189 @@
+package mchorse.snb.utils;
+
+import javax.vecmath.Quat4f;
+import javax.vecmath.Vector3f;
+
+/**
+ * Rotation utilities
+ *
+ * Conversions between bone's Euler angles and quaternions. Bone's
+ * rotation is applied as Z, then Y, then X (i.e. R = Rz * Ry * Rx), and
+ * all methods here follow that order.
+ */
+public class RotationUtils
+{
+    /**
+     * Quaternions which are closer than this (by their dot product)
+     * are interpolated linearly
+     */
+    public static final float NLERP_THRESHOLD = 0.9995F;
+
+    /**
+     * Sine of Y angle from which X and Z can't be told apart
+     */
+    public static final float GIMBAL_LOCK = 0.999999F;
+
+    private static final float PI = (float) Math.PI;
+    private static final float HALF_PI = (float) Math.PI / 2;
+
+    /**
+     * Convert Euler angles (in radians) into a quaternion
+     */
+    public static Quat4f fromEuler(float x, float y, float z, Quat4f out)
+    {
+        float cx = (float) Math.cos(x * 0.5F);
+        float sx = (float) Math.sin(x * 0.5F);
+        float cy = (float) Math.cos(y * 0.5F);
+        float sy = (float) Math.sin(y * 0.5F);
+        float cz = (float) Math.cos(z * 0.5F);
+        float sz = (float) Math.sin(z * 0.5F);
+
+        out.x = cz * cy * sx - sz * sy * cx;
+        out.y = cz * sy * cx + sz * cy * sx;
+        out.z = sz * cy * cx - cz * sy * sx;
+        out.w = cz * cy * cx + sz * sy * sx;
+
+        return out;
+    }
+
+    /**
+     * Convert a unit quaternion into Euler angles (in radians). In
+     * gimbal lock (Y is +-PI / 2) X is 0 and Z gets the whole rotation
+     */
+    public static Vector3f toEuler(Quat4f q, Vector3f out)
+    {
+        float sinp = 2 * (q.w * q.y - q.z * q.x);
+
+        if (Math.abs(sinp) >= GIMBAL_LOCK)
+        {
+            /* Here X and Z rotate around the same axis, so only X - Z 
+             * (or X + Z when Y is negative) can be found */
+            float angle = 2 * (float) Math.atan2(q.x, q.w);
+
+            out.x = 0;
+            out.y = Math.copySign(HALF_PI, sinp);
+            out.z = sinp > 0 ? -angle : angle;
+
+            return out;
+        }
+
+        out.x = (float) Math.atan2(2 * (q.w * q.x + q.y * q.z), 1 - 2 * (q.x * q.x + q.y * q.y));
+        out.y = (float) Math.asin(sinp);
+        out.z = (float) Math.atan2(2 * (q.w * q.z + q.x * q.y), 1 - 2 * (q.y * q.y + q.z * q.z));
+
+        return out;
+    }
+
+    /**
+     * Convert a unit quaternion into Euler angles (in radians) which
+     * are the closest to given reference angles. The same rotation can
+     * be described by two sets of angles (and any of them plus full
+     * turns), so unlike {@link #toEuler(Quat4f, Vector3f)} this doesn't
+     * jump between them when angles get out of [-PI, PI] or when Y's
+     * absolute value gets over PI / 2.
+     */
+    public static Vector3f toEuler(Quat4f q, float rx, float ry, float rz, Vector3f out)
+    {
+        toEuler(q, out);
+
+        float x = out.x;
+        float y = out.y;
+        float z = out.z;
+
+        if (Math.abs(y) == HALF_PI)
+        {
+            /* Only X - Z (or X + Z when Y is negative) matters in gimbal
+             * lock, so X is taken from the reference */
+            float delta = rx - x;
+
+            out.x = rx;
+            out.y = wrap(y, ry);
+            out.z = wrap(y > 0 ? z + delta : z - delta, rz);
+
+            return out;
+        }
+
+        float ax = wrap(x, rx);
+        float ay = wrap(y, ry);
+        float az = wrap(z, rz);
+        float bx = wrap(x + PI, rx);
+        float by = wrap(PI - y, ry);
+        float bz = wrap(z + PI, rz);
+
+        float a = Math.abs(ax - rx) + Math.abs(ay - ry) + Math.abs(az - rz);
+        float b = Math.abs(bx - rx) + Math.abs(by - ry) + Math.abs(bz - rz);
+
+        out.x = a <= b ? ax : bx;
+        out.y = a <= b ? ay : by;
+        out.z = a <= b ? az : bz;
+
+        return out;
+    }
+
+    /**
+     * Add as many full turns to given angle as needed to get it
+     * closest to the reference angle
+     */
+    private static float wrap(float angle, float reference)
+    {
+        return angle + (float) (Math.rint((reference - angle) / (PI * 2)) * PI * 2);
+    }
+
+    /**
+     * Spherical interpolation between two unit quaternions along the
+     * shortest arc. Close quaternions are normalized-lerped instead.
+     * Output can be one of the inputs.
+     */
+    public static Quat4f slerp(Quat4f a, Quat4f b, float t, Quat4f out)
+    {
+        float bx = b.x;
+        float by = b.y;
+        float bz = b.z;
+        float bw = b.w;
+        float dot = a.x * bx + a.y * by + a.z * bz + a.w * bw;
+
+        /* Both q and -q are the same rotation, so pick the closer one */
+        if (dot < 0)
+        {
+            dot = -dot;
+            bx = -bx;
+            by = -by;
+            bz = -bz;
+            bw = -bw;
+        }
+
+        float wa;
+        float wb;
+
+        if (dot > NLERP_THRESHOLD)
+        {
+            wa = 1 - t;
+            wb = t;
+        }
+        else
+        {
+            float theta = (float) Math.acos(dot);
+            float sin = (float) Math.sin(theta);
+
+            wa = (float) Math.sin((1 - t) * theta) / sin;
+            wb = (float) Math.sin(t * theta) / sin;
+        }
+
+        out.x = a.x * wa + bx * wb;
+        out.y = a.y * wa + by * wb;
+        out.z = a.z * wa + bz * wb;
+        out.w = a.w * wa + bw * wb;
+
+        float length = (float) Math.sqrt(out.x * out.x + out.y * out.y + out.z * out.z + out.w * out.w);
+
+        if (length > 0)
+        {
+            out.x /= length;
+            out.y /= length;
+            out.z /= length;
+            out.w /= length;
+        }
+
+        return out;
+    }
+}
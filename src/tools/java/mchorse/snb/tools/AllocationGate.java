@@ -0,0 +1,83 @@
+package mchorse.snb.tools;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Allocation gate
+ *
+ * Runs the headless pipeline of {@link StressTest} (controller and
+ * animator updates, crossfaded actions, bone matrices, pose snapshot
+ * evaluation, capture and apply, skinning into slabs, tangents and
+ * uploads) for thousands of frames, and fails (exits with
+ * non-zero code) if steady state allocation of the main thread per
+ * frame exceeds the budget. Warmup frames are excluded, so loading and
+ * JIT compilation don't count. It takes a while, so it isn't a part of
+ * <code>gradlew check</code>, run it with <code>gradlew allocationGate
+ * -PgateArgs="budget=512 entities=50"</code>.
+ */
+public class AllocationGate
+{
+    public static void main(String[] args) throws Exception
+    {
+        StressTest test = new StressTest();
+        long budget = 1024;
+
+        test.frames = 5000;
+        test.warmup = 2000;
+
+        for (String arg : args)
+        {
+            String[] parts = arg.split("=", 2);
+
+            if (parts.length == 2 && parts[0].equals("budget"))
+            {
+                budget = Long.parseLong(parts[1]);
+            }
+            else if (parts.length != 2 || !test.set(parts[0], parts[1]))
+            {
+                System.err.println("Unknown option " + arg + "!");
+                System.exit(1);
+            }
+        }
+
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (!(bean instanceof com.sun.management.ThreadMXBean) || !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported())
+        {
+            System.out.println("Thread allocation measuring isn't supported by this JVM, skipping...");
+
+            return;
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long thread = Thread.currentThread().getId();
+
+        threads.setThreadAllocatedMemoryEnabled(true);
+        test.setup();
+
+        for (int i = 0; i < test.warmup; i++)
+        {
+            test.frame();
+        }
+
+        long allocated = threads.getThreadAllocatedBytes(thread);
+
+        for (int i = 0; i < test.frames; i++)
+        {
+            test.frame();
+        }
+
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+
+        double perFrame = allocated / (double) test.frames;
+
+        System.out.println(String.format("Allocated %.1f bytes/frame (%d entities, budget is %d bytes/frame)", perFrame, test.entities, budget));
+
+        if (perFrame > budget)
+        {
+            System.err.println("Allocation budget exceeded! Something in pose evaluation, skinning or playback updates allocates every frame");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package mchorse.snb.tools;
+
+import mchorse.snb.api.animation.Animation;
+import mchorse.snb.api.animation.model.ActionConfig;
+import mchorse.snb.api.animation.model.ActionPlayback;
+import mchorse.snb.api.animation.model.Animator;
+import mchorse.snb.api.animation.model.AnimatorController;
+import net.minecraft.entity.EntityLivingBase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Headless animator
+ *
+ * Animator which switches actions by a script instead of entity's
+ * state, so it can be updated without any entity. Every {@link #period}
+ * ticks it switches the primary action (the previous one fades out,
+ * i.e. it's crossfaded) and in between it adds a secondary one-shot
+ * action, so the same action pipeline is exercised as in the game.
+ */
+public class HeadlessAnimator extends Animator
+{
+    public int period = 20;
+
+    private List<ActionPlayback> primary = new ArrayList<ActionPlayback>();
+    private ActionPlayback secondary;
+    private int ticks;
+
+    public HeadlessAnimator(AnimatorController controller, int index)
+    {
+        super(controller);
+
+        Animation animation = controller.animation;
+        List<String> names = new ArrayList<String>(animation.data.actions.keySet());
+
+        Collections.sort(names);
+
+        for (String name : names)
+        {
+            this.primary.add(animation.createAction(null, new ActionConfig(name), true));
+        }
+
+        if (!names.isEmpty())
+        {
+            this.secondary = animation.createAction(null, new ActionConfig(names.get(names.size() - 1)), false);
+        }
+
+        /* Entities switch actions at different ticks */
+        this.ticks = index * 7;
+
+        /* There is no entity to take the position from */
+        this.prevX = this.prevZ = 0;
+    }
+
+    @Override
+    protected void controlActions(EntityLivingBase target)
+    {
+        if (!this.primary.isEmpty() && this.ticks % this.period == 0)
+        {
+            this.setActiveAction(this.primary.get(this.ticks / this.period % this.primary.size()));
+        }
+        else if (this.ticks % this.period == this.period / 2)
+        {
+            this.addAction(this.secondary);
+        }
+
+        this.ticks++;
+    }
+}
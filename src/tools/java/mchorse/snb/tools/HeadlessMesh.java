@@ -0,0 +1,46 @@
+package mchorse.snb.tools;
+
+import mchorse.snb.api.animation.Animation;
+import mchorse.snb.api.animation.AnimationMesh;
+import mchorse.snb.api.bobj.BOBJLoader.CompiledData;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Headless mesh
+ *
+ * Animation mesh which doesn't need OpenGL: no GL buffers are created,
+ * and uploads are copied into a direct buffer (like the driver would
+ * copy them), so the whole {@link AnimationMesh#updateMesh()} path
+ * (skinning, tangents and packing of uploaded data) can be run without
+ * Minecraft.
+ */
+public class HeadlessMesh extends AnimationMesh
+{
+    private ByteBuffer uploaded;
+
+    public HeadlessMesh(Animation owner, String name, CompiledData data)
+    {
+        super(owner, name, data);
+    }
+
+    @Override
+    protected void initBuffers()
+    {}
+
+    @Override
+    protected void uploadBuffer(int glBuffer, int offset, ByteBuffer data)
+    {
+        if (this.uploaded == null || this.uploaded.capacity() < data.remaining())
+        {
+            this.uploaded = ByteBuffer.allocateDirect(data.remaining()).order(ByteOrder.nativeOrder());
+        }
+
+        int position = data.position();
+
+        this.uploaded.clear();
+        this.uploaded.put(data);
+        data.position(position);
+    }
+}
@@ -0,0 +1,289 @@
+package mchorse.snb.tools;
+
+import mchorse.snb.api.animation.Animation;
+import mchorse.snb.api.animation.AnimationManager;
+import mchorse.snb.api.animation.AnimationManager.AnimationEntry;
+import mchorse.snb.api.animation.AnimationMesh;
+import mchorse.snb.api.animation.SkinSlab;
+import mchorse.snb.api.animation.model.AnimatorController;
+import mchorse.snb.api.animation.model.PoseEvaluator;
+import mchorse.snb.api.animation.model.PoseSnapshot;
+import mchorse.snb.api.bobj.BOBJArmature;
+import mchorse.snb.api.bobj.BOBJLoader;
+import mchorse.snb.api.bobj.BOBJLoader.BOBJData;
+import mchorse.snb.api.bobj.BOBJLoader.CompiledData;
+import net.minecraft.nbt.NBTTagCompound;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stress test
+ *
+ * Headless harness which runs the whole animation pipeline of a
+ * synthetic model (see {@link SyntheticModel}) for many simulated
+ * entities without Minecraft: the model is generated, parsed and
+ * compiled, and then it goes through the same code as the game: every
+ * tick every entity's {@link AnimatorController} updates its animator
+ * (which crossfades actions, see {@link HeadlessAnimator}), and every
+ * frame it sets up bone matrices, and every mesh gets skinned, gets
+ * its tangents computed and uploaded. OpenGL is stubbed out by
+ * {@link HeadlessMesh}.
+ *
+ * Every other frame the pose is evaluated like {@link PoseEvaluator}'s
+ * workers do it ({@link PoseSnapshot#evaluate}, which also skins
+ * meshes into {@link SkinSlab}s), but on the calling thread, so its
+ * allocations are measured too. Frames in between go through the main
+ * thread path, and their pose gets captured and applied again like
+ * repeated render passes do it.
+ *
+ * At the end it reports throughput and how much the main thread
+ * allocated per frame. Run it with <code>gradlew stress</code>, options
+ * are passed as <code>-PstressArgs="entities=50 frames=2000
+ * vertices=20000 bones=100"</code> (see {@link SyntheticModel#set(String, String)}
+ * for model's options).
+ */
+public class StressTest
+{
+    public int entities = 20;
+    public int frames = 1000;
+    public int warmup = 200;
+
+    /**
+     * Frames per game tick, playbacks get updated once per tick
+     */
+    public int framesPerTick = 3;
+
+    /**
+     * Whether every other frame goes through the pose evaluator's path
+     */
+    public boolean async = true;
+
+    public SyntheticModel model = new SyntheticModel().vertices(5000).bones(60).weights(4).actions(4, 16);
+
+    private Animation animation;
+    private BOBJArmature armature;
+    private List<Entity> simulated = new ArrayList<Entity>();
+
+    private int frame;
+
+    public static void main(String[] args) throws Exception
+    {
+        StressTest test = new StressTest();
+
+        for (String arg : args)
+        {
+            String[] parts = arg.split("=", 2);
+
+            if (parts.length != 2 || !test.set(parts[0], parts[1]))
+            {
+                System.err.println("Unknown option " + arg + "!");
+                System.exit(1);
+            }
+        }
+
+        test.run();
+    }
+
+    public boolean set(String key, String value)
+    {
+        switch (key)
+        {
+            case "entities": this.entities = Integer.parseInt(value); break;
+            case "frames": this.frames = Integer.parseInt(value); break;
+            case "warmup": this.warmup = Integer.parseInt(value); break;
+            case "framesPerTick": this.framesPerTick = Math.max(Integer.parseInt(value), 1); break;
+            case "async": this.async = Boolean.parseBoolean(value); break;
+            default: return this.model.set(key, value);
+        }
+
+        return true;
+    }
+
+    public void run() throws Exception
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean threads = null;
+        long thread = Thread.currentThread().getId();
+
+        if (bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported())
+        {
+            threads = (com.sun.management.ThreadMXBean) bean;
+            threads.setThreadAllocatedMemoryEnabled(true);
+        }
+
+        /* Loading */
+        long start = System.nanoTime();
+        this.setup();
+        long loading = System.nanoTime() - start;
+
+        int vertices = 0;
+
+        /* Only the full detail level gets skinned */
+        for (AnimationMesh mesh : this.animation.meshes)
+        {
+            vertices += mesh.data.levelVertices[1];
+        }
+
+        System.out.println(String.format("Loaded %d vertices, %d bones, %d actions in %.1f ms", vertices, this.armature.orderedBones.size(), this.model.actions, loading / 1000000D));
+        System.out.println(String.format("Simulating %d entities for %d frames (after %d warmup frames)...", this.entities, this.frames, this.warmup));
+
+        for (int i = 0; i < this.warmup; i++)
+        {
+            this.frame();
+        }
+
+        long allocated = threads == null ? 0 : threads.getThreadAllocatedBytes(thread);
+        start = System.nanoTime();
+
+        for (int i = 0; i < this.frames; i++)
+        {
+            this.frame();
+        }
+
+        long time = System.nanoTime() - start;
+
+        allocated = threads == null ? 0 : threads.getThreadAllocatedBytes(thread) - allocated;
+
+        double seconds = time / 1000000000D;
+        double entityFrames = (double) this.frames * this.entities;
+
+        System.out.println(String.format("Frame: %.3f ms avg (%.1f frames/s)", time / 1000000D / this.frames, this.frames / seconds));
+        System.out.println(String.format("Entity: %.1f us per frame (%.0f entity frames/s)", time / 1000D / entityFrames, entityFrames / seconds));
+        System.out.println(String.format("Skinning: %.2f M vertices/s", entityFrames * vertices / seconds / 1000000D));
+
+        if (threads != null)
+        {
+            System.out.println(String.format("Allocation: %.1f bytes/frame, %.2f MB/s", allocated / (double) this.frames, allocated / seconds / 1024D / 1024D));
+        }
+        else
+        {
+            System.out.println("Allocation: thread allocation measuring isn't supported by this JVM");
+        }
+    }
+
+    /**
+     * Generate, parse and compile the model, and spawn entities
+     */
+    public void setup() throws Exception
+    {
+        BOBJData data = this.model.load();
+        Map<String, CompiledData> meshes = BOBJLoader.loadMeshes(data);
+
+        this.animation = new Animation("stress", data);
+
+        for (Map.Entry<String, CompiledData> entry : meshes.entrySet())
+        {
+            entry.getValue().quantize(true);
+            this.animation.meshes.add(new HeadlessMesh(this.animation, entry.getKey(), entry.getValue()));
+        }
+
+        this.animation.initialized = true;
+        this.armature = this.animation.meshes.get(0).armature;
+
+        /* Controllers fetch their animation from the manager */
+        AnimationManager.INSTANCE.animations.put(this.animation.name, new AnimationEntry(this.animation, null, 0));
+
+        for (int i = 0; i < this.entities; i++)
+        {
+            this.simulated.add(new Entity(i));
+        }
+    }
+
+    /**
+     * Simulate one render frame of all entities
+     */
+    public void frame()
+    {
+        boolean tick = this.frame % this.framesPerTick == 0;
+        boolean async = this.async && this.frame % 2 == 1;
+        float partialTicks = (this.frame % this.framesPerTick) / (float) this.framesPerTick;
+
+        AnimationManager.INSTANCE.frame = this.frame;
+        SkinSlab.release(this.frame);
+
+        for (Entity entity : this.simulated)
+        {
+            if (tick)
+            {
+                entity.controller.update(null);
+            }
+
+            if (async)
+            {
+                entity.renderEvaluated(partialTicks);
+            }
+            else
+            {
+                entity.render(partialTicks);
+            }
+        }
+
+        this.frame++;
+    }
+
+    /**
+     * Simulated entity, it has its own controller (and animator), but 
+     * shares the armature and meshes with others like models in the 
+     * game do
+     */
+    private class Entity
+    {
+        public AnimatorController controller;
+        public PoseSnapshot snapshot = new PoseSnapshot();
+
+        public Entity(int index)
+        {
+            this.controller = new AnimatorController(StressTest.this.animation.name, new NBTTagCompound());
+            this.controller.factory = (controller) -> new HeadlessAnimator(controller, index);
+            this.controller.fetchAnimation();
+        }
+
+        public void render(float partialTicks)
+        {
+            BOBJArmature armature = StressTest.this.armature;
+
+            /* Synthetic models don't have a head bone, so the entity 
+             * isn't needed for the pose */
+            this.controller.setupBoneMatrices(null, armature, 0, partialTicks);
+
+            for (AnimationMesh mesh : StressTest.this.animation.meshes)
+            {
+                mesh.updateMesh(null);
+                this.controller.skinLevels.put(mesh, mesh.level);
+            }
+
+            /* Repeated render passes restore the captured pose */
+            this.snapshot.capture(this.controller, null, 0, partialTicks);
+            this.snapshot.apply();
+        }
+
+        /**
+         * Evaluate the pose and skin meshes into slabs the way pose 
+         * evaluator's workers do it, and then apply and upload them 
+         * like the render does it with the evaluated snapshot
+         */
+        public void renderEvaluated(float partialTicks)
+        {
+            this.snapshot.evaluate(this.controller, null, 0, partialTicks, StressTest.this.frame);
+            this.snapshot.apply();
+
+            for (AnimationMesh mesh : StressTest.this.animation.meshes)
+            {
+                SkinSlab slab = this.snapshot.getSlab(mesh, mesh.level);
+
+                if (slab != null)
+                {
+                    slab.upload(mesh);
+                }
+                else
+                {
+                    mesh.updateMesh(null);
+                }
+            }
+        }
+    }
+}
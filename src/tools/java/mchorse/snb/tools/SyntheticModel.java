@@ -0,0 +1,343 @@
+package mchorse.snb.tools;
+
+import mchorse.snb.api.bobj.BOBJLoader;
+import mchorse.snb.api.bobj.BOBJLoader.BOBJData;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Synthetic model
+ *
+ * Generates BOBJ models of any size, so benchmarks don't need any
+ * hand-authored models nor Minecraft. The model is a column (rings of
+ * {@link #SEGMENTS} vertices) around a chain of bones which goes up
+ * the Y axis, every vertex is weighted to the nearest bones, and
+ * every action rotates every bone with keyframes of given
+ * interpolations. The same options and seed give the same model.
+ *
+ * It can also be run on its own to write a model into a file:
+ * <code>SyntheticModel model.bobj vertices=20000 bones=150 weights=4
+ * actions=8 keyframes=32 interpolation=LINEAR:2,BEZIER:1</code>
+ */
+public class SyntheticModel
+{
+    public static final int SEGMENTS = 16;
+
+    /**
+     * Distance between bones
+     */
+    public static final float STEP = 0.25F;
+
+    public int vertices = 1000;
+    public int bones = 20;
+    public int weights = 2;
+    public int actions = 1;
+    public int keyframes = 8;
+    public long seed = 42;
+
+    /**
+     * Interpolations of keyframes and their relative frequencies
+     */
+    public Map<String, Integer> interpolations = new LinkedHashMap<String, Integer>();
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length == 0)
+        {
+            System.out.println("Usage: SyntheticModel <file> [vertices=N] [bones=N] [weights=N] [actions=N] [keyframes=N] [interpolation=LINEAR:2,BEZIER:1,CONSTANT:1] [seed=N]");
+
+            return;
+        }
+
+        SyntheticModel model = new SyntheticModel();
+
+        for (int i = 1; i < args.length; i++)
+        {
+            String[] parts = args[i].split("=", 2);
+
+            if (parts.length != 2 || !model.set(parts[0], parts[1]))
+            {
+                System.err.println("Unknown option " + args[i] + "!");
+
+                return;
+            }
+        }
+
+        File file = new File(args[0]);
+
+        Files.write(file.toPath(), model.generate().getBytes(StandardCharsets.UTF_8));
+        System.out.println("Generated " + file.getAbsolutePath() + " (" + file.length() + " bytes)");
+    }
+
+    public SyntheticModel()
+    {
+        this.interpolations.put("LINEAR", 1);
+    }
+
+    /**
+     * Set an option by its name (the same as field's name, or 
+     * "interpolation" for comma separated interpolations with optional 
+     * frequencies), returns false if there is no such option
+     */
+    public boolean set(String key, String value)
+    {
+        switch (key)
+        {
+            case "vertices": this.vertices = Integer.parseInt(value); break;
+            case "bones": this.bones = Integer.parseInt(value); break;
+            case "weights": this.weights = Integer.parseInt(value); break;
+            case "actions": this.actions = Integer.parseInt(value); break;
+            case "keyframes": this.keyframes = Integer.parseInt(value); break;
+            case "seed": this.seed = Long.parseLong(value); break;
+            case "interpolation":
+                this.interpolations.clear();
+
+                for (String entry : value.split(","))
+                {
+                    String[] parts = entry.split(":");
+
+                    this.interpolation(parts[0].toUpperCase(), parts.length > 1 ? Integer.parseInt(parts[1]) : 1);
+                }
+            break;
+            default: return false;
+        }
+
+        return true;
+    }
+
+    public SyntheticModel vertices(int vertices)
+    {
+        this.vertices = vertices;
+
+        return this;
+    }
+
+    public SyntheticModel bones(int bones)
+    {
+        this.bones = bones;
+
+        return this;
+    }
+
+    public SyntheticModel weights(int weights)
+    {
+        this.weights = weights;
+
+        return this;
+    }
+
+    public SyntheticModel actions(int actions, int keyframes)
+    {
+        this.actions = actions;
+        this.keyframes = keyframes;
+
+        return this;
+    }
+
+    /**
+     * Use only given interpolation
+     */
+    public SyntheticModel interpolation(String interpolation)
+    {
+        this.interpolations.clear();
+
+        return this.interpolation(interpolation, 1);
+    }
+
+    /**
+     * Add given interpolation to the mix with given frequency
+     */
+    public SyntheticModel interpolation(String interpolation, int frequency)
+    {
+        this.interpolations.put(interpolation, frequency);
+
+        return this;
+    }
+
+    /**
+     * Parse generated model
+     */
+    public BOBJData load() throws Exception
+    {
+        return BOBJLoader.readData(new ByteArrayInputStream(this.generate().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Generate BOBJ text of the model
+     */
+    public String generate()
+    {
+        StringBuilder builder = new StringBuilder();
+        Random random = new Random(this.seed);
+
+        this.generateArmature(builder);
+        this.generateMesh(builder);
+
+        for (int i = 0; i < this.actions; i++)
+        {
+            this.generateAction(builder, random, "action" + i);
+        }
+
+        return builder.toString();
+    }
+
+    private void generateArmature(StringBuilder builder)
+    {
+        builder.append("arm_name Armature\n");
+
+        for (int i = 0; i < this.bones; i++)
+        {
+            float y = i * STEP;
+
+            /* Name, parent, tail and bone's matrix (row-major) */
+            builder.append("arm_bone bone").append(i).append(' ').append(i == 0 ? "" : "bone" + (i - 1));
+            builder.append(" 0 ").append(y + STEP).append(" 0");
+            builder.append(" 1 0 0 0 0 1 0 ").append(y).append(" 0 0 1 0 0 0 0 1\n");
+        }
+    }
+
+    private void generateMesh(StringBuilder builder)
+    {
+        int rings = Math.max(2, (this.vertices + SEGMENTS - 1) / SEGMENTS);
+        float height = this.bones * STEP;
+        int weights = Math.max(1, Math.min(this.weights, this.bones));
+
+        builder.append("o Column\no_arm Armature\n");
+
+        for (int r = 0; r < rings; r++)
+        {
+            float y = height * r / (rings - 1);
+            int nearest = Math.min((int) (y / STEP), this.bones - 1);
+            int first = Math.max(0, Math.min(nearest - weights / 2, this.bones - weights));
+
+            for (int s = 0; s < SEGMENTS; s++)
+            {
+                double angle = Math.PI * 2 * s / SEGMENTS;
+                float x = (float) Math.cos(angle) * 0.5F;
+                float z = (float) Math.sin(angle) * 0.5F;
+
+                builder.append("v ").append(x).append(' ').append(y).append(' ').append(z).append('\n');
+
+                /* The nearer the bone, the bigger the weight, and all 
+                 * of the weights survive tiny weights elimination */
+                int total = 0;
+
+                for (int w = 0; w < weights; w++)
+                {
+                    total += weights - Math.abs(first + w - nearest);
+                }
+
+                for (int w = 0; w < weights; w++)
+                {
+                    int bone = first + w;
+
+                    builder.append("vw bone").append(bone).append(' ').append((weights - Math.abs(bone - nearest)) / (float) total).append('\n');
+                }
+            }
+        }
+
+        for (int r = 0; r < rings; r++)
+        {
+            for (int s = 0; s < SEGMENTS; s++)
+            {
+                builder.append("vt ").append(s / (float) SEGMENTS).append(' ').append(r / (float) (rings - 1)).append('\n');
+            }
+        }
+
+        for (int s = 0; s < SEGMENTS; s++)
+        {
+            double angle = Math.PI * 2 * s / SEGMENTS;
+
+            builder.append("vn ").append((float) Math.cos(angle)).append(" 0 ").append((float) Math.sin(angle)).append('\n');
+        }
+
+        for (int r = 0; r < rings - 1; r++)
+        {
+            for (int s = 0; s < SEGMENTS; s++)
+            {
+                int next = (s + 1) % SEGMENTS;
+                int a = r * SEGMENTS + s + 1;
+                int b = r * SEGMENTS + next + 1;
+                int c = a + SEGMENTS;
+                int d = b + SEGMENTS;
+
+                this.appendFace(builder, a, c, b, s, s, next);
+                this.appendFace(builder, b, c, d, next, s, next);
+            }
+        }
+    }
+
+    /**
+     * Append a triangle, vertices and texture coordinates share 
+     * indices, while normals are per segment
+     */
+    private void appendFace(StringBuilder builder, int a, int b, int c, int na, int nb, int nc)
+    {
+        builder.append("f ").append(a).append('/').append(a).append('/').append(na + 1);
+        builder.append(' ').append(b).append('/').append(b).append('/').append(nb + 1);
+        builder.append(' ').append(c).append('/').append(c).append('/').append(nc + 1).append('\n');
+    }
+
+    private void generateAction(StringBuilder builder, Random random, String name)
+    {
+        builder.append("an ").append(name).append('\n');
+
+        for (int i = 0; i < this.bones; i++)
+        {
+            builder.append("ao bone").append(i).append('\n');
+
+            for (int axis = 0; axis < 3; axis += 2)
+            {
+                builder.append("ag rotation ").append(axis).append('\n');
+
+                for (int k = 0; k < this.keyframes; k++)
+                {
+                    this.appendKeyframe(builder, k * 5, (random.nextFloat() - 0.5F) * 0.6F, this.pickInterpolation(random));
+                }
+            }
+        }
+    }
+
+    private String pickInterpolation(Random random)
+    {
+        int total = 0;
+
+        for (int frequency : this.interpolations.values())
+        {
+            total += frequency;
+        }
+
+        int pick = random.nextInt(Math.max(total, 1));
+
+        for (Map.Entry<String, Integer> entry : this.interpolations.entrySet())
+        {
+            pick -= entry.getValue();
+
+            if (pick < 0)
+            {
+                return entry.getKey();
+            }
+        }
+
+        return "LINEAR";
+    }
+
+    private void appendKeyframe(StringBuilder builder, float frame, float value, String interpolation)
+    {
+        builder.append("kf ").append(frame).append(' ').append(value).append(' ').append(interpolation);
+
+        if (interpolation.equals("BEZIER"))
+        {
+            builder.append(' ').append(frame - 1.5F).append(' ').append(value);
+            builder.append(' ').append(frame + 1.5F).append(' ').append(value);
+        }
+
+        builder.append('\n');
+    }
+}